@@ -1,10 +1,14 @@
 package ru.cmc.web_prac.DAO;
 
+import ru.cmc.web_prac.DTO.BookingRow;
+import ru.cmc.web_prac.DTO.ImportResult;
 import ru.cmc.web_prac.classes.Booking;
 import ru.cmc.web_prac.classes.Client;
 import ru.cmc.web_prac.classes.Flight;
+import java.io.Reader;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface BookingDAO extends CommonDAO<Booking, Long> {
     List<Booking> getByClient(Client client);
@@ -17,13 +21,36 @@ public interface BookingDAO extends CommonDAO<Booking, Long> {
 
     List<Booking> getByBookingDateBetween(LocalDateTime startDate, LocalDateTime endDate);
 
+    Stream<Booking> streamByBookingDateBetween(LocalDateTime startDate, LocalDateTime endDate);
+
     List<Booking> getPaidWithMiles();
 
     List<Booking> getActiveBookings();
 
+    List<BookingRow> getPaidWithMilesRows();
+
+    List<BookingRow> getActiveBookingRows();
+
+    // Страница после бронирования afterId; если его нет - пустая страница
+    List<Booking> getPage(String status, Long afterId, int limit);
+
+    List<BookingRow> getRowPage(String status, Long afterId, int limit);
+
+    BookingRow getRow(Long bookingId);
+
+    // Версии данных страницы бронирования (бронирование, рейс, клиент и его мили) для ETag; null - бронирования нет
+    List<Object> getPageVersion(Long bookingId);
+
+    // Все строки бронирований в порядке списка через курсор: вызывать внутри транзакции и закрывать поток
+    Stream<BookingRow> streamRows(String status);
+
     void updateStatus(Long bookingId, String newStatus);
 
-    void cancelBooking(Long bookingId);
+    // Переходы статуса условные: false - бронирование уже отменено (не в статусе BOOKED) или не найдено
+    boolean cancelBooking(Long bookingId);
+
+    boolean confirmBooking(Long bookingId);
 
-    void confirmBooking(Long bookingId);
-}
\ No newline at end of file
+    // Загрузка CSV через COPY и слияние одним набором запросов; отклонённые строки перечислены в итоге
+    ImportResult importCsv(Reader csv);
+}
@@ -1,20 +1,40 @@
 package ru.cmc.web_prac.DAO;
 
+import ru.cmc.web_prac.DTO.ClientRow;
+import ru.cmc.web_prac.DTO.ImportResult;
 import ru.cmc.web_prac.classes.Client;
+import java.io.Reader;
 import java.util.List;
 
 public interface ClientDAO extends CommonDAO<Client, Long> {
     Client getByEmail(String email);
 
+    // Версии данных страницы клиента (клиент, мили, бронирования и их рейсы) для ETag; null - клиента нет
+    List<Object> getPageVersion(Long clientId);
+
     List<Client> getByNameContaining(String namepart);
 
     List<Client> searchByNameOrEmail(String searchTerm);
 
+    List<ClientRow> searchRowsByNameOrEmail(String searchTerm);
+
+    // Поиск по подстроке и с опечатками в имени, email и цифрах телефона; не больше limit строк, похожие сверху
+    List<ClientRow> searchRows(String term, int limit);
+
+    List<ClientRow> getRowPage(Long afterId, int limit);
+
     List<Client> getByBonusMilesGreaterThan(Integer miles);
 
     void updateBonusMiles(Long clientId, Integer newMiles);
 
     void addBonusMiles(Long clientId, Integer milesToAdd);
 
-    void deductBonusMiles(Long clientId, Integer milesToDeduct);
-}
\ No newline at end of file
+    // false - миль недостаточно (или клиента нет), баланс не изменился
+    boolean deductBonusMiles(Long clientId, Integer milesToDeduct);
+
+    // Правка баланса на delta (ADJUSTMENT); false - баланс стал бы отрицательным (или клиента нет)
+    boolean changeBonusMiles(Long clientId, int delta);
+
+    // Загрузка CSV через COPY и слияние одним набором запросов; отклонённые строки перечислены в итоге
+    ImportResult importCsv(Reader csv);
+}
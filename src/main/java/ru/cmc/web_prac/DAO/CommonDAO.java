@@ -2,12 +2,21 @@ package ru.cmc.web_prac.DAO;
 
 import ru.cmc.web_prac.classes.CommonEntity;
 import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public interface CommonDAO<T extends CommonEntity<ID>, ID> {
     T getById(ID id);
 
     Collection<T> getAll();
 
+    // Keyset-пагинация по id: не более limit записей с id > afterId (afterId == null - первая страница)
+    List<T> getPageAfter(ID afterId, int limit);
+
+    // Потоковое чтение всей таблицы курсором; вызывать внутри транзакции и закрывать поток
+    Stream<T> streamAll();
+
     void save(T entity);
 
     void saveCollection(Collection<T> entities);
@@ -15,4 +24,8 @@ public interface CommonDAO<T extends CommonEntity<ID>, ID> {
     void delete(T entity);
 
     void update(T entity);
+
+    // Читает запись, применяет changes и фиксирует; при конфликте версий повторяет на свежих данных.
+    // Вызывать вне транзакции; null - записи нет
+    T update(ID id, Consumer<T> changes);
 }
\ No newline at end of file
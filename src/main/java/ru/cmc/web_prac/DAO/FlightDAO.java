@@ -1,10 +1,16 @@
 package ru.cmc.web_prac.DAO;
 
+import ru.cmc.web_prac.DTO.AirportSuggestion;
+import ru.cmc.web_prac.DTO.FlightSummary;
+import ru.cmc.web_prac.DTO.ImportResult;
 import ru.cmc.web_prac.classes.Flight;
 import ru.cmc.web_prac.classes.Airline;
+import java.io.Reader;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public interface FlightDAO extends CommonDAO<Flight, Long> {
     Flight getByFlightNumber(String flightNumber);
@@ -15,15 +21,48 @@ public interface FlightDAO extends CommonDAO<Flight, Long> {
 
     List<Flight> getByDepartureDate(LocalDateTime startOfDay, LocalDateTime endOfDay);
 
+    Stream<Flight> streamByDepartureDate(LocalDateTime startDate, LocalDateTime endDate);
+
     List<Flight> searchFlights(String departureAirport, String arrivalAirport, LocalDateTime departureDate);
 
+    List<FlightSummary> searchFlightSummaries(String departureAirport, String arrivalAirport, LocalDateTime departureDate);
+
+    // Коды аэропортов, начинающиеся с prefix, самые частые в рейсах сверху (из индекса в памяти)
+    List<AirportSuggestion> suggestAirports(String prefix, int limit);
+
     List<Flight> getAvailableFlights();
 
     List<Flight> getAllSorted(String sortBy);
 
+    // Страница после рейса afterId; если его нет - пустая страница
+    List<Flight> getAllSortedPage(String sortBy, Long afterId, int limit);
+
+    List<FlightSummary> getSummaryPage(String sortBy, Long afterId, int limit);
+
+    List<FlightSummary> getAvailableFlightSummaries();
+
+    FlightSummary getSummary(Long flightId);
+
+    // Версии данных страницы рейса для ETag одним коротким запросом; null - рейса нет
+    List<Object> getPageVersion(Long flightId);
+
+    // Все рейсы в порядке sortBy через курсор: вызывать внутри транзакции и закрывать поток
+    Stream<FlightSummary> streamSummaries(String sortBy);
+
     void updateAvailableSeats(Long flightId, Integer newAvailableSeats);
 
-    void decrementAvailableSeats(Long flightId);
+    // false - свободных мест нет (или рейса нет), количество не изменилось
+    boolean decrementAvailableSeats(Long flightId);
 
     void incrementAvailableSeats(Long flightId);
-}
\ No newline at end of file
+
+    // Забирает из available_seats до запрошенного числа мест на каждом рейсе одним запросом;
+    // возвращает сколько забрано по рейсам (рейсов без свободных мест в ответе нет)
+    Map<Long, Integer> takeSeats(Map<Long, Integer> seatsByFlight);
+
+    // Возвращает в available_seats места, забранные takeSeats, одним запросом
+    void returnSeats(Map<Long, Integer> seatsByFlight);
+
+    // Загрузка CSV через COPY и слияние одним набором запросов; отклонённые строки перечислены в итоге
+    ImportResult importCsv(Reader csv);
+}
@@ -0,0 +1,20 @@
+package ru.cmc.web_prac.DAO;
+
+import ru.cmc.web_prac.classes.IdempotencyKey;
+
+import java.time.LocalDateTime;
+
+public interface IdempotencyKeyDAO extends CommonDAO<IdempotencyKey, String> {
+
+    // Занимает ключ для owner, ожидая результат до leaseUntil; false - ключ уже занят.
+    // Ключ с истёкшим сроком не занимается заново: операция владельца могла зафиксироваться
+    boolean reserve(String id, String endpoint, String owner, LocalDateTime leaseUntil);
+
+    // Сохраняет результат, если ключ всё ещё занят owner; false - ключ освобождён или удалён
+    boolean complete(String id, String owner, String viewName, String errorMessage);
+
+    // Освобождает занятый owner, но не выполненный ключ, чтобы запрос можно было повторить
+    void release(String id, String owner);
+
+    int deleteCreatedBefore(LocalDateTime time);
+}
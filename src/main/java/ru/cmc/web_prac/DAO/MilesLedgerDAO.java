@@ -0,0 +1,23 @@
+package ru.cmc.web_prac.DAO;
+
+import ru.cmc.web_prac.classes.MilesLedgerEntry;
+
+import java.util.List;
+
+public interface MilesLedgerDAO extends CommonDAO<MilesLedgerEntry, Long> {
+
+    // Записывает движение миль без проверки баланса (начисления, возвраты); bookingId может быть null
+    void append(Long clientId, int delta, String reason, Long bookingId);
+
+    // Списание, только если баланс не меньше miles; false - миль недостаточно или клиента нет
+    boolean redeem(Long clientId, int miles, String reason, Long bookingId);
+
+    // Корректировка, после которой баланс станет равен balance; false - клиента нет или баланс уже такой
+    boolean adjustTo(Long clientId, int balance);
+
+    // Записи клиента, новые сверху
+    List<MilesLedgerEntry> getByClient(Long clientId);
+
+    // Переносит хвосты журнала до limit клиентов в снимки балансов; возвращает число свёрнутых клиентов
+    int compact(int limit);
+}
@@ -0,0 +1,17 @@
+package ru.cmc.web_prac.DAO;
+
+import ru.cmc.web_prac.classes.MilesOutboxEntry;
+
+import java.util.List;
+
+public interface MilesOutboxDAO extends CommonDAO<MilesOutboxEntry, Long> {
+
+    // Ставит в очередь мили за бронирование (цена * коэффициент авиакомпании / 100); false - начислять нечего
+    boolean enqueueEarnedMiles(Long bookingId);
+
+    // Старейшие записи с блокировкой; записи, занятые другим узлом, пропускаются
+    List<MilesOutboxEntry> lockBatch(int limit);
+
+    // Переносит записи в журнал миль начислениями (с id бронирования) и удаляет их из очереди
+    void moveToLedger(List<Long> ids);
+}
@@ -1,24 +1,71 @@
 package ru.cmc.web_prac.DAO.impl;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 import ru.cmc.web_prac.DAO.AirlineDAO;
+import ru.cmc.web_prac.cache.AirlineRegistry;
+import ru.cmc.web_prac.cache.FlightChangeListener;
 import ru.cmc.web_prac.classes.Airline;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceUnit;
 import jakarta.persistence.TypedQuery;
+import java.util.Collection;
 import java.util.List;
 
+/**
+ * Авиакомпании - маленький и редко меняющийся справочник, поэтому чтения
+ * обслуживаются из неизменяемого снимка в памяти ({@link AirlineRegistry}).
+ * Снимок загружается при первом обращении и заменяется после фиксации
+ * любой транзакции, изменившей авиакомпании.
+ */
 @Repository
 @Transactional
 public class AirlineDAOImpl extends CommonDAOImpl<Airline, Long> implements AirlineDAO {
 
+    @PersistenceUnit
+    private EntityManagerFactory entityManagerFactory;
+
+    // Кэши рейсов хранят название авиакомпании, а удаление авиакомпании каскадно удаляет рейсы
+    @Autowired
+    private List<FlightChangeListener> flightChangeListeners;
+
+    private volatile AirlineRegistry registry;
+
+    // Увеличивается при каждой инвалидации, чтобы не сохранить снимок, загруженный до изменения
+    private long generation;
+
     public AirlineDAOImpl() {
         super(Airline.class);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public Airline getById(Long id) {
+        if (hasUncommittedChanges()) {
+            return super.getById(id);
+        }
+        return registry().getById(id);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Collection<Airline> getAll() {
+        if (hasUncommittedChanges()) {
+            return super.getAll();
+        }
+        return registry().getAll();
+    }
+
     @Override
     @Transactional(readOnly = true)
     public Airline getByName(String name) {
+        if (!hasUncommittedChanges()) {
+            return registry().getByName(name);
+        }
+
         TypedQuery<Airline> query = entityManager.createQuery(
                 "SELECT a FROM Airline a WHERE a.name = :name", Airline.class);
         query.setParameter("name", name);
@@ -30,8 +77,72 @@ public class AirlineDAOImpl extends CommonDAOImpl<Airline, Long> implements Airl
     @Override
     @Transactional(readOnly = true)
     public List<Airline> getAllSortedByName() {
+        if (!hasUncommittedChanges()) {
+            return registry().getAllSortedByName();
+        }
+
         TypedQuery<Airline> query = entityManager.createQuery(
                 "SELECT a FROM Airline a ORDER BY a.name ASC", Airline.class);
         return query.getResultList();
     }
-}
\ No newline at end of file
+
+    @Override
+    public void save(Airline entity) {
+        super.save(entity);
+        onChange();
+    }
+
+    @Override
+    public void update(Airline entity) {
+        super.update(entity);
+        onChange();
+    }
+
+    @Override
+    public void delete(Airline entity) {
+        super.delete(entity);
+        onChange();
+    }
+
+    private void onChange() {
+        markUncommittedChanges();
+        afterCommit(() -> {
+            invalidate();
+            flightChangeListeners.forEach(FlightChangeListener::invalidateAll);
+        });
+    }
+
+    private synchronized void invalidate() {
+        generation++;
+        registry = null;
+    }
+
+    private AirlineRegistry registry() {
+        AirlineRegistry current = registry;
+        if (current != null) {
+            return current;
+        }
+
+        long loadedGeneration;
+        synchronized (this) {
+            loadedGeneration = generation;
+        }
+        AirlineRegistry loaded = new AirlineRegistry(loadAll());
+        synchronized (this) {
+            if (generation == loadedGeneration) {
+                registry = loaded;
+            }
+        }
+        return loaded;
+    }
+
+    // Отдельный EntityManager: сущности снимка не попадают в контекст текущей транзакции
+    private List<Airline> loadAll() {
+        EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            return em.createQuery("SELECT a FROM Airline a", Airline.class).getResultList();
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -1,25 +1,65 @@
 package ru.cmc.web_prac.DAO.impl;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import ru.cmc.web_prac.DAO.BookingDAO;
+import ru.cmc.web_prac.DTO.BookingRow;
+import ru.cmc.web_prac.DTO.ImportResult;
+import ru.cmc.web_prac.cache.FlightChangeListener;
 import ru.cmc.web_prac.classes.Booking;
 import ru.cmc.web_prac.classes.Client;
 import ru.cmc.web_prac.classes.Flight;
 
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
+import java.io.Reader;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 @Transactional
 public class BookingDAOImpl extends CommonDAOImpl<Booking, Long> implements BookingDAO {
 
+    // Списочные запросы сразу подтягивают клиента, рейс и авиакомпанию рейса:
+    // страница бронирований читается одним SELECT вместо 2N+1.
+    // Связи необязательны (client_id, flight_id, airline_id допускают NULL), поэтому соединения внешние
+    private static final String SELECT_WITH_DETAILS =
+            "SELECT b FROM Booking b LEFT JOIN FETCH b.client LEFT JOIN FETCH b.flight f LEFT JOIN FETCH f.airline ";
+
+    // Выборка строк списка бронирований вместе с данными клиента и рейса
+    private static final String ROW_SELECT =
+            "SELECT new ru.cmc.web_prac.DTO.BookingRow(b.id, b.bookingDate, b.status, b.paidWithMiles, b.milesUsed, " +
+                    "c.id, c.fullName, f.id, f.flightNumber, a.name, f.departureAirport, f.arrivalAirport, " +
+                    "f.departureTime, f.price) " +
+                    "FROM Booking b LEFT JOIN b.client c LEFT JOIN b.flight f LEFT JOIN f.airline a ";
+
+    // Столбцы CSV бронирований (заголовок файла): клиент по email, рейс по номеру и времени вылета
+    private static final String IMPORT_COLUMNS =
+            "client_email, flight_number, departure_time, booking_date, status, paid_with_miles, miles_used";
+
+    // Кэши рейсов хранят число свободных мест, а загрузка бронирований его уменьшает
+    @Autowired
+    private List<FlightChangeListener> flightChangeListeners;
+
+    @Autowired
+    private CsvImporter csvImporter;
+
     public BookingDAOImpl() {
         super(Booking.class);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public Collection<Booking> getAll() {
+        return entityManager.createQuery(
+                SELECT_WITH_DETAILS + "ORDER BY b.bookingDate DESC, b.id DESC", Booking.class).getResultList();
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<Booking> getByClient(Client client) {
@@ -42,7 +82,7 @@ public class BookingDAOImpl extends CommonDAOImpl<Booking, Long> implements Book
     @Transactional(readOnly = true)
     public List<Booking> getByStatus(String status) {
         TypedQuery<Booking> query = entityManager.createQuery(
-                "SELECT b FROM Booking b WHERE b.status = :status ORDER BY b.bookingDate DESC", Booking.class);
+                SELECT_WITH_DETAILS + "WHERE b.status = :status ORDER BY b.bookingDate DESC", Booking.class);
         query.setParameter("status", status);
         return query.getResultList();
     }
@@ -68,11 +108,23 @@ public class BookingDAOImpl extends CommonDAOImpl<Booking, Long> implements Book
         return query.getResultList();
     }
 
+    // Потоковый вариант для выгрузок: вызывать внутри транзакции и закрывать поток
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY, readOnly = true)
+    public Stream<Booking> streamByBookingDateBetween(LocalDateTime startDate, LocalDateTime endDate) {
+        TypedQuery<Booking> query = entityManager.createQuery(
+                "SELECT b FROM Booking b WHERE b.bookingDate BETWEEN :startDate AND :endDate ORDER BY b.bookingDate",
+                Booking.class);
+        query.setParameter("startDate", startDate);
+        query.setParameter("endDate", endDate);
+        return streamDetached(query);
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<Booking> getPaidWithMiles() {
         TypedQuery<Booking> query = entityManager.createQuery(
-                "SELECT b FROM Booking b WHERE b.paidWithMiles = true ORDER BY b.bookingDate DESC", Booking.class);
+                SELECT_WITH_DETAILS + "WHERE b.paidWithMiles = true ORDER BY b.bookingDate DESC", Booking.class);
         return query.getResultList();
     }
 
@@ -80,26 +132,208 @@ public class BookingDAOImpl extends CommonDAOImpl<Booking, Long> implements Book
     @Transactional(readOnly = true)
     public List<Booking> getActiveBookings() {
         TypedQuery<Booking> query = entityManager.createQuery(
-                "SELECT b FROM Booking b WHERE b.status != 'CANCELLED' ORDER BY b.bookingDate DESC", Booking.class);
+                SELECT_WITH_DETAILS + "WHERE b.status != 'CANCELLED' ORDER BY b.bookingDate DESC", Booking.class);
+        return query.getResultList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<BookingRow> getPaidWithMilesRows() {
+        return entityManager.createQuery(
+                ROW_SELECT + "WHERE b.paidWithMiles = true ORDER BY b.bookingDate DESC", BookingRow.class)
+                .getResultList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<BookingRow> getActiveBookingRows() {
+        return entityManager.createQuery(
+                ROW_SELECT + "WHERE b.status != 'CANCELLED' ORDER BY b.bookingDate DESC", BookingRow.class)
+                .getResultList();
+    }
+
+    /**
+     * Keyset-пагинация бронирований (новые сверху), status == null - без фильтра.
+     * Следующая страница начинается после бронирования afterId.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<Booking> getPage(String status, Long afterId, int limit) {
+        return page(SELECT_WITH_DETAILS, Booking.class, status, afterId, limit);
+    }
+
+    // То же, что getPage, но строками для списка без загрузки сущностей
+    @Override
+    @Transactional(readOnly = true)
+    public List<BookingRow> getRowPage(String status, Long afterId, int limit) {
+        return page(ROW_SELECT, BookingRow.class, status, afterId, limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public BookingRow getRow(Long bookingId) {
+        List<BookingRow> rows = entityManager.createQuery(ROW_SELECT + "WHERE b.id = :bookingId", BookingRow.class)
+                .setParameter("bookingId", bookingId)
+                .getResultList();
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    // Баланс клиента меняется только записями журнала, поэтому вместо него - последний id журнала
+    @Override
+    @Transactional(readOnly = true)
+    public List<Object> getPageVersion(Long bookingId) {
+        List<?> rows = entityManager.createNativeQuery(
+                        "SELECT b.version, f.version, a.name, c.version, " +
+                                "(SELECT MAX(l.id) FROM {h-schema}miles_ledger l WHERE l.client_id = c.id) " +
+                                "FROM {h-schema}bookings b " +
+                                "LEFT JOIN {h-schema}flights f ON f.id = b.flight_id " +
+                                "LEFT JOIN {h-schema}airlines a ON a.id = f.airline_id " +
+                                "LEFT JOIN {h-schema}clients c ON c.id = b.client_id " +
+                                "WHERE b.id = :bookingId")
+                .setParameter("bookingId", bookingId)
+                .getResultList();
+        return rows.isEmpty() ? null : Arrays.asList((Object[]) rows.get(0));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY, readOnly = true)
+    public Stream<BookingRow> streamRows(String status) {
+        TypedQuery<BookingRow> query = entityManager.createQuery(
+                ROW_SELECT + (status != null ? "WHERE b.status = :status " : "") +
+                        "ORDER BY b.bookingDate DESC, b.id DESC", BookingRow.class);
+        if (status != null) {
+            query.setParameter("status", status);
+        }
+        return stream(query);
+    }
+
+    private <R> List<R> page(String select, Class<R> resultClass, String status, Long afterId, int limit) {
+        Booking anchor = afterId == null ? null : entityManager.find(Booking.class, afterId);
+        if (afterId != null && anchor == null) {
+            // Бронирования afterId нет (удалено или не существовало): продолжить не с чего,
+            // а первая страница вместо продолжения зациклила бы листание
+            return List.of();
+        }
+
+        StringBuilder jpql = new StringBuilder(select + "WHERE 1 = 1 ");
+        if (status != null) {
+            jpql.append("AND b.status = :status ");
+        }
+        if (anchor != null) {
+            jpql.append("AND (b.bookingDate, b.id) < (:bookingDate, :anchorId) ");
+        }
+        jpql.append("ORDER BY b.bookingDate DESC, b.id DESC");
+
+        TypedQuery<R> query = entityManager.createQuery(jpql.toString(), resultClass);
+        if (status != null) {
+            query.setParameter("status", status);
+        }
+        if (anchor != null) {
+            query.setParameter("bookingDate", anchor.getBookingDate());
+            query.setParameter("anchorId", anchor.getId());
+        }
+        query.setMaxResults(limit);
         return query.getResultList();
     }
 
     @Override
     public void updateStatus(Long bookingId, String newStatus) {
         Query query = entityManager.createQuery(
-                "UPDATE Booking b SET b.status = :status WHERE b.id = :bookingId");
+                "UPDATE VERSIONED Booking b SET b.status = :status WHERE b.id = :bookingId");
         query.setParameter("status", newStatus);
         query.setParameter("bookingId", bookingId);
         query.executeUpdate();
     }
 
     @Override
-    public void cancelBooking(Long bookingId) {
-        updateStatus(bookingId, "CANCELLED");
+    public boolean cancelBooking(Long bookingId) {
+        Query query = entityManager.createQuery(
+                "UPDATE VERSIONED Booking b SET b.status = 'CANCELLED' WHERE b.id = :bookingId AND b.status != 'CANCELLED'");
+        query.setParameter("bookingId", bookingId);
+        return query.executeUpdate() > 0;
     }
 
     @Override
-    public void confirmBooking(Long bookingId) {
-        updateStatus(bookingId, "PAID");
+    public boolean confirmBooking(Long bookingId) {
+        Query query = entityManager.createQuery(
+                "UPDATE VERSIONED Booking b SET b.status = 'PAID' WHERE b.id = :bookingId AND b.status = 'BOOKED'");
+        query.setParameter("bookingId", bookingId);
+        return query.executeUpdate() > 0;
+    }
+
+    /**
+     * Загрузка бронирований из CSV. Активные бронирования (не CANCELLED) занимают места рейса;
+     * строки рейса, которому мест не хватает, отклоняются целиком. Мили клиентов не списываются -
+     * загружается уже состоявшаяся история, а не новые продажи.
+     */
+    @Override
+    public ImportResult importCsv(Reader csv) {
+        long rows = csvImporter.copyIn("import_bookings", IMPORT_COLUMNS, csv);
+
+        entityManager.createNativeQuery(
+                "UPDATE {h-schema}import_bookings s SET client_id = p.client_id, flight_id = p.flight_id, " +
+                        "booked_at = p.booked_at, paid_miles = p.paid_miles, miles = p.miles, " +
+                        "status = p.status, error = CASE " +
+                        "WHEN p.client_id IS NULL THEN 'неизвестный клиент' " +
+                        "WHEN p.departs_at IS NULL THEN 'неверное время вылета' " +
+                        "WHEN p.flight_id IS NULL THEN 'неизвестный рейс' " +
+                        "WHEN p.booked_at IS NULL THEN 'неверная дата бронирования' " +
+                        "WHEN p.status NOT IN ('BOOKED', 'PAID', 'CANCELLED') THEN 'неверный статус' " +
+                        "WHEN p.paid_miles IS NULL THEN 'неверный признак оплаты милями' " +
+                        "WHEN p.miles IS NULL OR p.miles < 0 THEN 'неверное число миль' END " +
+                        "FROM (SELECT v.*, (SELECT min(f.id) FROM {h-schema}flights f " +
+                        "WHERE f.flight_number = trim(v.flight_number) AND f.departure_time = v.departs_at) AS flight_id " +
+                        "FROM (SELECT i.line, i.flight_number, c.id AS client_id, " +
+                        "coalesce(nullif(upper(trim(i.status)), ''), 'BOOKED') AS status, " +
+                        CsvImporter.parsed("i.departure_time", "TIMESTAMP") + " AS departs_at, " +
+                        CsvImporter.parsed("i.booking_date", "TIMESTAMP", "LOCALTIMESTAMP") + " AS booked_at, " +
+                        CsvImporter.parsed("i.paid_with_miles", "BOOLEAN", "FALSE") + " AS paid_miles, " +
+                        CsvImporter.parsed("i.miles_used", "INTEGER", "0") + " AS miles " +
+                        "FROM {h-schema}import_bookings i " +
+                        "LEFT JOIN {h-schema}clients c ON c.email = trim(i.client_email)) v) p " +
+                        "WHERE p.line = s.line")
+                .executeUpdate();
+
+        // Рейсы блокируются в порядке id, как и при продаже мест: параллельная продажа ждёт загрузку,
+        // и проверка мест ниже видит окончательные числа
+        entityManager.createNativeQuery(
+                "SELECT count(*) FROM (SELECT f.id FROM {h-schema}flights f WHERE f.id IN (" +
+                        "SELECT s.flight_id FROM {h-schema}import_bookings s WHERE s.error IS NULL) " +
+                        "ORDER BY f.id FOR UPDATE) locked")
+                .getSingleResult();
+        entityManager.createNativeQuery(
+                "UPDATE {h-schema}import_bookings s SET error = 'на рейсе не хватает мест' " +
+                        "FROM (SELECT s.flight_id FROM {h-schema}import_bookings s " +
+                        "JOIN {h-schema}flights f ON f.id = s.flight_id " +
+                        "WHERE s.error IS NULL AND s.status <> 'CANCELLED' " +
+                        "GROUP BY s.flight_id, f.available_seats HAVING count(*) > f.available_seats) overbooked " +
+                        "WHERE s.flight_id = overbooked.flight_id AND s.error IS NULL AND s.status <> 'CANCELLED'")
+                .executeUpdate();
+
+        long newRows = ((Number) entityManager.createNativeQuery(
+                        "SELECT count(*) FROM {h-schema}import_bookings s WHERE s.error IS NULL")
+                .getSingleResult()).longValue();
+        long inserted = newRows == 0 ? 0 : entityManager.createNativeQuery(
+                        "INSERT INTO {h-schema}bookings (id, client_id, flight_id, booking_date, status, " +
+                                "paid_with_miles, miles_used) " +
+                                "SELECT b.hi - " + (CsvImporter.ID_BLOCK - 1) + " + n.row_index % " + CsvImporter.ID_BLOCK + ", " +
+                                "n.client_id, n.flight_id, n.booked_at, n.status, n.paid_miles, n.miles " +
+                                "FROM (SELECT s.*, row_number() OVER (ORDER BY s.line) - 1 AS row_index " +
+                                "FROM {h-schema}import_bookings s WHERE s.error IS NULL) n " +
+                                "JOIN " + csvImporter.idBlocks("bookings_id_seq") + "b ON b.block = n.row_index / " + CsvImporter.ID_BLOCK)
+                .setParameter("blocks", CsvImporter.idBlocksFor(newRows))
+                .executeUpdate();
+
+        int seatsTaken = entityManager.createNativeQuery(
+                "UPDATE {h-schema}flights f SET available_seats = f.available_seats - t.taken, version = f.version + 1 " +
+                        "FROM (SELECT s.flight_id, count(*) AS taken FROM {h-schema}import_bookings s " +
+                        "WHERE s.error IS NULL AND s.status <> 'CANCELLED' GROUP BY s.flight_id) t " +
+                        "WHERE f.id = t.flight_id")
+                .executeUpdate();
+        if (seatsTaken > 0) {
+            markUncommittedChanges();
+            afterCommit(() -> flightChangeListeners.forEach(FlightChangeListener::invalidateAll));
+        }
+        return csvImporter.finish("import_bookings", rows, inserted, 0);
     }
-}
\ No newline at end of file
+}
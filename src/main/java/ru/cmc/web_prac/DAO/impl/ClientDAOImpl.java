@@ -1,18 +1,43 @@
 package ru.cmc.web_prac.DAO.impl;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 import ru.cmc.web_prac.DAO.ClientDAO;
+import ru.cmc.web_prac.DAO.MilesLedgerDAO;
+import ru.cmc.web_prac.DTO.ClientRow;
+import ru.cmc.web_prac.DTO.ImportResult;
 import ru.cmc.web_prac.classes.Client;
+import ru.cmc.web_prac.classes.MilesLedgerEntry;
 
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 @Repository
 @Transactional
 public class ClientDAOImpl extends CommonDAOImpl<Client, Long> implements ClientDAO {
 
+    @Autowired
+    private MilesLedgerDAO milesLedgerDAO;
+
+    @Autowired
+    private CsvImporter csvImporter;
+
+    // Выборка строк списка клиентов (без загрузки сущностей)
+    private static final String ROW_SELECT =
+            "SELECT new ru.cmc.web_prac.DTO.ClientRow(c.id, c.fullName, c.email, c.phone, c.address, c.bonusMiles) " +
+                    "FROM Client c ";
+
+    // Столбцы CSV клиентов (заголовок файла); bonus_miles - начальные мили нового клиента
+    private static final String IMPORT_COLUMNS = "full_name, email, phone, address, bonus_miles";
+
     public ClientDAOImpl() {
         super(Client.class);
     }
@@ -28,6 +53,28 @@ public class ClientDAOImpl extends CommonDAOImpl<Client, Long> implements Client
         return results.isEmpty() ? null : results.get(0);
     }
 
+    /**
+     * Баланс меняется только записями журнала - вместо него последний id журнала клиента.
+     * Бронирования: число и наибольший id ловят добавление и удаление, сумма версий - правки
+     * и смену статуса, сумма версий рейсов - правки показанных рейсов. Историю не загружает.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<Object> getPageVersion(Long clientId) {
+        List<?> rows = entityManager.createNativeQuery(
+                        "SELECT c.version, " +
+                                "(SELECT MAX(l.id) FROM {h-schema}miles_ledger l WHERE l.client_id = c.id), " +
+                                "h.bookings, h.last_id, h.versions, h.flight_versions " +
+                                "FROM {h-schema}clients c CROSS JOIN LATERAL (" +
+                                "SELECT COUNT(*) AS bookings, MAX(b.id) AS last_id, SUM(b.version) AS versions, " +
+                                "SUM(f.version) AS flight_versions FROM {h-schema}bookings b " +
+                                "LEFT JOIN {h-schema}flights f ON f.id = b.flight_id WHERE b.client_id = c.id) h " +
+                                "WHERE c.id = :clientId")
+                .setParameter("clientId", clientId)
+                .getResultList();
+        return rows.isEmpty() ? null : Arrays.asList((Object[]) rows.get(0));
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<Client> getByNameContaining(String namepart) {
@@ -47,6 +94,82 @@ public class ClientDAOImpl extends CommonDAOImpl<Client, Long> implements Client
         return query.getResultList();
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public List<ClientRow> searchRowsByNameOrEmail(String searchTerm) {
+        TypedQuery<ClientRow> query = entityManager.createQuery(
+                ROW_SELECT + "WHERE LOWER(c.fullName) LIKE LOWER(:searchTerm) " +
+                        "OR LOWER(c.email) LIKE LOWER(:searchTerm) ORDER BY c.fullName", ClientRow.class);
+        query.setParameter("searchTerm", "%" + searchTerm + "%");
+        return query.getResultList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ClientRow> searchRows(String term, int limit) {
+        String normalized = term.trim().toLowerCase(Locale.ROOT);
+        if (normalized.isEmpty()) {
+            return List.of();
+        }
+        String digits = normalized.replaceAll("[^0-9]", "");
+        // Телефон ищется только по запросу хотя бы из трёх цифр, иначе совпадёт почти каждый
+        boolean byPhone = digits.length() >= 3;
+        String phone = "regexp_replace(c.phone, '[^0-9]', '', 'g')";
+
+        // Сначала id по триграммным индексам (LIKE - подстрока, <% - слово с опечатками), затем строки
+        Query query = entityManager.createNativeQuery(
+                "SELECT c.id FROM {h-schema}clients c " +
+                        "WHERE lower(c.full_name) LIKE :pattern OR lower(c.email) LIKE :pattern " +
+                        "OR :term <% lower(c.full_name) OR :term <% lower(c.email) " +
+                        (byPhone ? "OR " + phone + " LIKE :digits " : "") +
+                        "ORDER BY GREATEST(word_similarity(:term, lower(c.full_name)), " +
+                        "word_similarity(:term, lower(c.email))" +
+                        (byPhone ? ", CASE WHEN " + phone + " LIKE :digits THEN 1 ELSE 0 END" : "") +
+                        ") DESC, c.full_name, c.id " +
+                        "LIMIT :limit");
+        query.setParameter("pattern", "%" + escapeLike(normalized) + "%");
+        query.setParameter("term", normalized);
+        if (byPhone) {
+            query.setParameter("digits", "%" + digits + "%");
+        }
+        query.setParameter("limit", limit);
+
+        List<Long> ids = new ArrayList<>();
+        for (Object id : query.getResultList()) {
+            ids.add(((Number) id).longValue());
+        }
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, ClientRow> rows = new HashMap<>();
+        entityManager.createQuery(ROW_SELECT + "WHERE c.id IN :ids", ClientRow.class)
+                .setParameter("ids", ids)
+                .getResultList()
+                .forEach(row -> rows.put(row.id(), row));
+        List<ClientRow> ranked = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            ClientRow row = rows.get(id);
+            if (row != null) {
+                ranked.add(row);
+            }
+        }
+        return ranked;
+    }
+
+    // Keyset-страница строк списка клиентов в порядке id
+    @Override
+    @Transactional(readOnly = true)
+    public List<ClientRow> getRowPage(Long afterId, int limit) {
+        TypedQuery<ClientRow> query = entityManager.createQuery(
+                ROW_SELECT + (afterId == null ? "" : "WHERE c.id > :afterId ") + "ORDER BY c.id", ClientRow.class);
+        if (afterId != null) {
+            query.setParameter("afterId", afterId);
+        }
+        query.setMaxResults(limit);
+        return query.getResultList();
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<Client> getByBonusMilesGreaterThan(Integer miles) {
@@ -56,31 +179,96 @@ public class ClientDAOImpl extends CommonDAOImpl<Client, Long> implements Client
         return query.getResultList();
     }
 
+    // Мили клиента не перезаписываются: новое значение из формы становится корректировкой в журнале
+    @Override
+    public void update(Client entity) {
+        super.update(entity);
+        if (entity.getBonusMiles() != null) {
+            milesLedgerDAO.adjustTo(entity.getId(), entity.getBonusMiles());
+        }
+    }
+
     @Override
     public void updateBonusMiles(Long clientId, Integer newMiles) {
-        Query query = entityManager.createQuery(
-                "UPDATE Client c SET c.bonusMiles = :newMiles WHERE c.id = :clientId");
-        query.setParameter("newMiles", newMiles);
-        query.setParameter("clientId", clientId);
-        query.executeUpdate();
+        milesLedgerDAO.adjustTo(clientId, newMiles);
     }
 
     @Override
     public void addBonusMiles(Long clientId, Integer milesToAdd) {
-        Query query = entityManager.createQuery(
-                "UPDATE Client c SET c.bonusMiles = c.bonusMiles + :milesToAdd WHERE c.id = :clientId");
-        query.setParameter("milesToAdd", milesToAdd);
-        query.setParameter("clientId", clientId);
-        query.executeUpdate();
+        milesLedgerDAO.append(clientId, milesToAdd, MilesLedgerEntry.ADJUSTMENT, null);
+    }
+
+    @Override
+    public boolean deductBonusMiles(Long clientId, Integer milesToDeduct) {
+        return milesLedgerDAO.redeem(clientId, milesToDeduct, MilesLedgerEntry.REDEMPTION, null);
+    }
+
+    @Override
+    public boolean changeBonusMiles(Long clientId, int delta) {
+        if (delta < 0) {
+            return milesLedgerDAO.redeem(clientId, -delta, MilesLedgerEntry.ADJUSTMENT, null);
+        }
+        milesLedgerDAO.append(clientId, delta, MilesLedgerEntry.ADJUSTMENT, null);
+        return true;
     }
 
+    /**
+     * Загрузка клиентов из CSV. Клиент с уже известным email обновляется (ON CONFLICT по clients.email),
+     * его мили при этом не меняются - они ведутся журналом; новый клиент получает мили из файла
+     * как начальный снимок. Строки без email всегда добавляются. Если email встречается
+     * в файле несколько раз, действует последняя строка.
+     */
     @Override
-    public void deductBonusMiles(Long clientId, Integer milesToDeduct) {
-        Query query = entityManager.createQuery(
-                "UPDATE Client c SET c.bonusMiles = c.bonusMiles - :milesToDeduct " +
-                        "WHERE c.id = :clientId AND c.bonusMiles >= :milesToDeduct");
-        query.setParameter("milesToDeduct", milesToDeduct);
-        query.setParameter("clientId", clientId);
-        query.executeUpdate();
-    }
-}
\ No newline at end of file
+    public ImportResult importCsv(Reader csv) {
+        long rows = csvImporter.copyIn("import_clients", IMPORT_COLUMNS, csv);
+
+        entityManager.createNativeQuery(
+                "UPDATE {h-schema}import_clients s SET miles = p.miles, error = CASE " +
+                        "WHEN coalesce(trim(s.full_name), '') = '' OR length(trim(s.full_name)) > 100 " +
+                        "THEN 'неверное имя' " +
+                        "WHEN length(trim(s.email)) > 100 OR (trim(s.email) <> '' AND strpos(s.email, '@') = 0) " +
+                        "THEN 'неверный email' " +
+                        "WHEN length(trim(s.phone)) > 20 THEN 'неверный телефон' " +
+                        "WHEN p.miles IS NULL OR p.miles < 0 THEN 'неверное число миль' " +
+                        "WHEN p.later > 1 THEN 'email повторяется ниже в файле' END " +
+                        "FROM (SELECT i.line, " + CsvImporter.parsed("i.bonus_miles", "INTEGER", "0") + " AS miles, " +
+                        "CASE WHEN coalesce(trim(i.email), '') = '' THEN 1 " +
+                        "ELSE row_number() OVER (PARTITION BY trim(i.email) ORDER BY i.line DESC) END AS later " +
+                        "FROM {h-schema}import_clients i) p " +
+                        "WHERE p.line = s.line")
+                .executeUpdate();
+
+        // Новым клиентам - id из пачек последовательности, известным - их собственный id:
+        // такая строка всё равно уйдёт в ON CONFLICT. Клиента, добавленного параллельно,
+        // тоже обновит ON CONFLICT, его строка лишь потратит id из пачки
+        long newRows = ((Number) entityManager.createNativeQuery(
+                        "SELECT count(*) FROM {h-schema}import_clients s WHERE s.error IS NULL AND NOT EXISTS (" +
+                                "SELECT 1 FROM {h-schema}clients c WHERE c.email = trim(s.email))")
+                .getSingleResult()).longValue();
+        Object[] merged = (Object[]) entityManager.createNativeQuery(
+                        "WITH merged AS (" +
+                                "INSERT INTO {h-schema}clients (id, full_name, email, phone, address, bonus_miles, version) " +
+                                "SELECT coalesce(n.client_id, b.hi - " + (CsvImporter.ID_BLOCK - 1) + " + n.row_index % " + CsvImporter.ID_BLOCK + "), " +
+                                "trim(n.full_name), nullif(trim(n.email), ''), nullif(trim(n.phone), ''), " +
+                                "nullif(trim(n.address), ''), n.miles, 0 " +
+                                "FROM (SELECT s.*, c.id AS client_id, CASE WHEN c.id IS NULL THEN " +
+                                "row_number() OVER (PARTITION BY c.id IS NULL ORDER BY s.line) - 1 END AS row_index " +
+                                "FROM {h-schema}import_clients s " +
+                                "LEFT JOIN {h-schema}clients c ON c.email = trim(s.email) WHERE s.error IS NULL) n " +
+                                "LEFT JOIN " + csvImporter.idBlocks("clients_id_seq") + "b ON b.block = n.row_index / " + CsvImporter.ID_BLOCK + " " +
+                                "ON CONFLICT (email) DO UPDATE SET full_name = EXCLUDED.full_name, " +
+                                "phone = EXCLUDED.phone, address = EXCLUDED.address, version = clients.version + 1 " +
+                                "RETURNING xmax = 0 AS inserted) " +
+                                "SELECT count(*) FILTER (WHERE inserted), count(*) FILTER (WHERE NOT inserted) FROM merged")
+                .setParameter("blocks", CsvImporter.idBlocksFor(newRows))
+                .getSingleResult();
+        long inserted = ((Number) merged[0]).longValue();
+        long updated = ((Number) merged[1]).longValue();
+        return csvImporter.finish("import_clients", rows, inserted, updated);
+    }
+
+    // Символы шаблона LIKE в запросе ищутся как обычные
+    private static String escapeLike(String term) {
+        return term.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
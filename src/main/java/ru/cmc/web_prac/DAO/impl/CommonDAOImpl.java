@@ -1,17 +1,35 @@
 package ru.cmc.web_prac.DAO.impl;
 
+import jakarta.annotation.PostConstruct;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.cmc.web_prac.DAO.CommonDAO;
 import ru.cmc.web_prac.classes.CommonEntity;
 
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.OptimisticLockException;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Root;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Repository
 @Transactional
@@ -23,10 +41,35 @@ public abstract class CommonDAOImpl<T extends CommonEntity<ID>, ID extends Seria
 
     protected Class<T> persistentClass;
 
+    // Сколько строк драйвер забирает из серверного курсора за один раз
+    @Value("${app.dao.stream-fetch-size:1000}")
+    protected int streamFetchSize;
+
+    // Размер JDBC-батча; совпадает с hibernate.jdbc.batch_size
+    @Value("${app.dao.batch-size:50}")
+    protected int batchSize;
+
+    // Сколько раз update(id, changes) пробует записать изменения при конфликте версий
+    @Value("${app.dao.update-attempts:5}")
+    protected int updateAttempts;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    // Ключ, которым текущая транзакция помечается как имеющая незафиксированные изменения этого DAO
+    private final Object uncommittedChangesKey = new Object();
+
     public CommonDAOImpl(Class<T> entityClass) {
         this.persistentClass = entityClass;
     }
 
+    @PostConstruct
+    void initTransactionTemplate() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
     @Override
     @Transactional(readOnly = true)
     public T getById(ID id) {
@@ -42,15 +85,74 @@ public abstract class CommonDAOImpl<T extends CommonEntity<ID>, ID extends Seria
         return entityManager.createQuery(criteriaQuery).getResultList();
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public List<T> getPageAfter(ID afterId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> criteriaQuery = cb.createQuery(persistentClass);
+        Root<T> root = criteriaQuery.from(persistentClass);
+        Path<Comparable> idPath = root.get("id");
+
+        if (afterId != null) {
+            criteriaQuery.where(cb.greaterThan(idPath, (Comparable) afterId));
+        }
+        criteriaQuery.orderBy(cb.asc(idPath));
+
+        return entityManager.createQuery(criteriaQuery)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY, readOnly = true)
+    public Stream<T> streamAll() {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> criteriaQuery = cb.createQuery(persistentClass);
+        Root<T> root = criteriaQuery.from(persistentClass);
+        criteriaQuery.orderBy(cb.asc(root.get("id")));
+        return streamDetached(entityManager.createQuery(criteriaQuery));
+    }
+
+    /**
+     * Выполняет запрос через серверный курсор PostgreSQL (fetch size вместо загрузки
+     * всего результата) и отсоединяет каждую сущность от контекста после чтения,
+     * чтобы persistence context не рос вместе с числом прочитанных строк.
+     * Поток живёт только внутри текущей транзакции и должен быть закрыт вызывающим.
+     */
+    protected <E> Stream<E> streamDetached(TypedQuery<E> query) {
+        return stream(query).peek(entityManager::detach);
+    }
+
+    // То же для проекций: отсоединять нечего, только курсор и read-only
+    protected <R> Stream<R> stream(TypedQuery<R> query) {
+        query.setHint(HibernateHints.HINT_FETCH_SIZE, streamFetchSize);
+        query.setHint(HibernateHints.HINT_READ_ONLY, true);
+        return query.getResultStream();
+    }
+
     @Override
     public void save(T entity) {
         entityManager.persist(entity);
     }
 
+    /**
+     * Массовое сохранение: INSERT уходят JDBC-батчами по batchSize строк,
+     * после каждой пачки её сущности сбрасываются и отсоединяются, чтобы память
+     * не росла с размером коллекции. Отсоединяются только сохранённые здесь
+     * сущности - остальной контекст вызывающей транзакции не трогается.
+     */
     @Override
     public void saveCollection(Collection<T> entities) {
+        List<T> batch = new ArrayList<>(batchSize);
         for (T entity : entities) {
             save(entity);
+            batch.add(entity);
+            if (batch.size() == batchSize) {
+                entityManager.flush();
+                batch.forEach(entityManager::detach);
+                batch.clear();
+            }
         }
     }
 
@@ -64,6 +166,79 @@ public abstract class CommonDAOImpl<T extends CommonEntity<ID>, ID extends Seria
 
     @Override
     public void update(T entity) {
-        entityManager.merge(entity);
+        updated(entityManager.merge(entity));
+    }
+
+    /**
+     * Изменение без блокировок: запись читается, к ней применяются changes, и при фиксации
+     * Hibernate проверяет версию (@Version). Если запись успел изменить кто-то другой
+     * (правка или массовый UPDATE VERSIONED), попытка откатывается, и changes применяются
+     * заново к свежим данным - до updateAttempts раз. Каждая попытка - своя транзакция,
+     * поэтому вызов внутри чужой транзакции запрещён.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NEVER)
+    public T update(ID id, Consumer<T> changes) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> {
+                    T entity = entityManager.find(persistentClass, id);
+                    if (entity == null) {
+                        return null;
+                    }
+                    changes.accept(entity);
+                    entityManager.flush();
+                    updated(entity);
+                    return entity;
+                });
+            } catch (OptimisticLockException | OptimisticLockingFailureException e) {
+                if (attempt >= updateAttempts) {
+                    throw e instanceof OptimisticLockingFailureException springException
+                            ? springException
+                            : new ObjectOptimisticLockingFailureException(persistentClass, id, e);
+                }
+            }
+        }
+    }
+
+    // Вызывается после изменения записи (update), пока транзакция ещё не зафиксирована
+    protected void updated(T entity) {
+    }
+
+    /**
+     * Помечает текущую транзакцию как изменившую данные этого DAO.
+     * Пока она не завершилась, кэши в памяти не видят её изменений, поэтому
+     * чтения внутри неё должны идти в БД (см. {@link #hasUncommittedChanges()}).
+     */
+    protected void markUncommittedChanges() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(uncommittedChangesKey)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(uncommittedChangesKey, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(uncommittedChangesKey);
+            }
+        });
+    }
+
+    protected boolean hasUncommittedChanges() {
+        return TransactionSynchronizationManager.hasResource(uncommittedChangesKey);
+    }
+
+    // Выполняет действие после фиксации текущей транзакции (или сразу, если транзакции нет)
+    protected void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
-}
\ No newline at end of file
+}
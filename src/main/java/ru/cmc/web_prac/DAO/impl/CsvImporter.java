@@ -0,0 +1,119 @@
+package ru.cmc.web_prac.DAO.impl;
+
+import org.hibernate.Session;
+import org.hibernate.cfg.AvailableSettings;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.cmc.web_prac.DTO.ImportResult;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Общая часть загрузок CSV (importCsv в DAO): COPY файла в промежуточную таблицу,
+ * id новых строк пачками последовательности, разбор текстовых столбцов и итог загрузки.
+ * Сами проверки и слияние строк пишет DAO; всё выполняется в его транзакции.
+ */
+@Component
+public class CsvImporter {
+
+    // Шаг последовательностей id: allocationSize сущностей и INCREMENT BY в create.sql
+    public static final int ID_BLOCK = 50;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Сколько отклонённых строк загрузки перечислять в её итоге
+    @Value("${app.import.reported-errors:100}")
+    private int reportedErrors;
+
+    // work_mem транзакции загрузки
+    @Value("${app.import.work-mem:64MB}")
+    private String workMem;
+
+    /**
+     * Загружает CSV в промежуточную таблицу протоколом COPY. Первая строка файла - заголовок,
+     * он должен совпадать со списком columns. Строки идут из csv прямо в соединение
+     * и в памяти не накапливаются. Таблица очищается перед загрузкой; TRUNCATE держит её
+     * до конца транзакции, поэтому загрузки одного вида выполняются по очереди.
+     * Возвращает число загруженных строк.
+     */
+    public long copyIn(String stagingTable, String columns, Reader csv) {
+        entityManager.createNativeQuery("TRUNCATE {h-schema}" + stagingTable + " RESTART IDENTITY").executeUpdate();
+        String copy = "COPY " + qualified(stagingTable) + " (" + columns + ") FROM STDIN WITH (FORMAT csv, HEADER MATCH)";
+        long rows = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try {
+                return connection.unwrap(PGConnection.class).getCopyAPI().copyIn(copy, csv);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        // Автоанализ не успевает за только что заполненной таблицей: без статистики планировщик
+        // считает её почти пустой и выбирает вложенные циклы. Сортировки и хеши слияния
+        // получают больше памяти до конца транзакции
+        entityManager.createNativeQuery("ANALYZE {h-schema}" + stagingTable).executeUpdate();
+        entityManager.createNativeQuery("SELECT set_config('work_mem', :workMem, true)")
+                .setParameter("workMem", workMem)
+                .getSingleResult();
+        return rows;
+    }
+
+    /**
+     * Подзапрос (block, hi) из :blocks пачек id последовательности sequence. Пачке hi принадлежат id
+     * от hi - ID_BLOCK + 1 до hi - так же их берёт pooled-оптимизатор Hibernate, поэтому id загрузки
+     * не пересекаются с id, которые раздаёт приложение. Начальное значение последовательности (1)
+     * пачкой не считается: ей соответствовали бы id не больше нуля.
+     */
+    public String idBlocks(String sequence) {
+        return "(SELECT row_number() OVER (ORDER BY hi) - 1 AS block, hi FROM " +
+                "(SELECT nextval('" + qualified(sequence) + "') AS hi FROM generate_series(1, :blocks)) q " +
+                "WHERE hi >= " + ID_BLOCK + ") ";
+    }
+
+    // Пачек id на rows строк, с запасом на отброшенное начальное значение
+    public static long idBlocksFor(long rows) {
+        return rows / ID_BLOCK + 2;
+    }
+
+    // Значение текстового столбца промежуточной таблицы, приведённое к type, или NULL, если оно не приводится
+    public static String parsed(String column, String type) {
+        return "CASE WHEN pg_input_is_valid(trim(" + column + "), '" + type + "') " +
+                "THEN CAST(trim(" + column + ") AS " + type + ") END";
+    }
+
+    // То же, но пустое значение заменяется на defaultValue
+    public static String parsed(String column, String type, String defaultValue) {
+        return "CASE WHEN coalesce(trim(" + column + "), '') = '' THEN " + defaultValue +
+                " ELSE " + parsed(column, type) + " END";
+    }
+
+    // Итог загрузки по отметкам проверки в промежуточной таблице; после этого таблица очищается
+    public ImportResult finish(String stagingTable, long rows, long inserted, long updated) {
+        long rejected = ((Number) entityManager.createNativeQuery(
+                "SELECT count(*) FROM {h-schema}" + stagingTable + " WHERE error IS NOT NULL")
+                .getSingleResult()).longValue();
+        @SuppressWarnings("unchecked")
+        List<Object[]> errors = entityManager.createNativeQuery(
+                        "SELECT line, error FROM {h-schema}" + stagingTable + " WHERE error IS NOT NULL ORDER BY line")
+                .setMaxResults(reportedErrors)
+                .getResultList();
+        entityManager.createNativeQuery("TRUNCATE {h-schema}" + stagingTable).executeUpdate();
+
+        // Строки данных нумеруются с 1, в файле перед ними заголовок
+        return new ImportResult(rows, inserted, updated, rejected, errors.stream()
+                .map(row -> new ImportResult.RowError(((Number) row[0]).longValue() + 1, (String) row[1]))
+                .toList());
+    }
+
+    // Имя таблицы или последовательности со схемой приложения - для SQL в обход Hibernate
+    private String qualified(String name) {
+        Object schema = entityManager.getEntityManagerFactory().getProperties().get(AvailableSettings.DEFAULT_SCHEMA);
+        return schema == null ? name : schema + "." + name;
+    }
+}
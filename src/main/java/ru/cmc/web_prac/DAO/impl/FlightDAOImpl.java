@@ -1,24 +1,97 @@
 package ru.cmc.web_prac.DAO.impl;
 
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.cmc.web_prac.DAO.FlightDAO;
+import ru.cmc.web_prac.DTO.AirportSuggestion;
+import ru.cmc.web_prac.DTO.FlightSummary;
+import ru.cmc.web_prac.DTO.ImportResult;
+import ru.cmc.web_prac.cache.AirportTrie;
+import ru.cmc.web_prac.cache.FlightChangeListener;
+import ru.cmc.web_prac.cache.FlightListingCache;
+import ru.cmc.web_prac.cache.FlightSearchIndex;
 import ru.cmc.web_prac.classes.Flight;
 import ru.cmc.web_prac.classes.Airline;
 
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
+import java.io.Reader;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Repository
 @Transactional
 public class FlightDAOImpl extends CommonDAOImpl<Flight, Long> implements FlightDAO {
 
+    // Выборка облегчённых представлений рейсов (без загрузки сущностей)
+    private static final String SUMMARY_SELECT =
+            "SELECT new ru.cmc.web_prac.DTO.FlightSummary(f.id, f.flightNumber, a.name, " +
+                    "f.departureAirport, f.arrivalAirport, f.departureTime, f.arrivalTime, " +
+                    "f.price, f.totalSeats, f.availableSeats) " +
+                    "FROM Flight f LEFT JOIN f.airline a ";
+
+    // Столбцы CSV расписания (заголовок файла); available_seats можно оставить пустым - все места свободны
+    private static final String IMPORT_COLUMNS = "flight_number, airline, departure_airport, arrival_airport, " +
+            "departure_time, arrival_time, price, total_seats, available_seats";
+
+    // Сколько изменений одной транзакции передаётся слушателям поштучно; при большем числе - полная инвалидация
+    private static final int MAX_PENDING_CHANGES = 10_000;
+
+    @Autowired
+    private FlightSearchIndex searchIndex;
+
+    @Autowired
+    private FlightListingCache listingCache;
+
+    @Autowired
+    private AirportTrie airportTrie;
+
+    @Autowired
+    private List<FlightChangeListener> changeListeners;
+
+    @Autowired
+    private CsvImporter csvImporter;
+
+    // Ключ буфера изменений рейсов текущей транзакции
+    private final Object pendingChangesKey = new Object();
+
     public FlightDAOImpl() {
         super(Flight.class);
     }
 
+    @Override
+    public void save(Flight entity) {
+        super.save(entity);
+        FlightSummary summary = summaryOf(entity);
+        publish(listener -> listener.flightSaved(summary));
+    }
+
+    @Override
+    protected void updated(Flight entity) {
+        FlightSummary summary = summaryOf(entity);
+        publish(listener -> listener.flightSaved(summary));
+    }
+
+    @Override
+    public void delete(Flight entity) {
+        super.delete(entity);
+        Long flightId = entity.getId();
+        publish(listener -> listener.flightRemoved(flightId));
+    }
+
     @Override
     @Transactional(readOnly = true)
     public Flight getByFlightNumber(String flightNumber) {
@@ -61,6 +134,18 @@ public class FlightDAOImpl extends CommonDAOImpl<Flight, Long> implements Flight
         return query.getResultList();
     }
 
+    // Потоковый вариант для выгрузок: вызывать внутри транзакции и закрывать поток
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY, readOnly = true)
+    public Stream<Flight> streamByDepartureDate(LocalDateTime startDate, LocalDateTime endDate) {
+        TypedQuery<Flight> query = entityManager.createQuery(
+                "SELECT f FROM Flight f WHERE f.departureTime BETWEEN :startDate AND :endDate ORDER BY f.departureTime",
+                Flight.class);
+        query.setParameter("startDate", startDate);
+        query.setParameter("endDate", endDate);
+        return streamDetached(query);
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<Flight> searchFlights(String departureAirport, String arrivalAirport, LocalDateTime departureDate) {
@@ -82,6 +167,91 @@ public class FlightDAOImpl extends CommonDAOImpl<Flight, Long> implements Flight
         return query.getResultList();
     }
 
+    /**
+     * Подсказки аэропортов для формы поиска. Отвечает префиксное дерево в памяти ({@link AirportTrie});
+     * в БД запрос уходит только при его построении или если текущая транзакция сама изменяла рейсы.
+     * Пока дерево строит другой поток - пустой список.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<AirportSuggestion> suggestAirports(String prefix, int limit) {
+        if (!hasUncommittedChanges()) {
+            airportTrie.rebuildIfNeeded(() -> queryAirports(null, null));
+            List<AirportSuggestion> suggestions = airportTrie.suggest(prefix, limit);
+            if (suggestions != null) {
+                return suggestions;
+            }
+        }
+        // Дерево не построено (первое построение идёт в другом потоке или после инвалидации) - ответит БД
+        try (Stream<AirportSuggestion> airports = queryAirports(prefix, limit)) {
+            return airports.toList();
+        }
+    }
+
+    // Коды аэропортов вылета и прилёта с числом рейсов; без prefix и limit - все
+    private Stream<AirportSuggestion> queryAirports(String prefix, Integer limit) {
+        boolean byPrefix = prefix != null && !prefix.isBlank();
+        Query query = entityManager.createNativeQuery(
+                "SELECT airport, COUNT(*) AS flights FROM (" +
+                        "SELECT departure_airport AS airport FROM {h-schema}flights " +
+                        "UNION ALL SELECT arrival_airport FROM {h-schema}flights) a " +
+                        "WHERE airport IS NOT NULL " +
+                        (byPrefix ? "AND upper(airport) LIKE :prefix " : "") +
+                        "GROUP BY airport" +
+                        (limit != null ? " ORDER BY flights DESC, airport LIMIT :limit" : ""));
+        if (byPrefix) {
+            query.setParameter("prefix", prefix.trim().toUpperCase(Locale.ROOT)
+                    .replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+        }
+        if (limit != null) {
+            query.setParameter("limit", limit);
+        }
+        @SuppressWarnings("unchecked")
+        Stream<Object[]> rows = query.getResultStream();
+        return rows.map(row -> new AirportSuggestion(((String) row[0]).toUpperCase(Locale.ROOT),
+                ((Number) row[1]).longValue()));
+    }
+
+    /**
+     * Поиск для главной страницы. Обслуживается индексом в памяти ({@link FlightSearchIndex});
+     * в БД уходит, только если индекс не может ответить (даты в прошлом, индекс не построен)
+     * или текущая транзакция сама изменяла рейсы.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<FlightSummary> searchFlightSummaries(String departureAirport, String arrivalAirport,
+                                                     LocalDateTime departureDate) {
+        LocalDate day = departureDate.toLocalDate();
+
+        if (!hasUncommittedChanges()) {
+            LocalDate today = LocalDate.now();
+            searchIndex.rebuildIfNeeded(today, () -> {
+                TypedQuery<FlightSummary> query = entityManager.createQuery(
+                        SUMMARY_SELECT + "WHERE f.departureTime >= :from", FlightSummary.class);
+                query.setParameter("from", today.atStartOfDay());
+                return stream(query);
+            });
+
+            List<FlightSummary> indexed = searchIndex.search(departureAirport, arrivalAirport, day);
+            if (indexed != null) {
+                return indexed;
+            }
+        }
+
+        TypedQuery<FlightSummary> query = entityManager.createQuery(
+                SUMMARY_SELECT + "WHERE f.departureAirport = :departure " +
+                        "AND f.arrivalAirport = :arrival " +
+                        "AND f.departureTime >= :startOfDay AND f.departureTime < :nextDay " +
+                        "AND f.availableSeats > 0 " +
+                        "ORDER BY f.departureTime, f.id",
+                FlightSummary.class);
+        query.setParameter("departure", departureAirport);
+        query.setParameter("arrival", arrivalAirport);
+        query.setParameter("startOfDay", day.atStartOfDay());
+        query.setParameter("nextDay", day.plusDays(1).atStartOfDay());
+        return query.getResultList();
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<Flight> getAvailableFlights() {
@@ -105,28 +275,354 @@ public class FlightDAOImpl extends CommonDAOImpl<Flight, Long> implements Flight
         return query.getResultList();
     }
 
+    /**
+     * Keyset-пагинация для списка рейсов: следующая страница начинается после рейса afterId
+     * в порядке сортировки sortBy. Значения ключа сортировки берутся из самого рейса afterId,
+     * поэтому стоимость страницы не зависит от её номера. Условие записано сравнением кортежей,
+     * чтобы PostgreSQL начинал сканирование индекса (ключ, id) сразу с нужной строки.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<Flight> getAllSortedPage(String sortBy, Long afterId, int limit) {
+        return sortedPage("SELECT f FROM Flight f ", Flight.class, sortBy, afterId, limit);
+    }
+
+    /**
+     * То же, что getAllSortedPage, но строками для списка без загрузки сущностей.
+     * Страницы отдаёт кэш списков в памяти ({@link FlightListingCache}); в БД запрос уходит,
+     * только если кэш не может ответить или текущая транзакция сама изменяла рейсы.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<FlightSummary> getSummaryPage(String sortBy, Long afterId, int limit) {
+        if (!hasUncommittedChanges()) {
+            rebuildListingCache();
+            List<FlightSummary> cached = listingCache.page(sortBy, afterId, limit);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        return sortedPage(SUMMARY_SELECT, FlightSummary.class, sortBy, afterId, limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<FlightSummary> getAvailableFlightSummaries() {
+        if (!hasUncommittedChanges()) {
+            rebuildListingCache();
+            List<FlightSummary> cached = listingCache.available();
+            if (cached != null) {
+                return cached;
+            }
+        }
+        TypedQuery<FlightSummary> query = entityManager.createQuery(
+                SUMMARY_SELECT + "WHERE f.availableSeats > 0 ORDER BY f.departureTime, f.id", FlightSummary.class);
+        return query.getResultList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public FlightSummary getSummary(Long flightId) {
+        List<FlightSummary> summaries = entityManager.createQuery(
+                        SUMMARY_SELECT + "WHERE f.id = :flightId", FlightSummary.class)
+                .setParameter("flightId", flightId)
+                .getResultList();
+        return summaries.isEmpty() ? null : summaries.get(0);
+    }
+
+    // Версия рейса растёт при любой правке и смене числа мест; у авиакомпании версии нет - берётся имя
+    @Override
+    @Transactional(readOnly = true)
+    public List<Object> getPageVersion(Long flightId) {
+        List<?> rows = entityManager.createNativeQuery(
+                        "SELECT f.version, a.name FROM {h-schema}flights f " +
+                                "LEFT JOIN {h-schema}airlines a ON a.id = f.airline_id WHERE f.id = :flightId")
+                .setParameter("flightId", flightId)
+                .getResultList();
+        return rows.isEmpty() ? null : Arrays.asList((Object[]) rows.get(0));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY, readOnly = true)
+    public Stream<FlightSummary> streamSummaries(String sortBy) {
+        String sortKey = sortBy == null ? "date" : sortBy.toLowerCase();
+        return stream(entityManager.createQuery(SUMMARY_SELECT + orderBy(sortKey), FlightSummary.class));
+    }
+
+    private void rebuildListingCache() {
+        listingCache.rebuildIfNeeded(() -> stream(entityManager.createQuery(SUMMARY_SELECT, FlightSummary.class)));
+    }
+
+    private <R> List<R> sortedPage(String select, Class<R> resultClass, String sortBy, Long afterId, int limit) {
+        String sortKey = sortBy == null ? "date" : sortBy.toLowerCase();
+        Flight anchor = afterId == null ? null : entityManager.find(Flight.class, afterId);
+        if (afterId != null && anchor == null) {
+            // Рейса afterId нет: пустая страница, а не первая - иначе листание зациклится
+            return List.of();
+        }
+
+        String where = "";
+        if (anchor != null) {
+            where = switch (sortKey) {
+                case "price" -> "WHERE (f.price, f.id) > (:price, :anchorId) ";
+                case "route" -> "WHERE (f.departureAirport, f.arrivalAirport, f.departureTime, f.id) " +
+                        "> (:departure, :arrival, :departureTime, :anchorId) ";
+                default -> "WHERE (f.departureTime, f.id) > (:departureTime, :anchorId) ";
+            };
+        }
+
+        TypedQuery<R> query = entityManager.createQuery(select + where + orderBy(sortKey), resultClass);
+        if (anchor != null) {
+            query.setParameter("anchorId", anchor.getId());
+            switch (sortKey) {
+                case "price" -> query.setParameter("price", anchor.getPrice());
+                case "route" -> {
+                    query.setParameter("departure", anchor.getDepartureAirport());
+                    query.setParameter("arrival", anchor.getArrivalAirport());
+                    query.setParameter("departureTime", anchor.getDepartureTime());
+                }
+                default -> query.setParameter("departureTime", anchor.getDepartureTime());
+            }
+        }
+        query.setMaxResults(limit);
+        return query.getResultList();
+    }
+
+    // Порядок списка рейсов; id в конце делает его однозначным для keyset-пагинации
+    private static String orderBy(String sortKey) {
+        return switch (sortKey) {
+            case "price" -> "ORDER BY f.price ASC, f.id ASC";
+            case "route" -> "ORDER BY f.departureAirport, f.arrivalAirport, f.departureTime, f.id";
+            default -> "ORDER BY f.departureTime, f.id";
+        };
+    }
+
+    // Изменения мест возвращают итоговое число мест и версию строки - их и получают слушатели
     @Override
     public void updateAvailableSeats(Long flightId, Integer newAvailableSeats) {
-        Query query = entityManager.createQuery(
-                "UPDATE Flight f SET f.availableSeats = :seats WHERE f.id = :flightId");
+        Query query = entityManager.createNativeQuery(
+                "UPDATE {h-schema}flights SET available_seats = :seats, version = version + 1 " +
+                        "WHERE id = :flightId RETURNING id, available_seats, version");
         query.setParameter("seats", newAvailableSeats);
         query.setParameter("flightId", flightId);
-        query.executeUpdate();
+        publishSeats(query.getResultList());
     }
 
     @Override
-    public void decrementAvailableSeats(Long flightId) {
-        Query query = entityManager.createQuery(
-                "UPDATE Flight f SET f.availableSeats = f.availableSeats - 1 WHERE f.id = :flightId AND f.availableSeats > 0");
+    public boolean decrementAvailableSeats(Long flightId) {
+        Query query = entityManager.createNativeQuery(
+                "UPDATE {h-schema}flights SET available_seats = available_seats - 1, version = version + 1 " +
+                        "WHERE id = :flightId AND available_seats > 0 RETURNING id, available_seats, version");
         query.setParameter("flightId", flightId);
-        query.executeUpdate();
+        return publishSeats(query.getResultList()) > 0;
     }
 
     @Override
     public void incrementAvailableSeats(Long flightId) {
-        Query query = entityManager.createQuery(
-                "UPDATE Flight f SET f.availableSeats = f.availableSeats + 1 WHERE f.id = :flightId");
+        Query query = entityManager.createNativeQuery(
+                "UPDATE {h-schema}flights SET available_seats = available_seats + 1, version = version + 1 " +
+                        "WHERE id = :flightId RETURNING id, available_seats, version");
         query.setParameter("flightId", flightId);
-        query.executeUpdate();
+        publishSeats(query.getResultList());
+    }
+
+    /**
+     * Одно условное UPDATE на все рейсы: строки блокируются в порядке id (как и при загрузке бронирований),
+     * остаток каждого рейса уменьшается не больше чем до нуля. Забранное число вычисляется
+     * в подзапросе по уже заблокированной (последней) версии строки.
+     */
+    @Override
+    public Map<Long, Integer> takeSeats(Map<Long, Integer> seatsByFlight) {
+        return changeSeats(seatsByFlight,
+                "UPDATE {h-schema}flights f SET available_seats = f.available_seats - t.seats, " +
+                        "version = f.version + 1 " +
+                        "FROM (SELECT x.id, LEAST(v.seats, x.available_seats) AS seats FROM {h-schema}flights x " +
+                        "JOIN " + seatValues(seatsByFlight.size()) + "ON x.id = v.id " +
+                        "WHERE v.seats > 0 AND x.available_seats > 0 ORDER BY x.id FOR UPDATE OF x) t " +
+                        "WHERE f.id = t.id RETURNING f.id, f.available_seats, f.version, t.seats");
+    }
+
+    @Override
+    public void returnSeats(Map<Long, Integer> seatsByFlight) {
+        changeSeats(seatsByFlight,
+                "UPDATE {h-schema}flights f SET available_seats = f.available_seats + t.seats, " +
+                        "version = f.version + 1 " +
+                        "FROM (SELECT x.id, v.seats FROM {h-schema}flights x " +
+                        "JOIN " + seatValues(seatsByFlight.size()) + "ON x.id = v.id " +
+                        "WHERE v.seats > 0 ORDER BY x.id FOR UPDATE OF x) t " +
+                        "WHERE f.id = t.id RETURNING f.id, f.available_seats, f.version, t.seats");
+    }
+
+    // Выполняет UPDATE мест по таблице (id, seats) и сообщает слушателям новое число мест каждого рейса
+    private Map<Long, Integer> changeSeats(Map<Long, Integer> seatsByFlight, String sql) {
+        Map<Long, Integer> changed = new HashMap<>();
+        if (seatsByFlight.isEmpty()) {
+            return changed;
+        }
+        Query query = entityManager.createNativeQuery(sql);
+        int index = 0;
+        for (Map.Entry<Long, Integer> entry : seatsByFlight.entrySet()) {
+            query.setParameter("flight" + index, entry.getKey());
+            query.setParameter("seats" + index, entry.getValue());
+            index++;
+        }
+        List<?> rows = query.getResultList();
+        for (Object row : rows) {
+            Object[] values = (Object[]) row;
+            changed.put(((Number) values[0]).longValue(), ((Number) values[3]).intValue());
+        }
+        publishSeats(rows);
+        return changed;
+    }
+
+    // Строки (id, available_seats, version, ...) после UPDATE мест; возвращает их число
+    private int publishSeats(List<?> rows) {
+        for (Object row : rows) {
+            Object[] values = (Object[]) row;
+            Long flightId = ((Number) values[0]).longValue();
+            int seats = ((Number) values[1]).intValue();
+            long version = ((Number) values[2]).longValue();
+            publish(listener -> listener.seatsSet(flightId, seats, version));
+        }
+        return rows.size();
+    }
+
+    // (VALUES (:flight0, :seats0), ...) v(id, seats) - параметры связывает changeSeats
+    private static String seatValues(int rows) {
+        StringBuilder values = new StringBuilder("(VALUES ");
+        for (int i = 0; i < rows; i++) {
+            values.append(i == 0 ? "" : ", ")
+                    .append("(CAST(:flight").append(i).append(" AS BIGINT), CAST(:seats").append(i).append(" AS INTEGER))");
+        }
+        return values.append(") v(id, seats) ").toString();
+    }
+
+    /**
+     * Загрузка расписания из CSV. Рейс определяется номером и временем вылета: найденный рейс
+     * обновляется, остальные добавляются. У существующего рейса свободные места не берутся из файла,
+     * а сдвигаются на изменение общего числа мест - проданные места не теряются.
+     * Если в файле один рейс встречается несколько раз, действует последняя строка.
+     */
+    @Override
+    public ImportResult importCsv(Reader csv) {
+        long rows = csvImporter.copyIn("import_flights", IMPORT_COLUMNS, csv);
+
+        // Разбор и проверка всех строк одним проходом
+        entityManager.createNativeQuery(
+                "UPDATE {h-schema}import_flights s SET airline_id = p.airline_id, departs_at = p.departs_at, " +
+                        "arrives_at = p.arrives_at, fare = p.fare, seats = p.seats, free_seats = p.free_seats, " +
+                        "error = CASE " +
+                        "WHEN coalesce(trim(s.flight_number), '') = '' OR length(trim(s.flight_number)) > 10 " +
+                        "THEN 'неверный номер рейса' " +
+                        "WHEN p.airline_id IS NULL THEN 'неизвестная авиакомпания' " +
+                        "WHEN coalesce(trim(s.departure_airport), '') = '' OR length(trim(s.departure_airport)) > 10 " +
+                        "THEN 'неверный аэропорт вылета' " +
+                        "WHEN coalesce(trim(s.arrival_airport), '') = '' OR length(trim(s.arrival_airport)) > 10 " +
+                        "THEN 'неверный аэропорт прилёта' " +
+                        "WHEN p.departs_at IS NULL THEN 'неверное время вылета' " +
+                        "WHEN p.arrives_at IS NULL THEN 'неверное время прилёта' " +
+                        "WHEN p.arrives_at <= p.departs_at THEN 'прилёт не позже вылета' " +
+                        "WHEN p.fare IS NULL OR p.fare < 0 THEN 'неверная цена' " +
+                        "WHEN p.seats IS NULL OR p.seats <= 0 THEN 'неверное число мест' " +
+                        "WHEN p.free_seats IS NULL OR p.free_seats < 0 OR p.free_seats > p.seats " +
+                        "THEN 'неверное число свободных мест' " +
+                        "WHEN p.later > 1 THEN 'рейс повторяется ниже в файле' END " +
+                        "FROM (SELECT v.*, row_number() OVER (PARTITION BY trim(v.flight_number), v.departs_at " +
+                        "ORDER BY v.line DESC) AS later FROM (" +
+                        "SELECT i.line, i.flight_number, a.id AS airline_id, " +
+                        CsvImporter.parsed("i.departure_time", "TIMESTAMP") + " AS departs_at, " +
+                        CsvImporter.parsed("i.arrival_time", "TIMESTAMP") + " AS arrives_at, " +
+                        CsvImporter.parsed("i.price", "DECIMAL(10,2)") + " AS fare, " +
+                        CsvImporter.parsed("i.total_seats", "INTEGER") + " AS seats, " +
+                        CsvImporter.parsed("i.available_seats", "INTEGER", CsvImporter.parsed("i.total_seats", "INTEGER")) + " AS free_seats " +
+                        "FROM {h-schema}import_flights i " +
+                        "LEFT JOIN {h-schema}airlines a ON a.name = trim(i.airline)) v) p " +
+                        "WHERE p.line = s.line")
+                .executeUpdate();
+
+        long updated = entityManager.createNativeQuery(
+                "UPDATE {h-schema}flights f SET airline_id = s.airline_id, " +
+                        "departure_airport = upper(trim(s.departure_airport)), " +
+                        "arrival_airport = upper(trim(s.arrival_airport)), arrival_time = s.arrives_at, " +
+                        "price = s.fare, total_seats = s.seats, " +
+                        "available_seats = GREATEST(0, LEAST(s.seats, f.available_seats + s.seats - f.total_seats)), " +
+                        "version = f.version + 1 " +
+                        "FROM {h-schema}import_flights s " +
+                        "WHERE s.error IS NULL AND f.flight_number = trim(s.flight_number) " +
+                        "AND f.departure_time = s.departs_at")
+                .executeUpdate();
+
+        String newFlights = "FROM {h-schema}import_flights s WHERE s.error IS NULL AND NOT EXISTS (" +
+                "SELECT 1 FROM {h-schema}flights f " +
+                "WHERE f.flight_number = trim(s.flight_number) AND f.departure_time = s.departs_at) ";
+        long newRows = ((Number) entityManager.createNativeQuery("SELECT count(*) " + newFlights)
+                .getSingleResult()).longValue();
+        long inserted = newRows == 0 ? 0 : entityManager.createNativeQuery(
+                "INSERT INTO {h-schema}flights (id, flight_number, airline_id, departure_airport, arrival_airport, " +
+                        "departure_time, arrival_time, price, total_seats, available_seats, version) " +
+                        "SELECT b.hi - " + (CsvImporter.ID_BLOCK - 1) + " + n.row_index % " + CsvImporter.ID_BLOCK + ", " +
+                        "trim(n.flight_number), n.airline_id, upper(trim(n.departure_airport)), " +
+                        "upper(trim(n.arrival_airport)), n.departs_at, n.arrives_at, n.fare, n.seats, n.free_seats, 0 " +
+                        "FROM (SELECT s.*, row_number() OVER (ORDER BY s.line) - 1 AS row_index " + newFlights + ") n " +
+                        "JOIN " + csvImporter.idBlocks("flights_id_seq") + "b ON b.block = n.row_index / " + CsvImporter.ID_BLOCK)
+                .setParameter("blocks", CsvImporter.idBlocksFor(newRows))
+                .executeUpdate();
+
+        if (inserted + updated > 0) {
+            publish(FlightChangeListener::invalidateAll);
+        }
+        return csvImporter.finish("import_flights", rows, inserted, updated);
+    }
+
+    // Авиакомпания у переданного рейса может оказаться неинициализированным прокси из закрытой сессии
+    private FlightSummary summaryOf(Flight flight) {
+        Airline airline = flight.getAirline();
+        if (airline == null) {
+            return FlightSummary.of(flight, null);
+        }
+        if (!Hibernate.isInitialized(airline)) {
+            airline = entityManager.find(Airline.class, airline.getId());
+        }
+        return FlightSummary.of(flight, airline == null ? null : airline.getName());
+    }
+
+    /**
+     * Передаёт изменение рейсов слушателям (индексам и кэшам) после фиксации транзакции.
+     * Изменения одной транзакции копятся в общем буфере; если их слишком много
+     * (массовая загрузка), слушатели получают одну полную инвалидацию.
+     */
+    private void publish(Consumer<FlightChangeListener> change) {
+        markUncommittedChanges();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            changeListeners.forEach(change);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Consumer<FlightChangeListener>> pending =
+                (List<Consumer<FlightChangeListener>>) TransactionSynchronizationManager.getResource(pendingChangesKey);
+        if (pending == null) {
+            List<Consumer<FlightChangeListener>> changes = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(pendingChangesKey, changes);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    if (changes.size() > MAX_PENDING_CHANGES) {
+                        changeListeners.forEach(FlightChangeListener::invalidateAll);
+                    } else {
+                        changes.forEach(changeListeners::forEach);
+                    }
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(pendingChangesKey);
+                }
+            });
+            pending = changes;
+        }
+        if (pending.size() <= MAX_PENDING_CHANGES) {
+            pending.add(change);
+        }
     }
 }
\ No newline at end of file
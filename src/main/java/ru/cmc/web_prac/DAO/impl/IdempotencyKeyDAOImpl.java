@@ -0,0 +1,60 @@
+package ru.cmc.web_prac.DAO.impl;
+
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.cmc.web_prac.DAO.IdempotencyKeyDAO;
+import ru.cmc.web_prac.classes.IdempotencyKey;
+
+import java.time.LocalDateTime;
+
+@Repository
+@Transactional
+public class IdempotencyKeyDAOImpl extends CommonDAOImpl<IdempotencyKey, String> implements IdempotencyKeyDAO {
+
+    public IdempotencyKeyDAOImpl() {
+        super(IdempotencyKey.class);
+    }
+
+    @Override
+    public boolean reserve(String id, String endpoint, String owner, LocalDateTime leaseUntil) {
+        // ON CONFLICT: параллельный запрос с тем же ключом (в том числе на другом узле) ключ не получит
+        return entityManager.createNativeQuery(
+                        "INSERT INTO {h-schema}idempotency_keys (id, endpoint, lease_owner, lease_until, created_at) " +
+                                "VALUES (:id, :endpoint, :owner, :leaseUntil, :createdAt) " +
+                                "ON CONFLICT (id) DO NOTHING")
+                .setParameter("id", id)
+                .setParameter("endpoint", endpoint)
+                .setParameter("owner", owner)
+                .setParameter("leaseUntil", leaseUntil)
+                .setParameter("createdAt", LocalDateTime.now())
+                .executeUpdate() > 0;
+    }
+
+    @Override
+    public boolean complete(String id, String owner, String viewName, String errorMessage) {
+        return entityManager.createQuery(
+                        "UPDATE IdempotencyKey k SET k.viewName = :viewName, k.errorMessage = :errorMessage, " +
+                                "k.leaseUntil = NULL WHERE k.id = :id AND k.leaseOwner = :owner AND k.viewName IS NULL")
+                .setParameter("viewName", viewName)
+                .setParameter("errorMessage", errorMessage)
+                .setParameter("id", id)
+                .setParameter("owner", owner)
+                .executeUpdate() > 0;
+    }
+
+    @Override
+    public void release(String id, String owner) {
+        entityManager.createQuery(
+                        "DELETE FROM IdempotencyKey k WHERE k.id = :id AND k.leaseOwner = :owner AND k.viewName IS NULL")
+                .setParameter("id", id)
+                .setParameter("owner", owner)
+                .executeUpdate();
+    }
+
+    @Override
+    public int deleteCreatedBefore(LocalDateTime time) {
+        return entityManager.createQuery("DELETE FROM IdempotencyKey k WHERE k.createdAt < :time")
+                .setParameter("time", time)
+                .executeUpdate();
+    }
+}
@@ -0,0 +1,128 @@
+package ru.cmc.web_prac.DAO.impl;
+
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.cmc.web_prac.DAO.MilesLedgerDAO;
+import ru.cmc.web_prac.classes.MilesLedgerEntry;
+
+import java.util.List;
+
+@Repository
+@Transactional
+public class MilesLedgerDAOImpl extends CommonDAOImpl<MilesLedgerEntry, Long> implements MilesLedgerDAO {
+
+    // Баланс клиента c: снимок плюс хвост после границы свёртки (то же выражение, что в Client.bonusMiles)
+    private static final String BALANCE =
+            "c.bonus_miles + COALESCE((SELECT SUM(l.delta) FROM {h-schema}miles_ledger l " +
+                    "WHERE l.client_id = c.id AND l.id > c.miles_compacted_through), 0)";
+
+    private static final String INSERT_SELECT =
+            "INSERT INTO {h-schema}miles_ledger (client_id, delta, reason, booking_id, created_at) ";
+
+    public MilesLedgerDAOImpl() {
+        super(MilesLedgerEntry.class);
+    }
+
+    @Override
+    public void append(Long clientId, int delta, String reason, Long bookingId) {
+        // Строка клиента блокируется до выдачи id записи (см. compact)
+        entityManager.createNativeQuery("SELECT id FROM {h-schema}clients WHERE id = :clientId FOR KEY SHARE")
+                .setParameter("clientId", clientId)
+                .getResultList();
+        MilesLedgerEntry entry = new MilesLedgerEntry();
+        entry.setClientId(clientId);
+        entry.setDelta(delta);
+        entry.setReason(reason);
+        entry.setBookingId(bookingId);
+        save(entry);
+    }
+
+    @Override
+    public boolean redeem(Long clientId, int miles, String reason, Long bookingId) {
+        if (!lockClient(clientId)) {
+            return false;
+        }
+        // После блокировки вставка видит все записи, зафиксированные конкурентами до неё
+        return entityManager.createNativeQuery(
+                        INSERT_SELECT +
+                                "SELECT c.id, -:miles, :reason, CAST(:bookingId AS INTEGER), CURRENT_TIMESTAMP " +
+                                "FROM {h-schema}clients c WHERE c.id = :clientId AND " + BALANCE + " >= :miles")
+                .setParameter("miles", miles)
+                .setParameter("reason", reason)
+                .setParameter("bookingId", bookingId)
+                .setParameter("clientId", clientId)
+                .executeUpdate() > 0;
+    }
+
+    @Override
+    public boolean adjustTo(Long clientId, int balance) {
+        if (!lockClient(clientId)) {
+            return false;
+        }
+        return entityManager.createNativeQuery(
+                        INSERT_SELECT +
+                                "SELECT c.id, :balance - (" + BALANCE + "), :reason, NULL, CURRENT_TIMESTAMP " +
+                                "FROM {h-schema}clients c WHERE c.id = :clientId AND " + BALANCE + " <> :balance")
+                .setParameter("balance", balance)
+                .setParameter("reason", MilesLedgerEntry.ADJUSTMENT)
+                .setParameter("clientId", clientId)
+                .executeUpdate() > 0;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<MilesLedgerEntry> getByClient(Long clientId) {
+        return entityManager.createQuery(
+                        "SELECT e FROM MilesLedgerEntry e WHERE e.clientId = :clientId ORDER BY e.id DESC",
+                        MilesLedgerEntry.class)
+                .setParameter("clientId", clientId)
+                .getResultList();
+    }
+
+    /**
+     * Журнал не меняется: сумма хвоста прибавляется к снимку, а граница свёртки клиента
+     * сдвигается на последнюю учтённую запись - одной командой, поэтому чтение баланса
+     * видит каждую запись ровно один раз.
+     * id записей выдаются не в порядке фиксации, поэтому граница сдвигается только под FOR UPDATE
+     * на строке клиента: вставка записи сначала блокирует клиента (KEY SHARE или NO KEY UPDATE),
+     * значит, к моменту блокировки все начатые вставки зафиксированы, а новые получат id больше границы.
+     * Клиенты, у которых вставка ещё идёт, пропускаются до следующей свёртки.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int compact(int limit) {
+        List<Number> locked = entityManager.createNativeQuery(
+                        "SELECT c.id FROM {h-schema}clients c WHERE EXISTS (" +
+                                "SELECT 1 FROM {h-schema}miles_ledger l " +
+                                "WHERE l.client_id = c.id AND l.id > c.miles_compacted_through) " +
+                                "ORDER BY c.id LIMIT :limit FOR UPDATE SKIP LOCKED")
+                .setParameter("limit", limit)
+                .getResultList();
+        if (locked.isEmpty()) {
+            return 0;
+        }
+
+        // Отдельная команда: её снимок берётся после блокировок и видит весь хвост этих клиентов
+        entityManager.createNativeQuery(
+                        "UPDATE {h-schema}clients c SET bonus_miles = c.bonus_miles + t.total, " +
+                                "miles_compacted_through = t.through " +
+                                "FROM (SELECT l.client_id, SUM(l.delta) AS total, MAX(l.id) AS through " +
+                                "FROM {h-schema}clients k JOIN {h-schema}miles_ledger l " +
+                                "ON l.client_id = k.id AND l.id > k.miles_compacted_through " +
+                                "WHERE k.id IN (:ids) GROUP BY l.client_id) t " +
+                                "WHERE c.id = t.client_id")
+                .setParameter("ids", locked.stream().map(Number::longValue).toList())
+                .executeUpdate();
+        return locked.size();
+    }
+
+    // Списания одного клиента идут по очереди. FOR NO KEY UPDATE не мешает вставкам
+    // начислений (внешний ключ берёт только KEY SHARE) и не создаёт новую версию строки
+    private boolean lockClient(Long clientId) {
+        return !entityManager.createNativeQuery(
+                        "SELECT id FROM {h-schema}clients WHERE id = :clientId FOR NO KEY UPDATE")
+                .setParameter("clientId", clientId)
+                .getResultList()
+                .isEmpty();
+    }
+}
@@ -0,0 +1,67 @@
+package ru.cmc.web_prac.DAO.impl;
+
+import org.hibernate.LockMode;
+import org.hibernate.Session;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.cmc.web_prac.DAO.MilesOutboxDAO;
+import ru.cmc.web_prac.classes.MilesLedgerEntry;
+import ru.cmc.web_prac.classes.MilesOutboxEntry;
+
+import java.util.List;
+
+@Repository
+@Transactional
+public class MilesOutboxDAOImpl extends CommonDAOImpl<MilesOutboxEntry, Long> implements MilesOutboxDAO {
+
+    public MilesOutboxDAOImpl() {
+        super(MilesOutboxEntry.class);
+    }
+
+    @Override
+    public boolean enqueueEarnedMiles(Long bookingId) {
+        // Мили считаются в той же вставке: бронирование, рейс и авиакомпания не загружаются в приложение
+        return entityManager.createNativeQuery(
+                        "INSERT INTO {h-schema}miles_outbox (client_id, booking_id, miles, created_at) " +
+                                "SELECT b.client_id, b.id, CAST(FLOOR(f.price * a.miles_rate / 100) AS INTEGER), CURRENT_TIMESTAMP " +
+                                "FROM {h-schema}bookings b " +
+                                "JOIN {h-schema}flights f ON f.id = b.flight_id " +
+                                "JOIN {h-schema}airlines a ON a.id = f.airline_id " +
+                                "WHERE b.id = :bookingId AND b.client_id IS NOT NULL")
+                .setParameter("bookingId", bookingId)
+                .executeUpdate() > 0;
+    }
+
+    @Override
+    public List<MilesOutboxEntry> lockBatch(int limit) {
+        // SELECT ... FOR UPDATE SKIP LOCKED: несколько узлов разбирают очередь, не дожидаясь друг друга
+        return entityManager.unwrap(Session.class)
+                .createSelectionQuery("SELECT e FROM MilesOutboxEntry e ORDER BY e.id", MilesOutboxEntry.class)
+                .setMaxResults(limit)
+                .setHibernateLockMode(LockMode.UPGRADE_SKIPLOCKED)
+                .getResultList();
+    }
+
+    @Override
+    public void moveToLedger(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        // Клиенты блокируются до выдачи id записей журнала (см. MilesLedgerDAOImpl.compact)
+        entityManager.createNativeQuery(
+                        "SELECT c.id FROM {h-schema}clients c WHERE c.id IN (" +
+                                "SELECT client_id FROM {h-schema}miles_outbox WHERE id IN (:ids)) " +
+                                "ORDER BY c.id FOR KEY SHARE")
+                .setParameter("ids", ids)
+                .getResultList();
+        entityManager.createNativeQuery(
+                        "WITH moved AS (DELETE FROM {h-schema}miles_outbox WHERE id IN (:ids) " +
+                                "RETURNING client_id, booking_id, miles) " +
+                                "INSERT INTO {h-schema}miles_ledger (client_id, delta, reason, booking_id, created_at) " +
+                                "SELECT client_id, miles, :reason, booking_id, CURRENT_TIMESTAMP " +
+                                "FROM moved WHERE miles <> 0 ORDER BY booking_id")
+                .setParameter("ids", ids)
+                .setParameter("reason", MilesLedgerEntry.ACCRUAL)
+                .executeUpdate();
+    }
+}
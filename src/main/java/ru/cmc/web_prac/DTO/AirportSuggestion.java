@@ -0,0 +1,7 @@
+package ru.cmc.web_prac.DTO;
+
+/**
+ * Подсказка аэропорта для формы поиска: код и число рейсов через него (на момент построения индекса).
+ */
+public record AirportSuggestion(String code, long flights) {
+}
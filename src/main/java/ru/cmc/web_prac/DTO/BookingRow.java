@@ -0,0 +1,24 @@
+package ru.cmc.web_prac.DTO;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Строка списка бронирований: поля бронирования вместе с именем клиента
+ * и данными рейса, прочитанные одним запросом.
+ */
+public record BookingRow(Long id,
+                         LocalDateTime bookingDate,
+                         String status,
+                         Boolean paidWithMiles,
+                         Integer milesUsed,
+                         Long clientId,
+                         String clientName,
+                         Long flightId,
+                         String flightNumber,
+                         String airlineName,
+                         String departureAirport,
+                         String arrivalAirport,
+                         LocalDateTime departureTime,
+                         BigDecimal price) {
+}
@@ -0,0 +1,12 @@
+package ru.cmc.web_prac.DTO;
+
+/**
+ * Строка списка клиентов: только отображаемые поля, без загрузки сущности.
+ */
+public record ClientRow(Long id,
+                        String fullName,
+                        String email,
+                        String phone,
+                        String address,
+                        Integer bonusMiles) {
+}
@@ -0,0 +1,45 @@
+package ru.cmc.web_prac.DTO;
+
+import ru.cmc.web_prac.classes.Flight;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Облегчённое неизменяемое представление рейса для списков и поиска:
+ * только отображаемые поля и название авиакомпании вместо ленивой связи.
+ */
+public record FlightSummary(Long id,
+                            String flightNumber,
+                            String airlineName,
+                            String departureAirport,
+                            String arrivalAirport,
+                            LocalDateTime departureTime,
+                            LocalDateTime arrivalTime,
+                            BigDecimal price,
+                            Integer totalSeats,
+                            Integer availableSeats) {
+
+    public static FlightSummary of(Flight flight) {
+        return of(flight, flight.getAirline() == null ? null : flight.getAirline().getName());
+    }
+
+    public static FlightSummary of(Flight flight, String airlineName) {
+        return new FlightSummary(
+                flight.getId(),
+                flight.getFlightNumber(),
+                airlineName,
+                flight.getDepartureAirport(),
+                flight.getArrivalAirport(),
+                flight.getDepartureTime(),
+                flight.getArrivalTime(),
+                flight.getPrice(),
+                flight.getTotalSeats(),
+                flight.getAvailableSeats());
+    }
+
+    public FlightSummary withAvailableSeats(int seats) {
+        return new FlightSummary(id, flightNumber, airlineName, departureAirport, arrivalAirport,
+                departureTime, arrivalTime, price, totalSeats, seats);
+    }
+}
@@ -0,0 +1,17 @@
+package ru.cmc.web_prac.DTO;
+
+import java.util.List;
+
+/**
+ * Итог загрузки CSV: сколько строк прочитано, добавлено, обновлено и отклонено.
+ * errors - первые отклонённые строки (номер строки файла, считая заголовок, и причина).
+ */
+public record ImportResult(long rows,
+                           long inserted,
+                           long updated,
+                           long rejected,
+                           List<RowError> errors) {
+
+    public record RowError(long line, String message) {
+    }
+}
@@ -0,0 +1,9 @@
+package ru.cmc.web_prac.DTO;
+
+/**
+ * Свободные места рейса (flights.available_seats) из общего числа мест.
+ */
+public record SeatAvailability(Long flightId,
+                               Integer totalSeats,
+                               Integer availableSeats) {
+}
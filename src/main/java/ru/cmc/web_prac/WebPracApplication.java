@@ -2,8 +2,10 @@ package ru.cmc.web_prac;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class WebPracApplication {
 	public static void main(String[] args) {
 		SpringApplication.run(WebPracApplication.class, args);
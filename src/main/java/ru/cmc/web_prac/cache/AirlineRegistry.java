@@ -0,0 +1,55 @@
+package ru.cmc.web_prac.cache;
+
+import ru.cmc.web_prac.classes.Airline;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Неизменяемый снимок справочника авиакомпаний.
+ * При любом изменении авиакомпаний снимок не правится, а целиком заменяется новым,
+ * поэтому читатели работают без блокировок и всегда видят согласованные данные.
+ * Сущности в снимке отсоединены от persistence context и не должны изменяться.
+ */
+public final class AirlineRegistry {
+
+    private final List<Airline> all;
+    private final List<Airline> sortedByName;
+    private final Map<Long, Airline> byId;
+    private final Map<String, Airline> byName;
+
+    public AirlineRegistry(Collection<Airline> airlines) {
+        this.all = List.copyOf(airlines);
+        this.sortedByName = all.stream()
+                .sorted(Comparator.comparing(Airline::getName))
+                .toList();
+
+        Map<Long, Airline> idMap = new HashMap<>();
+        Map<String, Airline> nameMap = new HashMap<>();
+        for (Airline airline : all) {
+            idMap.put(airline.getId(), airline);
+            nameMap.put(airline.getName(), airline);
+        }
+        this.byId = Map.copyOf(idMap);
+        this.byName = Map.copyOf(nameMap);
+    }
+
+    public List<Airline> getAll() {
+        return all;
+    }
+
+    public List<Airline> getAllSortedByName() {
+        return sortedByName;
+    }
+
+    public Airline getById(Long id) {
+        return id == null ? null : byId.get(id);
+    }
+
+    public Airline getByName(String name) {
+        return name == null ? null : byName.get(name);
+    }
+}
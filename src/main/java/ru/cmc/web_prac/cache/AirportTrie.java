@@ -0,0 +1,144 @@
+package ru.cmc.web_prac.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.cmc.web_prac.DTO.AirportSuggestion;
+import ru.cmc.web_prac.DTO.FlightSummary;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Префиксное дерево кодов аэропортов из flights для подсказок в форме поиска.
+ * В каждом узле хранится готовый список лучших подсказок поддерева (чаще всего
+ * встречающиеся в рейсах коды), поэтому ответ - проход по символам префикса без обхода поддерева.
+ * Новые коды из сохранённых рейсов добавляются сразу после фиксации; число рейсов
+ * обновляется при перестроении (app.cache.airports.max-age-seconds).
+ */
+@Component
+public class AirportTrie implements FlightChangeListener {
+
+    private static final Comparator<AirportSuggestion> BY_FLIGHTS =
+            Comparator.comparingLong(AirportSuggestion::flights).reversed().thenComparing(AirportSuggestion::code);
+
+    private static final class Node {
+        final Map<Character, Node> children = new ConcurrentHashMap<>();
+        // Неизменяемый список: изменение заменяет его целиком
+        volatile List<AirportSuggestion> top = List.of();
+        volatile boolean terminal;
+    }
+
+    @Value("${app.cache.airports.suggestions:10}")
+    private int maxSuggestions;
+
+    @Value("${app.cache.airports.max-age-seconds:3600}")
+    private long maxAgeSeconds;
+
+    // Корень дерева; коды, сохранённые во время перестроения, добавляются в новое дерево перед заменой
+    private final RebuildableState<Node> root = new RebuildableState<>(() -> maxAgeSeconds * 1000);
+
+    public boolean isReady() {
+        return root.isReady();
+    }
+
+    /**
+     * Перестраивает дерево, если оно устарело и его не перестраивает другой поток.
+     * loader возвращает все различные коды аэропортов с числом рейсов.
+     */
+    public void rebuildIfNeeded(Supplier<Stream<AirportSuggestion>> loader) {
+        root.rebuildIfNeeded(() -> {
+            Node built = new Node();
+            try (Stream<AirportSuggestion> airports = loader.get()) {
+                airports.forEach(airport -> insert(built, airport));
+            }
+            return built;
+        });
+    }
+
+    /**
+     * До limit кодов, начинающихся с prefix (без учёта регистра), самые частые сверху;
+     * null - дерево не построено.
+     */
+    public List<AirportSuggestion> suggest(String prefix, int limit) {
+        // Устаревшее дерево тоже отвечает: подсказки не обязаны быть точными
+        Node node = root.get();
+        if (node == null) {
+            return null;
+        }
+        String key = prefix == null ? "" : prefix.trim().toUpperCase(Locale.ROOT);
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.children.get(key.charAt(i));
+        }
+        if (node == null) {
+            return List.of();
+        }
+        List<AirportSuggestion> top = node.top;
+        return top.size() <= limit ? top : top.subList(0, limit);
+    }
+
+    @Override
+    public void flightSaved(FlightSummary flight) {
+        for (String code : new String[]{flight.departureAirport(), flight.arrivalAirport()}) {
+            if (code != null && !code.isBlank()) {
+                root.apply(current -> addCode(current, code));
+            }
+        }
+    }
+
+    @Override
+    public void flightRemoved(Long flightId) {
+        // код остаётся до перестроения: лишняя подсказка безвредна
+    }
+
+    @Override
+    public void seatsSet(Long flightId, int seats, long version) {
+        // места на подсказки не влияют
+    }
+
+    @Override
+    public void invalidateAll() {
+        root.invalidateAll();
+    }
+
+    // Новый код попадает в подсказки с одним рейсом; у известного кода ничего не меняется
+    private void addCode(Node root, String code) {
+        String key = code.toUpperCase(Locale.ROOT);
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.children.get(key.charAt(i));
+        }
+        if (node == null || !node.terminal) {
+            insert(root, new AirportSuggestion(key, 1));
+        }
+    }
+
+    private void insert(Node root, AirportSuggestion airport) {
+        AirportSuggestion suggestion = new AirportSuggestion(airport.code().toUpperCase(Locale.ROOT), airport.flights());
+        String key = suggestion.code();
+        Node node = root;
+        offer(node, suggestion);
+        for (int i = 0; i < key.length(); i++) {
+            node = node.children.computeIfAbsent(key.charAt(i), ch -> new Node());
+            offer(node, suggestion);
+        }
+        node.terminal = true;
+    }
+
+    private void offer(Node node, AirportSuggestion suggestion) {
+        List<AirportSuggestion> top = new ArrayList<>(node.top.size() + 1);
+        for (AirportSuggestion existing : node.top) {
+            if (!existing.code().equals(suggestion.code())) {
+                top.add(existing);
+            }
+        }
+        top.add(suggestion);
+        top.sort(BY_FLIGHTS);
+        node.top = List.copyOf(top.size() > maxSuggestions ? top.subList(0, maxSuggestions) : top);
+    }
+}
@@ -0,0 +1,25 @@
+package ru.cmc.web_prac.cache;
+
+import ru.cmc.web_prac.DTO.FlightSummary;
+
+/**
+ * Получатель зафиксированных изменений рейсов (индексы и кэши в памяти).
+ * Методы вызываются только после успешной фиксации транзакции.
+ */
+public interface FlightChangeListener {
+
+    // Рейс создан или изменён
+    void flightSaved(FlightSummary flight);
+
+    void flightRemoved(Long flightId);
+
+    /**
+     * Число свободных мест стало seats, version - версия строки рейса после изменения.
+     * Передаётся итоговое значение, а не сдвиг: повтор изменения (например, при догоне
+     * перестроения) ничего не портит, а более старая версия, пришедшая позже, отбрасывается.
+     */
+    void seatsSet(Long flightId, int seats, long version);
+
+    // Изменений слишком много или они затрагивают все рейсы (например, переименование авиакомпании)
+    void invalidateAll();
+}
@@ -0,0 +1,210 @@
+package ru.cmc.web_prac.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.cmc.web_prac.DTO.FlightSummary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Списки всех рейсов в памяти для страниц /flights (по дате, цене и маршруту) и /availableFlights.
+ * Каждый порядок - неизменяемый отсортированный список; страница после рейса afterId
+ * находится двоичным поиском, как keyset-запрос в БД.
+ * Текущие значения рейсов хранятся отдельно (byId): изменение числа мест обновляет только
+ * одну запись, а порядок не трогает - ни одна сортировка от мест не зависит.
+ * Создание, правка и удаление рейса переставляют его в каждом порядке, не перестраивая остальное.
+ * Кэш периодически перестраивается (app.cache.flight-listing.max-age-seconds),
+ * чтобы подхватывать изменения, сделанные другими экземплярами приложения.
+ */
+@Component
+public class FlightListingCache implements FlightChangeListener {
+
+    // Порядки совпадают с FlightDAOImpl.getSummaryPage, включая id для однозначности
+    private enum Order {
+        DATE(Comparator.comparing(FlightSummary::departureTime)
+                .thenComparing(FlightSummary::id)),
+        PRICE(Comparator.comparing(FlightSummary::price)
+                .thenComparing(FlightSummary::id)),
+        ROUTE(Comparator.comparing(FlightSummary::departureAirport)
+                .thenComparing(FlightSummary::arrivalAirport)
+                .thenComparing(FlightSummary::departureTime)
+                .thenComparing(FlightSummary::id));
+
+        final Comparator<FlightSummary> comparator;
+
+        Order(Comparator<FlightSummary> comparator) {
+            this.comparator = comparator;
+        }
+
+        static Order of(String sortBy) {
+            if (sortBy == null) {
+                return DATE;
+            }
+            return switch (sortBy.toLowerCase()) {
+                case "price" -> PRICE;
+                case "route" -> ROUTE;
+                default -> DATE;
+            };
+        }
+    }
+
+    private static final class State {
+        // Текущие значения рейсов; числа мест обновляются здесь на месте
+        final Map<Long, FlightSummary> byId = new ConcurrentHashMap<>();
+        // Версии строк, с которыми пришли последние числа мест
+        final Map<Long, Long> seatVersions = new ConcurrentHashMap<>();
+        // Порядки заменяются целиком; записи в них - ключи сортировки, значения берутся из byId
+        final Map<Order, List<FlightSummary>> ordered = Collections.synchronizedMap(new EnumMap<>(Order.class));
+    }
+
+    @Value("${app.cache.flight-listing.max-age-seconds:300}")
+    private long maxAgeSeconds;
+
+    private final RebuildableState<State> state = new RebuildableState<>(() -> maxAgeSeconds * 1000);
+
+    public boolean isReady() {
+        return state.isReady();
+    }
+
+    /**
+     * До limit рейсов в порядке sortBy, следующих за рейсом afterId (или с начала).
+     * null - кэш не может ответить (не построен или рейса afterId в нём нет).
+     */
+    public List<FlightSummary> page(String sortBy, Long afterId, int limit) {
+        State current = state.fresh();
+        if (current == null) {
+            return null;
+        }
+        Order order = Order.of(sortBy);
+        List<FlightSummary> flights = current.ordered.get(order);
+
+        int from = 0;
+        if (afterId != null) {
+            FlightSummary anchor = current.byId.get(afterId);
+            if (anchor == null) {
+                return null;
+            }
+            int position = Collections.binarySearch(flights, anchor, order.comparator);
+            from = position >= 0 ? position + 1 : -position - 1;
+        }
+
+        List<FlightSummary> page = new ArrayList<>(Math.min(limit, flights.size() - from));
+        for (int i = from; i < flights.size() && page.size() < limit; i++) {
+            FlightSummary flight = current.byId.get(flights.get(i).id());
+            if (flight != null) {
+                page.add(flight);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Рейсы со свободными местами по времени вылета или null, если кэш не построен.
+     */
+    public List<FlightSummary> available() {
+        State current = state.fresh();
+        if (current == null) {
+            return null;
+        }
+        List<FlightSummary> available = new ArrayList<>();
+        for (FlightSummary entry : current.ordered.get(Order.DATE)) {
+            FlightSummary flight = current.byId.get(entry.id());
+            if (flight != null && flight.availableSeats() > 0) {
+                available.add(flight);
+            }
+        }
+        return available;
+    }
+
+    /**
+     * Перестраивает кэш, если он устарел и его не перестраивает другой поток.
+     * loader возвращает все рейсы. Изменения, пришедшие во время загрузки,
+     * применяются к построенному кэшу (см. {@link RebuildableState}).
+     */
+    public void rebuildIfNeeded(Supplier<Stream<FlightSummary>> loader) {
+        state.rebuildIfNeeded(() -> {
+            State built = new State();
+            try (Stream<FlightSummary> flights = loader.get()) {
+                flights.forEach(flight -> built.byId.put(flight.id(), flight));
+            }
+            for (Order order : Order.values()) {
+                List<FlightSummary> sorted = new ArrayList<>(built.byId.values());
+                sorted.sort(order.comparator);
+                built.ordered.put(order, Collections.unmodifiableList(sorted));
+            }
+            return built;
+        });
+    }
+
+    @Override
+    public void flightSaved(FlightSummary flight) {
+        state.apply(current -> put(current, flight));
+    }
+
+    @Override
+    public void flightRemoved(Long flightId) {
+        state.apply(current -> remove(current, flightId));
+    }
+
+    @Override
+    public void seatsSet(Long flightId, int seats, long version) {
+        state.apply(current -> {
+            Long applied = current.seatVersions.get(flightId);
+            if (applied != null && applied >= version) {
+                return;
+            }
+            current.seatVersions.put(flightId, version);
+            current.byId.computeIfPresent(flightId, (id, flight) -> flight.withAvailableSeats(seats));
+        });
+    }
+
+    @Override
+    public void invalidateAll() {
+        state.invalidateAll();
+    }
+
+    private static void put(State current, FlightSummary flight) {
+        FlightSummary old = current.byId.get(flight.id());
+        for (Order order : Order.values()) {
+            List<FlightSummary> flights = new ArrayList<>(current.ordered.get(order));
+            if (old != null) {
+                remove(flights, old, order);
+            }
+            int position = Collections.binarySearch(flights, flight, order.comparator);
+            flights.add(position >= 0 ? position : -position - 1, flight);
+            current.ordered.put(order, Collections.unmodifiableList(flights));
+        }
+        current.byId.put(flight.id(), flight);
+    }
+
+    private static void remove(State current, Long flightId) {
+        current.seatVersions.remove(flightId);
+        FlightSummary old = current.byId.remove(flightId);
+        if (old == null) {
+            return;
+        }
+        for (Order order : Order.values()) {
+            List<FlightSummary> flights = new ArrayList<>(current.ordered.get(order));
+            remove(flights, old, order);
+            current.ordered.put(order, Collections.unmodifiableList(flights));
+        }
+    }
+
+    // Старая запись находится по своим ключам сортировки, с которыми она и была вставлена
+    private static void remove(List<FlightSummary> flights, FlightSummary old, Order order) {
+        int position = Collections.binarySearch(flights, old, order.comparator);
+        if (position >= 0) {
+            flights.remove(position);
+        } else {
+            flights.removeIf(flight -> flight.id().equals(old.id()));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package ru.cmc.web_prac.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.cmc.web_prac.DTO.FlightSummary;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Индекс рейсов в памяти для поиска по направлению и дате:
+ * (аэропорт вылета, аэропорт прилёта, день) -> рейсы, упорядоченные по времени вылета.
+ * Индексируются рейсы начиная с дня построения; поиск на более ранние даты,
+ * а также до построения индекса, выполняется в БД (search возвращает null).
+ * Индекс периодически перестраивается (app.cache.flight-search.max-age-seconds),
+ * чтобы подхватывать изменения, сделанные другими экземплярами приложения.
+ */
+@Component
+public class FlightSearchIndex implements FlightChangeListener {
+
+    private static final Comparator<FlightSummary> BY_DEPARTURE =
+            Comparator.comparing(FlightSummary::departureTime).thenComparing(FlightSummary::id);
+
+    private record RouteDay(String departureAirport, String arrivalAirport, LocalDate day) {
+    }
+
+    private static final class State {
+        final LocalDate indexedFrom;
+        // Списки неизменяемые: изменение заменяет список целиком
+        final Map<RouteDay, List<FlightSummary>> byRouteDay = new ConcurrentHashMap<>();
+        final Map<Long, FlightSummary> byId = new ConcurrentHashMap<>();
+        // Версии строк, с которыми пришли последние числа мест
+        final Map<Long, Long> seatVersions = new ConcurrentHashMap<>();
+
+        State(LocalDate indexedFrom) {
+            this.indexedFrom = indexedFrom;
+        }
+    }
+
+    @Value("${app.cache.flight-search.max-age-seconds:300}")
+    private long maxAgeSeconds;
+
+    private final RebuildableState<State> state = new RebuildableState<>(() -> maxAgeSeconds * 1000);
+
+    public boolean isReady() {
+        return state.isReady();
+    }
+
+    /**
+     * Рейсы с свободными местами на заданный день или null, если индекс не может ответить.
+     */
+    public List<FlightSummary> search(String departureAirport, String arrivalAirport, LocalDate day) {
+        State current = state.fresh();
+        if (current == null || day.isBefore(current.indexedFrom)) {
+            return null;
+        }
+        List<FlightSummary> flights = current.byRouteDay.get(new RouteDay(departureAirport, arrivalAirport, day));
+        if (flights == null) {
+            return List.of();
+        }
+        return flights.stream().filter(f -> f.availableSeats() > 0).toList();
+    }
+
+    /**
+     * Перестраивает индекс, если он устарел и его не перестраивает другой поток.
+     * loader возвращает рейсы, вылетающие начиная с indexedFrom. Изменения, пришедшие
+     * во время загрузки, применяются к построенному индексу (см. {@link RebuildableState}).
+     */
+    public void rebuildIfNeeded(LocalDate indexedFrom, Supplier<Stream<FlightSummary>> loader) {
+        state.rebuildIfNeeded(() -> {
+            State built = new State(indexedFrom);
+            Map<RouteDay, List<FlightSummary>> lists = new HashMap<>();
+            try (Stream<FlightSummary> flights = loader.get()) {
+                flights.forEach(flight -> {
+                    built.byId.put(flight.id(), flight);
+                    lists.computeIfAbsent(keyOf(flight), k -> new ArrayList<>()).add(flight);
+                });
+            }
+            lists.forEach((key, list) -> {
+                list.sort(BY_DEPARTURE);
+                built.byRouteDay.put(key, List.copyOf(list));
+            });
+            return built;
+        });
+    }
+
+    @Override
+    public void flightSaved(FlightSummary flight) {
+        state.apply(current -> put(current, flight));
+    }
+
+    @Override
+    public void flightRemoved(Long flightId) {
+        state.apply(current -> {
+            current.seatVersions.remove(flightId);
+            removeFromRoute(current, current.byId.remove(flightId));
+        });
+    }
+
+    @Override
+    public void seatsSet(Long flightId, int seats, long version) {
+        state.apply(current -> {
+            Long applied = current.seatVersions.get(flightId);
+            if (applied != null && applied >= version) {
+                return;
+            }
+            current.seatVersions.put(flightId, version);
+            FlightSummary flight = current.byId.get(flightId);
+            if (flight != null) {
+                put(current, flight.withAvailableSeats(seats));
+            }
+        });
+    }
+
+    @Override
+    public void invalidateAll() {
+        state.invalidateAll();
+    }
+
+    private static void put(State current, FlightSummary flight) {
+        removeFromRoute(current, current.byId.remove(flight.id()));
+        if (!flight.departureTime().toLocalDate().isBefore(current.indexedFrom)) {
+            current.byId.put(flight.id(), flight);
+            current.byRouteDay.compute(keyOf(flight), (key, list) -> {
+                List<FlightSummary> updated = list == null ? new ArrayList<>() : new ArrayList<>(list);
+                updated.add(flight);
+                updated.sort(BY_DEPARTURE);
+                return List.copyOf(updated);
+            });
+        }
+    }
+
+    private static void removeFromRoute(State current, FlightSummary old) {
+        if (old == null) {
+            return;
+        }
+        current.byRouteDay.computeIfPresent(keyOf(old), (key, list) -> {
+            List<FlightSummary> updated = list.stream().filter(f -> !f.id().equals(old.id())).toList();
+            return updated.isEmpty() ? null : updated;
+        });
+    }
+
+    private static RouteDay keyOf(FlightSummary flight) {
+        return new RouteDay(flight.departureAirport(), flight.arrivalAirport(),
+                flight.departureTime().toLocalDate());
+    }
+}
@@ -0,0 +1,109 @@
+package ru.cmc.web_prac.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Состояние кэша в памяти, которое строится из БД целиком, а затем правится зафиксированными изменениями.
+ * Перестраивает один поток. Изменения, пришедшие во время перестроения, применяются к текущему
+ * состоянию и запоминаются; построенное состояние перед заменой догоняет их в том же порядке,
+ * поэтому поток изменений не мешает перестроению завершиться.
+ * Полная инвалидация отбрасывает и текущее состояние, и строящееся.
+ * Через maxAgeMillis состояние считается устаревшим, и перестроение подхватывает
+ * изменения, сделанные другими экземплярами приложения.
+ */
+public final class RebuildableState<S> {
+
+    private record Built<S>(S value, long builtAt) {
+    }
+
+    private final LongSupplier maxAgeMillis;
+
+    private volatile Built<S> built;
+
+    // Изменения, пришедшие во время перестроения; null - перестроение не идёт
+    private List<Consumer<S>> pending;
+
+    // Увеличивается при полной инвалидации: состояние, строившееся до неё, отбрасывается
+    private long generation;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    // maxAgeMillis читается при каждой проверке: настройки кэшей внедряются после создания
+    public RebuildableState(LongSupplier maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public boolean isReady() {
+        Built<S> current = built;
+        return current != null && System.currentTimeMillis() - current.builtAt() < maxAgeMillis.getAsLong();
+    }
+
+    // Построенное состояние, даже устаревшее; null - не построено
+    public S get() {
+        Built<S> current = built;
+        return current == null ? null : current.value();
+    }
+
+    // Построенное и не устаревшее состояние; null - кэш не может ответить
+    public S fresh() {
+        Built<S> current = built;
+        return current != null && System.currentTimeMillis() - current.builtAt() < maxAgeMillis.getAsLong()
+                ? current.value() : null;
+    }
+
+    /**
+     * Строит состояние заново, если оно устарело и его не строит другой поток.
+     * Изменения запоминаются с начала перестроения, до чтения из БД, чтобы не потерять ни одного.
+     * Изменение, зафиксированное в коротком промежутке между началом и чтением, загрузка
+     * может уже увидеть, и тогда оно применится повторно. Поэтому изменения должны быть
+     * идемпотентными: заменять запись или значение целиком, а не сдвигать его.
+     */
+    public void rebuildIfNeeded(Supplier<S> builder) {
+        if (isReady() || !rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long expectedGeneration;
+            long started = System.currentTimeMillis();
+            synchronized (this) {
+                expectedGeneration = generation;
+                pending = new ArrayList<>();
+            }
+
+            S value = builder.get();
+
+            synchronized (this) {
+                if (generation == expectedGeneration) {
+                    pending.forEach(change -> change.accept(value));
+                    built = new Built<>(value, started);
+                }
+            }
+        } finally {
+            synchronized (this) {
+                pending = null;
+            }
+            rebuilding.set(false);
+        }
+    }
+
+    // Применяет зафиксированное изменение к текущему состоянию и к строящемуся
+    public synchronized void apply(Consumer<S> change) {
+        Built<S> current = built;
+        if (current != null) {
+            change.accept(current.value());
+        }
+        if (pending != null) {
+            pending.add(change);
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        built = null;
+    }
+}
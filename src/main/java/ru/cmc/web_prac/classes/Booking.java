@@ -12,8 +12,10 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 public class Booking implements CommonEntity<Long> {
+    // Последовательность с шагом 50 (pooled): id выдаются пачками, INSERT можно батчить
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "bookings_seq")
+    @SequenceGenerator(name = "bookings_seq", sequenceName = "bookings_id_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -24,7 +26,7 @@ public class Booking implements CommonEntity<Long> {
     @JoinColumn(name = "flight_id", referencedColumnName = "id")
     private Flight flight;
 
-    @Column(name = "booking_date")
+    @Column(name = "booking_date", nullable = false)
     private LocalDateTime bookingDate = LocalDateTime.now(); // Значение по умолчанию - текущее время
 
     @Column(name = "status", length = 20)
@@ -35,4 +37,9 @@ public class Booking implements CommonEntity<Long> {
 
     @Column(name = "miles_used")
     private Integer milesUsed = 0; // Значение по умолчанию
+
+    // Версия строки: растёт при каждой правке и смене статуса (по ней страницы проверяют ETag)
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package ru.cmc.web_prac.classes;
 
 import lombok.*;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Formula;
 import java.util.List;
 
 @Entity
@@ -13,8 +14,10 @@ import java.util.List;
 @AllArgsConstructor
 public class Client implements CommonEntity<Long> {
 
+    // Последовательность с шагом 50 (pooled): id выдаются пачками, INSERT можно батчить
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "clients_seq")
+    @SequenceGenerator(name = "clients_seq", sequenceName = "clients_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "full_name", nullable = false, length = 100)
@@ -29,9 +32,28 @@ public class Client implements CommonEntity<Long> {
     @Column(name = "address")
     private String address;
 
-    @Column(name = "bonus_miles")
+    // Баланс миль: снимок плюс записи журнала miles_ledger после границы свёртки.
+    // Только для чтения - мили меняются записями журнала (MilesLedgerDAO)
+    @Formula("bonus_miles + COALESCE((SELECT SUM(l.delta) FROM {h-schema}miles_ledger l " +
+            "WHERE l.client_id = id AND l.id > miles_compacted_through), 0)")
     private Integer bonusMiles = 0;
 
+    // Снимок баланса: при создании - начальные мили, дальше меняется только свёрткой журнала
+    @Column(name = "bonus_miles", updatable = false)
+    private Integer milesSnapshot;
+
+    // Оптимистическая блокировка правок карточки клиента; мили идут журналом и версию не меняют
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     @OneToMany(mappedBy = "client", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<Booking> bookings;
+
+    @PrePersist
+    private void initMilesSnapshot() {
+        if (milesSnapshot == null) {
+            milesSnapshot = bonusMiles == null ? 0 : bonusMiles;
+        }
+    }
 }
\ No newline at end of file
@@ -14,8 +14,10 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 public class Flight implements CommonEntity<Long> {
+    // Последовательность с шагом 50 (pooled): id выдаются пачками, INSERT можно батчить
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "flights_seq")
+    @SequenceGenerator(name = "flights_seq", sequenceName = "flights_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "flight_number", nullable = false, length = 10)
@@ -46,6 +48,11 @@ public class Flight implements CommonEntity<Long> {
     @Column(name = "available_seats", nullable = false)
     private Integer availableSeats;
 
+    // Оптимистическая блокировка: правка по устаревшей версии не перезапишет проданные места
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     @OneToMany(mappedBy = "flight", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<Booking> bookings;
 }
\ No newline at end of file
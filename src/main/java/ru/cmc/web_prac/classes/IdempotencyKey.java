@@ -0,0 +1,37 @@
+package ru.cmc.web_prac.classes;
+
+import lombok.*;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "idempotency_keys")
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyKey implements CommonEntity<String> {
+    // Хеш ключа клиента, операции и параметров запроса
+    @Id
+    @Column(name = "id", length = 64)
+    private String id;
+
+    @Column(name = "endpoint", nullable = false, length = 50)
+    private String endpoint;
+
+    @Column(name = "view_name", length = 200)
+    private String viewName; // null - запрос ещё выполняется
+
+    @Column(name = "error_msg", length = 500)
+    private String errorMessage;
+
+    @Column(name = "lease_owner", length = 36)
+    private String leaseOwner; // кто выполняет запрос
+
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil; // после этого времени результат невыполненного ключа считается неизвестным
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
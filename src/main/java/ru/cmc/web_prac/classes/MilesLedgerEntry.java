@@ -0,0 +1,41 @@
+package ru.cmc.web_prac.classes;
+
+import lombok.*;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "miles_ledger")
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class MilesLedgerEntry implements CommonEntity<Long> {
+
+    // Причины движения миль (ограничение CHECK в create.sql)
+    public static final String ACCRUAL = "ACCRUAL";
+    public static final String REDEMPTION = "REDEMPTION";
+    public static final String REFUND = "REFUND";
+    public static final String ADJUSTMENT = "ADJUSTMENT";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "client_id", nullable = false)
+    private Long clientId;
+
+    // Положительное - начисление, отрицательное - списание
+    @Column(name = "delta", nullable = false)
+    private Integer delta;
+
+    @Column(name = "reason", nullable = false, length = 20)
+    private String reason;
+
+    @Column(name = "booking_id")
+    private Long bookingId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
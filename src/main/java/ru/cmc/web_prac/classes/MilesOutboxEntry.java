@@ -0,0 +1,31 @@
+package ru.cmc.web_prac.classes;
+
+import lombok.*;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "miles_outbox")
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class MilesOutboxEntry implements CommonEntity<Long> {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Строка очереди, а не связь: клиент и бронирование здесь нужны только по id
+    @Column(name = "client_id", nullable = false)
+    private Long clientId;
+
+    @Column(name = "booking_id", nullable = false)
+    private Long bookingId;
+
+    @Column(name = "miles", nullable = false)
+    private Integer miles;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
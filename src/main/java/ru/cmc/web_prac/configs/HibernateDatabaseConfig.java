@@ -1,15 +1,20 @@
 package ru.cmc.web_prac.configs;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
+import jakarta.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
 import java.util.Properties;
 
@@ -32,20 +37,73 @@ public class HibernateDatabaseConfig {
     @Value("${spring.datasource.password}")
     private String DB_PASSWORD;
 
+    // Настройки пула соединений
+    @Value("${app.datasource.pool.maximum-pool-size:20}")
+    private int POOL_MAX_SIZE;
+    @Value("${app.datasource.pool.minimum-idle:20}")
+    private int POOL_MIN_IDLE;
+    @Value("${app.datasource.pool.connection-timeout-ms:3000}")
+    private long POOL_CONNECTION_TIMEOUT;
+    @Value("${app.datasource.pool.validation-timeout-ms:1000}")
+    private long POOL_VALIDATION_TIMEOUT;
+    @Value("${app.datasource.pool.idle-timeout-ms:600000}")
+    private long POOL_IDLE_TIMEOUT;
+    @Value("${app.datasource.pool.max-lifetime-ms:1800000}")
+    private long POOL_MAX_LIFETIME;
+    @Value("${app.datasource.pool.keepalive-ms:300000}")
+    private long POOL_KEEPALIVE;
+    @Value("${app.datasource.pool.leak-detection-threshold-ms:20000}")
+    private long POOL_LEAK_DETECTION_THRESHOLD;
+
+    @Value("${app.dao.batch-size:50}")
+    private int JDBC_BATCH_SIZE;
+    @Value("${app.hibernate.show-sql:true}")
+    private boolean SHOW_SQL;
+    @Value("${app.hibernate.generate-statistics:false}")
+    private boolean GENERATE_STATISTICS;
+    @Value("${app.hibernate.statement-inspector:}")
+    private String STATEMENT_INSPECTOR;
+
+    /**
+     * Пул соединений HikariCP вместо открытия нового соединения на каждую транзакцию.
+     * Пул создаётся сразу при старте и заполняется до minimum-idle соединений,
+     * метрики (active, idle, pending, acquire, timeout) публикуются в Micrometer
+     * под именем hikaricp.connections.*
+     */
     @Bean
-    public DataSource dataSource() {
-        DriverManagerDataSource dataSource = new DriverManagerDataSource();
-        dataSource.setDriverClassName(DB_DRIVER);
-        dataSource.setUrl(DB_URL);
-        dataSource.setUsername(DB_USERNAME);
-        dataSource.setPassword(DB_PASSWORD);
-        return dataSource;
+    public DataSource dataSource(ObjectProvider<MeterRegistry> meterRegistry) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("web_prac-pool");
+        config.setDriverClassName(DB_DRIVER);
+        config.setJdbcUrl(DB_URL);
+        config.setUsername(DB_USERNAME);
+        config.setPassword(DB_PASSWORD);
+
+        config.setMaximumPoolSize(POOL_MAX_SIZE);
+        config.setMinimumIdle(Math.min(POOL_MIN_IDLE, POOL_MAX_SIZE));
+        config.setConnectionTimeout(POOL_CONNECTION_TIMEOUT);
+        config.setValidationTimeout(POOL_VALIDATION_TIMEOUT);
+        config.setIdleTimeout(POOL_IDLE_TIMEOUT);
+        config.setMaxLifetime(POOL_MAX_LIFETIME);
+        config.setKeepaliveTime(POOL_KEEPALIVE);
+        config.setLeakDetectionThreshold(POOL_LEAK_DETECTION_THRESHOLD);
+
+        // Драйвер склеивает батч INSERT в многострочные INSERT ... VALUES (...), (...)
+        config.addDataSourceProperty("reWriteBatchedInserts", "true");
+
+        // Первое соединение открывается синхронно: приложение не стартует без БД
+        config.setInitializationFailTimeout(POOL_CONNECTION_TIMEOUT);
+        config.setRegisterMbeans(true);
+        meterRegistry.ifAvailable(registry ->
+                config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+
+        return new HikariDataSource(config);
     }
 
     @Bean
-    public LocalContainerEntityManagerFactoryBean entityManagerFactory() {
+    public LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
         LocalContainerEntityManagerFactoryBean em = new LocalContainerEntityManagerFactoryBean();
-        em.setDataSource(dataSource());
+        em.setDataSource(dataSource);
         em.setPackagesToScan("ru.cmc.web_prac.classes");
 
         HibernateJpaVendorAdapter vendorAdapter = new HibernateJpaVendorAdapter();
@@ -59,16 +117,30 @@ public class HibernateDatabaseConfig {
         Properties properties = new Properties();
         properties.setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
         properties.setProperty("hibernate.hbm2ddl.auto", "none");
-        properties.setProperty("hibernate.show_sql", "true");
-        properties.setProperty("hibernate.format_sql", "true");
+        // Печать SQL в stdout - для разработки, в профиле prod выключена
+        properties.setProperty("hibernate.show_sql", String.valueOf(SHOW_SQL));
+        properties.setProperty("hibernate.format_sql", String.valueOf(SHOW_SQL));
         properties.setProperty("hibernate.default_schema", "web_prac");
+
+        // JDBC-батчинг INSERT/UPDATE
+        properties.setProperty("hibernate.jdbc.batch_size", String.valueOf(JDBC_BATCH_SIZE));
+        properties.setProperty("hibernate.order_inserts", "true");
+        properties.setProperty("hibernate.order_updates", "true");
+        properties.setProperty("hibernate.jdbc.batch_versioned_data", "true");
+
+        // Счётчики запросов Hibernate (включаются в тестах для проверки числа SELECT)
+        properties.setProperty("hibernate.generate_statistics", String.valueOf(GENERATE_STATISTICS));
+        // Перехватчик SQL (в тестах - для проверки планов запросов)
+        if (!STATEMENT_INSPECTOR.isEmpty()) {
+            properties.setProperty("hibernate.session_factory.statement_inspector", STATEMENT_INSPECTOR);
+        }
         return properties;
     }
 
     @Bean
-    public JpaTransactionManager transactionManager() {
+    public JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
         JpaTransactionManager transactionManager = new JpaTransactionManager();
-        transactionManager.setEntityManagerFactory(entityManagerFactory().getObject());
+        transactionManager.setEntityManagerFactory(entityManagerFactory);
         return transactionManager;
     }
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+package ru.cmc.web_prac.configs;
+
+import org.thymeleaf.cache.ExpressionCacheKey;
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.ICacheEntryValidityChecker;
+import org.thymeleaf.cache.ICacheManager;
+import org.thymeleaf.cache.StandardCacheManager;
+import org.thymeleaf.cache.TemplateCacheKey;
+import org.thymeleaf.engine.TemplateModel;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Кэш Thymeleaf, в котором разобранный фрагмент общий для всех страниц.
+ * Стандартный кэш хранит фрагмент отдельно для каждой страницы, которая его подключает
+ * (в ключе есть имя страницы-владельца), и general :: page-header разбирается заново
+ * для каждого шаблона. Наш ClassLoaderTemplateResolver ищет шаблон только по имени,
+ * поэтому владелец из ключа убирается: фрагмент разбирается один раз на всё приложение
+ * и может быть разобран заранее, при старте (WebConfig.warmUpTemplates).
+ */
+public class SharedFragmentCacheManager implements ICacheManager {
+
+    private final StandardCacheManager delegate = new StandardCacheManager();
+
+    private volatile ICache<TemplateCacheKey, TemplateModel> templateCache;
+
+    @Override
+    public ICache<TemplateCacheKey, TemplateModel> getTemplateCache() {
+        if (templateCache == null) {
+            synchronized (this) {
+                if (templateCache == null) {
+                    ICache<TemplateCacheKey, TemplateModel> cache = delegate.getTemplateCache();
+                    templateCache = cache == null ? null : new SharedFragmentCache(cache);
+                }
+            }
+        }
+        return templateCache;
+    }
+
+    @Override
+    public ICache<ExpressionCacheKey, Object> getExpressionCache() {
+        return delegate.getExpressionCache();
+    }
+
+    @Override
+    public <K, V> ICache<K, V> getSpecificCache(String name) {
+        return delegate.getSpecificCache(name);
+    }
+
+    @Override
+    public List<String> getAllSpecificCacheNames() {
+        return delegate.getAllSpecificCacheNames();
+    }
+
+    @Override
+    public void clearAllCaches() {
+        delegate.clearAllCaches();
+    }
+
+    private record SharedFragmentCache(ICache<TemplateCacheKey, TemplateModel> cache)
+            implements ICache<TemplateCacheKey, TemplateModel> {
+
+        @Override
+        public void put(TemplateCacheKey key, TemplateModel value) {
+            cache.put(withoutOwner(key), value);
+        }
+
+        @Override
+        public TemplateModel get(TemplateCacheKey key) {
+            return cache.get(withoutOwner(key));
+        }
+
+        @Override
+        public TemplateModel get(TemplateCacheKey key,
+                                 ICacheEntryValidityChecker<? super TemplateCacheKey, ? super TemplateModel> validityChecker) {
+            return cache.get(withoutOwner(key), validityChecker);
+        }
+
+        @Override
+        public void clear() {
+            cache.clear();
+        }
+
+        @Override
+        public void clearKey(TemplateCacheKey key) {
+            cache.clearKey(withoutOwner(key));
+        }
+
+        @Override
+        public Set<TemplateCacheKey> keySet() {
+            return cache.keySet();
+        }
+
+        // Только ключи подключаемых фрагментов; встроенные строковые шаблоны остаются у своих владельцев
+        private static TemplateCacheKey withoutOwner(TemplateCacheKey key) {
+            if (key.getOwnerTemplate() == null
+                    || key.getTemplateSelectors() == null || key.getTemplateSelectors().isEmpty()) {
+                return key;
+            }
+            return new TemplateCacheKey(null, key.getTemplate(), key.getTemplateSelectors(),
+                    key.getLineOffset(), key.getColOffset(), key.getTemplateMode(),
+                    key.getTemplateResolutionAttributes());
+        }
+    }
+}
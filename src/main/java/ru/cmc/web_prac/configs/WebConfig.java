@@ -1,22 +1,47 @@
 package ru.cmc.web_prac.configs;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
 import org.springframework.web.servlet.ViewResolver;
 import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.thymeleaf.TemplateSpec;
+import org.thymeleaf.context.Context;
 import org.thymeleaf.spring6.SpringTemplateEngine;
 import org.thymeleaf.spring6.view.ThymeleafViewResolver;
+import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
 
+import java.io.Writer;
+import java.util.List;
+import java.util.Set;
+
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    // Общие фрагменты страниц; в профиле prod разбираются при старте
+    static final String SHARED_TEMPLATE = "general";
+    static final List<String> SHARED_FRAGMENTS = List.of("page-header", "site-footer", "site-script");
+
+    // Без кэша шаблоны перечитываются на каждый запрос - для разработки
+    @Value("${app.templates.cache:false}")
+    private boolean cacheTemplates;
+
+    // Время жизни разобранного шаблона в кэше; 0 - пока не вытеснен
+    @Value("${app.templates.cache-ttl-ms:0}")
+    private long cacheTtlMs;
+
     @Bean
     public ClassLoaderTemplateResolver templateResolver() {
         var templateResolver = new ClassLoaderTemplateResolver();
         templateResolver.setPrefix("templates/");
-        templateResolver.setCacheable(false); // для разработки
+        templateResolver.setCacheable(cacheTemplates);
+        if (cacheTtlMs > 0) {
+            templateResolver.setCacheTTLMs(cacheTtlMs);
+        }
         templateResolver.setSuffix(".html");
         templateResolver.setTemplateMode("HTML");
         templateResolver.setCharacterEncoding("UTF-8");
@@ -28,6 +53,7 @@ public class WebConfig implements WebMvcConfigurer {
         var templateEngine = new SpringTemplateEngine();
         templateEngine.setTemplateResolver(templateResolver());
         templateEngine.setEnableSpringELCompiler(true);
+        templateEngine.setCacheManager(new SharedFragmentCacheManager());
 
         // НЕ заменяем стандартный диалект
         return templateEngine;
@@ -41,6 +67,18 @@ public class WebConfig implements WebMvcConfigurer {
         return viewResolver;
     }
 
+    // Первый запрос к каждой странице не платит за разбор общих фрагментов
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpTemplates() {
+        if (!cacheTemplates) {
+            return;
+        }
+        for (String fragment : SHARED_FRAGMENTS) {
+            templateEngine().process(new TemplateSpec(SHARED_TEMPLATE, Set.of(fragment), (TemplateMode) null, null),
+                    new Context(), Writer.nullWriter());
+        }
+    }
+
     @Override
     public void addViewControllers(ViewControllerRegistry registry) {
         registry.addViewController("/").setViewName("index");
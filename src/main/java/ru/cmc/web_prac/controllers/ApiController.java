@@ -0,0 +1,150 @@
+package ru.cmc.web_prac.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.cmc.web_prac.DAO.BookingDAO;
+import ru.cmc.web_prac.DAO.FlightDAO;
+import ru.cmc.web_prac.DTO.BookingRow;
+import ru.cmc.web_prac.DTO.FlightSummary;
+import ru.cmc.web_prac.DTO.SeatAvailability;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * JSON API только для чтения: рейсы, поиск, свободные места и бронирования.
+ * Отдаются проекции (FlightSummary, BookingRow), а не сущности, поэтому сериализация
+ * не вызывает ленивых загрузок. Полные списки пишутся в ответ по мере чтения из курсора БД
+ * и не собираются в памяти.
+ */
+@RestController
+@RequestMapping("/api")
+public class ApiController {
+
+    @Autowired
+    private FlightDAO flightDAO;
+
+    @Autowired
+    private BookingDAO bookingDAO;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Сколько секунд клиенты и прокси могут хранить результаты поиска
+    @Value("${app.search.cache-max-age-seconds:60}")
+    private long searchMaxAgeSeconds;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    // Сброс после каждой записи отправлял бы по сети каждую строку отдельно; буфер ответа сбрасывает контейнер
+    private ObjectWriter rowWriter;
+
+    @PostConstruct
+    void init() {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        rowWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @GetMapping("/flights")
+    public void flights(@RequestParam(name = "sortBy", defaultValue = "date") String sortBy,
+                        HttpServletResponse response) throws IOException {
+        writeArray(response, () -> flightDAO.streamSummaries(sortBy));
+    }
+
+    // Список уже лежит в кэше списков рейсов, курсор здесь не нужен
+    @GetMapping("/flights/available")
+    public List<FlightSummary> availableFlights() {
+        return flightDAO.getAvailableFlightSummaries();
+    }
+
+    @GetMapping("/flights/{flightId}")
+    public ResponseEntity<FlightSummary> flight(@PathVariable("flightId") Long flightId) {
+        return ResponseEntity.ofNullable(flightDAO.getSummary(flightId));
+    }
+
+    @GetMapping("/flights/{flightId}/availability")
+    public ResponseEntity<SeatAvailability> availability(@PathVariable("flightId") Long flightId) {
+        FlightSummary flight = flightDAO.getSummary(flightId);
+        if (flight == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(new SeatAvailability(flight.id(), flight.totalSeats(), flight.availableSeats()));
+    }
+
+    // Рейсы со свободными местами по маршруту на день, как GET /search
+    @GetMapping("/search")
+    public ResponseEntity<List<FlightSummary>> search(
+            @RequestParam("departureAirport") String departureAirport,
+            @RequestParam("arrivalAirport") String arrivalAirport,
+            @RequestParam("departureDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate departureDate) {
+        List<FlightSummary> flights = flightDAO.searchFlightSummaries(
+                HomeController.normalizeAirport(departureAirport),
+                HomeController.normalizeAirport(arrivalAirport),
+                departureDate.atStartOfDay());
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(searchMaxAgeSeconds, TimeUnit.SECONDS).cachePublic())
+                .body(flights);
+    }
+
+    @GetMapping("/bookings")
+    public void bookings(@RequestParam(name = "status", required = false) String status,
+                         HttpServletResponse response) throws IOException {
+        writeArray(response, () -> bookingDAO.streamRows(status));
+    }
+
+    @GetMapping("/bookings/{bookingId}")
+    public ResponseEntity<BookingRow> booking(@PathVariable("bookingId") Long bookingId) {
+        return ResponseEntity.ofNullable(bookingDAO.getRow(bookingId));
+    }
+
+    /**
+     * Пишет JSON-массив по одной строке из потока; поток читается из курсора
+     * внутри транзакции только для чтения, которая длится, пока пишется ответ.
+     */
+    private <T> void writeArray(HttpServletResponse response, Supplier<Stream<T>> rows) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<T> stream = rows.get();
+                     SequenceWriter array = rowWriter.writeValuesAsArray(response.getOutputStream())) {
+                    for (Iterator<T> it = stream.iterator(); it.hasNext(); ) {
+                        array.write(it.next());
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
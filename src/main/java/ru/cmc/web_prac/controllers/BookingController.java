@@ -6,14 +6,17 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.WebRequest;
 import ru.cmc.web_prac.DAO.BookingDAO;
 import ru.cmc.web_prac.DAO.ClientDAO;
 import ru.cmc.web_prac.DAO.FlightDAO;
+import ru.cmc.web_prac.DTO.BookingRow;
 import ru.cmc.web_prac.classes.Booking;
-import ru.cmc.web_prac.classes.Client;
 import ru.cmc.web_prac.classes.Flight;
+import ru.cmc.web_prac.services.BookingService;
+import ru.cmc.web_prac.services.BookingWritePipeline;
+import ru.cmc.web_prac.services.IdempotencyService;
 
-import java.time.LocalDateTime;
 import java.util.List;
 
 @Controller
@@ -28,24 +31,47 @@ public class BookingController {
     @Autowired
     private ClientDAO clientDAO;
 
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private BookingWritePipeline bookingWritePipeline;
+
+    // Размер страницы списка бронирований
+    private static final int PAGE_SIZE = 50;
+
     @GetMapping("/bookings")
     public String bookingsList(@RequestParam(name = "status", required = false) String status,
+                               @RequestParam(name = "afterId", required = false) Long afterId,
                                Model model) {
-        List<Booking> bookings;
-
-        if (status != null && !status.isEmpty()) {
-            bookings = bookingDAO.getByStatus(status);
+        if (status != null && status.isEmpty()) {
+            status = null;
+        }
+        if (status != null) {
             model.addAttribute("filterStatus", status);
-        } else {
-            bookings = (List<Booking>) bookingDAO.getAll();
+        }
+
+        // Берём на одну запись больше, чтобы понять, есть ли следующая страница
+        List<BookingRow> bookings = bookingDAO.getRowPage(status, afterId, PAGE_SIZE + 1);
+        if (bookings.size() > PAGE_SIZE) {
+            bookings = bookings.subList(0, PAGE_SIZE);
+            model.addAttribute("nextAfterId", bookings.get(PAGE_SIZE - 1).id());
         }
 
         model.addAttribute("bookings", bookings);
+        model.addAttribute("pageStarted", afterId != null);
         return "bookings";
     }
 
     @GetMapping("/booking")
-    public String bookingDetails(@RequestParam("bookingId") Long bookingId, Model model) {
+    public String bookingDetails(@RequestParam("bookingId") Long bookingId, WebRequest request, Model model) {
+        List<Object> version = bookingDAO.getPageVersion(bookingId);
+        if (version != null && ConditionalGet.notModified(request, version)) {
+            return null;
+        }
         Booking booking = bookingDAO.getById(bookingId);
 
         if (booking == null) {
@@ -58,7 +84,9 @@ public class BookingController {
     }
 
     @GetMapping("/createBooking")
-    public String createBookingForm(@RequestParam("flightId") Long flightId, Model model) {
+    public String createBookingForm(@RequestParam("flightId") Long flightId,
+                                    @RequestParam(name = "clientId", required = false) Long clientId,
+                                    Model model) {
         Flight flight = flightDAO.getById(flightId);
 
         if (flight == null) {
@@ -71,10 +99,12 @@ public class BookingController {
             return "errorPage";
         }
 
-        List<Client> clients = (List<Client>) clientDAO.getAll();
+        // Клиент выбирается поиском через /api/clients; в форму попадает только заранее выбранный
+        if (clientId != null) {
+            model.addAttribute("client", clientDAO.getById(clientId));
+        }
 
         model.addAttribute("flight", flight);
-        model.addAttribute("clients", clients);
         return "createBooking";
     }
 
@@ -85,49 +115,18 @@ public class BookingController {
                               @RequestParam(name = "milesUsed", defaultValue = "0") Integer milesUsed,
                               Model model) {
         try {
-            Flight flight = flightDAO.getById(flightId);
-            Client client = clientDAO.getById(clientId);
-
-            if (flight == null || client == null) {
-                model.addAttribute("error_msg", "Рейс или клиент не найдены");
-                return "errorPage";
-            }
-
-            if (flight.getAvailableSeats() <= 0) {
-                model.addAttribute("error_msg", "На данном рейсе нет свободных мест");
-                return "errorPage";
-            }
-
-            // Проверяем мили клиента, если используется оплата милями
-            if (paidWithMiles && milesUsed > 0) {
-                if (client.getBonusMiles() < milesUsed) {
-                    model.addAttribute("error_msg", "У клиента недостаточно бонусных миль");
+            return idempotencyService.execute("saveBooking", model, () -> {
+                try {
+                    // Места и мили проверяются и списываются атомарно; при групповой записи - вместе с соседними запросами
+                    Long bookingId = bookingWritePipeline.book(flightId, clientId, paidWithMiles, milesUsed);
+                    return "redirect:/booking?bookingId=" + bookingId;
+
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    model.addAttribute("error_msg", e.getMessage());
                     return "errorPage";
                 }
-            }
-
-            // Создаем бронирование
-            Booking booking = new Booking();
-            booking.setFlight(flight);
-            booking.setClient(client);
-            booking.setBookingDate(LocalDateTime.now());
-            booking.setStatus("BOOKED");
-            booking.setPaidWithMiles(paidWithMiles);
-            booking.setMilesUsed(milesUsed);
-
-            bookingDAO.save(booking);
-
-            // Уменьшаем количество доступных мест
-            flightDAO.decrementAvailableSeats(flightId);
-
-            // Списываем мили, если используется оплата милями
-            if (paidWithMiles && milesUsed > 0) {
-                clientDAO.deductBonusMiles(clientId, milesUsed);
-            }
-
-            return "redirect:/booking?bookingId=" + booking.getId();
-
-        } catch (Exception e) {
+            });
+        } catch (RuntimeException e) {
             model.addAttribute("error_msg", "Ошибка при создании бронирования: " + e.getMessage());
             return "errorPage";
         }
@@ -136,24 +135,18 @@ public class BookingController {
     @PostMapping("/confirmBooking")
     public String confirmBooking(@RequestParam("bookingId") Long bookingId, Model model) {
         try {
-            Booking booking = bookingDAO.getById(bookingId);
-            if (booking == null) {
-                model.addAttribute("error_msg", "Бронирование не найдено");
-                return "errorPage";
-            }
-
-            bookingDAO.confirmBooking(bookingId);
-
-            // Начисляем мили за полет
-            Flight flight = booking.getFlight();
-            if (flight != null && flight.getAirline() != null) {
-                int earnedMiles = flight.getPrice().multiply(flight.getAirline().getMilesRate()).intValue() / 100;
-                clientDAO.addBonusMiles(booking.getClient().getId(), earnedMiles);
-            }
-
-            return "redirect:/booking?bookingId=" + bookingId;
-
-        } catch (Exception e) {
+            return idempotencyService.execute("confirmBooking", model, () -> {
+                try {
+                    // Смена статуса и постановка миль за полет в очередь начислений - одна транзакция
+                    bookingService.confirmBooking(bookingId);
+                    return "redirect:/booking?bookingId=" + bookingId;
+
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    model.addAttribute("error_msg", e.getMessage());
+                    return "errorPage";
+                }
+            });
+        } catch (RuntimeException e) {
             model.addAttribute("error_msg", "Ошибка при подтверждении бронирования: " + e.getMessage());
             return "errorPage";
         }
@@ -162,25 +155,18 @@ public class BookingController {
     @PostMapping("/cancelBooking")
     public String cancelBooking(@RequestParam("bookingId") Long bookingId, Model model) {
         try {
-            Booking booking = bookingDAO.getById(bookingId);
-            if (booking == null) {
-                model.addAttribute("error_msg", "Бронирование не найдено");
-                return "errorPage";
-            }
-
-            bookingDAO.cancelBooking(bookingId);
-
-            // Возвращаем место в самолет
-            flightDAO.incrementAvailableSeats(booking.getFlight().getId());
-
-            // Возвращаем мили, если они использовались
-            if (booking.getPaidWithMiles() && booking.getMilesUsed() > 0) {
-                clientDAO.addBonusMiles(booking.getClient().getId(), booking.getMilesUsed());
-            }
-
-            return "redirect:/booking?bookingId=" + bookingId;
-
-        } catch (Exception e) {
+            return idempotencyService.execute("cancelBooking", model, () -> {
+                try {
+                    // Возврат места и миль выполняется только при фактической смене статуса
+                    bookingService.cancelBooking(bookingId);
+                    return "redirect:/booking?bookingId=" + bookingId;
+
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    model.addAttribute("error_msg", e.getMessage());
+                    return "errorPage";
+                }
+            });
+        } catch (RuntimeException e) {
             model.addAttribute("error_msg", "Ошибка при отмене бронирования: " + e.getMessage());
             return "errorPage";
         }
@@ -188,7 +174,7 @@ public class BookingController {
 
     @GetMapping("/activeBookings")
     public String activeBookings(Model model) {
-        List<Booking> bookings = bookingDAO.getActiveBookings();
+        List<BookingRow> bookings = bookingDAO.getActiveBookingRows();
         model.addAttribute("bookings", bookings);
         model.addAttribute("title", "Активные бронирования");
         return "bookings";
@@ -196,7 +182,7 @@ public class BookingController {
 
     @GetMapping("/milesBookings")
     public String milesBookings(Model model) {
-        List<Booking> bookings = bookingDAO.getPaidWithMiles();
+        List<BookingRow> bookings = bookingDAO.getPaidWithMilesRows();
         model.addAttribute("bookings", bookings);
         model.addAttribute("title", "Бронирования, оплаченные милями");
         return "bookings";
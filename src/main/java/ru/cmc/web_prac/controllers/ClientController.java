@@ -6,10 +6,14 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.bind.annotation.ResponseBody;
 import ru.cmc.web_prac.DAO.BookingDAO;
 import ru.cmc.web_prac.DAO.ClientDAO;
+import ru.cmc.web_prac.DTO.ClientRow;
 import ru.cmc.web_prac.classes.Booking;
 import ru.cmc.web_prac.classes.Client;
+import ru.cmc.web_prac.services.IdempotencyService;
 
 import java.util.List;
 
@@ -22,25 +26,63 @@ public class ClientController {
     @Autowired
     private BookingDAO bookingDAO;
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    // Размер страницы списка клиентов
+    private static final int PAGE_SIZE = 50;
+
+    // Сколько результатов поиска показывать (самые похожие)
+    private static final int SEARCH_LIMIT = 50;
+
+    // Больше подсказок при выборе клиента не отдаём, сколько бы ни попросили
+    private static final int LOOKUP_LIMIT = 20;
+
     @GetMapping("/clients")
     public String clientsList(@RequestParam(name = "search", required = false) String searchTerm,
+                              @RequestParam(name = "afterId", required = false) Long afterId,
                               Model model) {
-        List<Client> clients;
+        List<ClientRow> clients;
 
         if (searchTerm != null && !searchTerm.trim().isEmpty()) {
-            clients = clientDAO.searchByNameOrEmail(searchTerm.trim());
+            clients = clientDAO.searchRows(searchTerm.trim(), SEARCH_LIMIT);
             model.addAttribute("searchTerm", searchTerm);
+            model.addAttribute("searchLimit", SEARCH_LIMIT);
             model.addAttribute("searchPerformed", true);
         } else {
-            clients = (List<Client>) clientDAO.getAll();
+            // Берём на одну запись больше, чтобы понять, есть ли следующая страница
+            clients = clientDAO.getRowPage(afterId, PAGE_SIZE + 1);
+            if (clients.size() > PAGE_SIZE) {
+                clients = clients.subList(0, PAGE_SIZE);
+                model.addAttribute("nextAfterId", clients.get(PAGE_SIZE - 1).id());
+            }
+            model.addAttribute("pageStarted", afterId != null);
+            model.addAttribute("searchPerformed", false);
         }
 
         model.addAttribute("clients", clients);
         return "clients";
     }
 
+    // Подсказки клиентов для формы бронирования (JSON): не больше LOOKUP_LIMIT самых похожих
+    @GetMapping("/api/clients")
+    @ResponseBody
+    public List<ClientRow> lookupClients(@RequestParam(name = "query", defaultValue = "") String query,
+                                         @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        int capped = Math.min(Math.max(0, limit), LOOKUP_LIMIT);
+        if (capped == 0 || query.isBlank()) {
+            return List.of();
+        }
+        return clientDAO.searchRows(query.trim(), capped);
+    }
+
     @GetMapping("/client")
-    public String clientDetails(@RequestParam("clientId") Long clientId, Model model) {
+    public String clientDetails(@RequestParam("clientId") Long clientId, WebRequest request, Model model) {
+        // Версии проверяются до загрузки клиента и истории
+        List<Object> version = clientDAO.getPageVersion(clientId);
+        if (version != null && ConditionalGet.notModified(request, version)) {
+            return null;
+        }
         Client client = clientDAO.getById(clientId);
 
         if (client == null) {
@@ -84,35 +126,52 @@ public class ClientController {
                              @RequestParam("phone") String phone,
                              @RequestParam("address") String address,
                              @RequestParam("bonusMiles") Integer bonusMiles,
+                             @RequestParam(name = "loadedBonusMiles", required = false) Integer loadedBonusMiles,
                              Model model) {
+        if (bonusMiles != null && bonusMiles < 0) {
+            model.addAttribute("error_msg", "Число бонусных миль не может быть отрицательным");
+            return "errorPage";
+        }
         try {
-            Client client;
             if (clientId != null) {
-                // Редактирование существующего клиента
-                client = clientDAO.getById(clientId);
-                if (client == null) {
+                // Редактирование существующего клиента: при конфликте версий правка повторяется на свежей записи.
+                // Мили меняются в той же транзакции, поэтому правка сохраняется целиком или не сохраняется
+                Client updated = clientDAO.update(clientId, client -> {
+                    client.setFullName(fullName);
+                    client.setEmail(email);
+                    client.setPhone(phone);
+                    client.setAddress(address);
+                    // Мили, начисленные или списанные пока форма была открыта, сохраняются: записывается только разница
+                    if (bonusMiles != null) {
+                        if (loadedBonusMiles == null) {
+                            clientDAO.updateBonusMiles(clientId, bonusMiles);
+                        } else if (!bonusMiles.equals(loadedBonusMiles)
+                                && !clientDAO.changeBonusMiles(clientId, bonusMiles - loadedBonusMiles)) {
+                            throw new IllegalStateException("У клиента недостаточно бонусных миль");
+                        }
+                    }
+                });
+                if (updated == null) {
                     model.addAttribute("error_msg", "Клиент не найден");
                     return "errorPage";
                 }
-            } else {
-                // Создание нового клиента
-                client = new Client();
+                return "redirect:/client?clientId=" + clientId;
             }
 
+            // Создание нового клиента
+            Client client = new Client();
             client.setFullName(fullName);
             client.setEmail(email);
             client.setPhone(phone);
             client.setAddress(address);
             client.setBonusMiles(bonusMiles);
-
-            if (clientId != null) {
-                clientDAO.update(client);
-            } else {
-                clientDAO.save(client);
-            }
+            clientDAO.save(client);
 
             return "redirect:/client?clientId=" + client.getId();
 
+        } catch (IllegalStateException e) {
+            model.addAttribute("error_msg", e.getMessage());
+            return "errorPage";
         } catch (Exception e) {
             model.addAttribute("error_msg", "Ошибка при сохранении клиента: " + e.getMessage());
             return "errorPage";
@@ -133,9 +192,11 @@ public class ClientController {
                            @RequestParam("miles") Integer miles,
                            Model model) {
         try {
-            clientDAO.addBonusMiles(clientId, miles);
-            return "redirect:/client?clientId=" + clientId;
-        } catch (Exception e) {
+            return idempotencyService.execute("addMiles", model, () -> {
+                clientDAO.addBonusMiles(clientId, miles);
+                return "redirect:/client?clientId=" + clientId;
+            });
+        } catch (RuntimeException e) {
             model.addAttribute("error_msg", "Ошибка при добавлении миль: " + e.getMessage());
             return "errorPage";
         }
@@ -146,9 +207,14 @@ public class ClientController {
                               @RequestParam("miles") Integer miles,
                               Model model) {
         try {
-            clientDAO.deductBonusMiles(clientId, miles);
-            return "redirect:/client?clientId=" + clientId;
-        } catch (Exception e) {
+            return idempotencyService.execute("deductMiles", model, () -> {
+                if (!clientDAO.deductBonusMiles(clientId, miles)) {
+                    model.addAttribute("error_msg", "У клиента недостаточно бонусных миль");
+                    return "errorPage";
+                }
+                return "redirect:/client?clientId=" + clientId;
+            });
+        } catch (RuntimeException e) {
             model.addAttribute("error_msg", "Ошибка при списании миль: " + e.getMessage());
             return "errorPage";
         }
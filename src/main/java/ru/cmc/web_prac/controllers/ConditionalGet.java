@@ -0,0 +1,74 @@
+package ru.cmc.web_prac.controllers;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Properties;
+
+/**
+ * Условные GET для страниц сущностей.
+ * ETag - отпечаток версий показанных на странице данных и версии сборки, чтобы
+ * новые шаблоны не отдавались из кэша по старому тегу. Тег одинаков на всех узлах
+ * и после перезапуска одной и той же сборки. Версии читаются одним
+ * коротким запросом (getPageVersion в DAO) до загрузки сущностей: если браузер прислал
+ * тот же тег в If-None-Match, контроллер отвечает 304, не загружая и не отрисовывая страницу.
+ * Данные, изменённые между чтением версий и загрузкой, попадут в кэш под старым тегом,
+ * но следующий запрос с ним получит полную страницу - версии уже другие.
+ * Страницы с данными клиентов кэшируются только в браузере и всегда перепроверяются.
+ * Last-Modified не отправляется: в таблицах хранятся счётчики версий, а не время изменения,
+ * и все браузеры перепроверяют страницу по If-None-Match.
+ */
+final class ConditionalGet {
+
+    private static final String BUILD_VERSION = buildVersion();
+
+    private static final String ENTITY_PAGE_CACHE = CacheControl.noCache().cachePrivate().getHeaderValue();
+
+    private ConditionalGet() {
+    }
+
+    // true - страница не изменилась, ответ 304 уже подготовлен и представление не нужно
+    static boolean notModified(WebRequest request, Object... state) {
+        HttpServletResponse response = ((NativeWebRequest) request).getNativeResponse(HttpServletResponse.class);
+        if (response != null) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, ENTITY_PAGE_CACHE);
+        }
+        // Слабый тег: при сжатии ответа тело меняется, а смысл страницы - нет
+        return request.checkNotModified("W/\"" + fingerprint(state) + "\"");
+    }
+
+    private static String fingerprint(Object[] state) {
+        String source = BUILD_VERSION + '\n' + Arrays.deepToString(state);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(source.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // build.version из build-info.properties (springBoot.buildInfo в build.gradle); без файла - пусто
+    private static String buildVersion() {
+        try (InputStream in = ConditionalGet.class.getResourceAsStream("/META-INF/build-info.properties")) {
+            if (in == null) {
+                return "";
+            }
+            Properties properties = new Properties();
+            properties.load(in);
+            return properties.getProperty("build.version", "");
+        } catch (IOException e) {
+            return "";
+        }
+    }
+}
@@ -6,8 +6,10 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.WebRequest;
 import ru.cmc.web_prac.DAO.AirlineDAO;
 import ru.cmc.web_prac.DAO.FlightDAO;
+import ru.cmc.web_prac.DTO.FlightSummary;
 import ru.cmc.web_prac.classes.Airline;
 import ru.cmc.web_prac.classes.Flight;
 
@@ -25,17 +27,32 @@ public class FlightController {
     @Autowired
     private AirlineDAO airlineDAO;
 
+    // Размер страницы списка рейсов
+    private static final int PAGE_SIZE = 50;
+
     @GetMapping("/flights")
     public String flightsList(@RequestParam(name = "sortBy", defaultValue = "date") String sortBy,
+                              @RequestParam(name = "afterId", required = false) Long afterId,
                               Model model) {
-        List<Flight> flights = flightDAO.getAllSorted(sortBy);
+        // Берём на одну запись больше, чтобы понять, есть ли следующая страница
+        List<FlightSummary> flights = flightDAO.getSummaryPage(sortBy, afterId, PAGE_SIZE + 1);
+        if (flights.size() > PAGE_SIZE) {
+            flights = flights.subList(0, PAGE_SIZE);
+            model.addAttribute("nextAfterId", flights.get(PAGE_SIZE - 1).id());
+        }
+
         model.addAttribute("flights", flights);
+        model.addAttribute("pageStarted", afterId != null);
         model.addAttribute("currentSort", sortBy);
         return "flights";
     }
 
     @GetMapping("/flight")
-    public String flightDetails(@RequestParam("flightId") Long flightId, Model model) {
+    public String flightDetails(@RequestParam("flightId") Long flightId, WebRequest request, Model model) {
+        List<Object> version = flightDAO.getPageVersion(flightId);
+        if (version != null && ConditionalGet.notModified(request, version)) {
+            return null;
+        }
         Flight flight = flightDAO.getById(flightId);
 
         if (flight == null) {
@@ -81,6 +98,7 @@ public class FlightController {
                              @RequestParam("price") BigDecimal price,
                              @RequestParam("totalSeats") Integer totalSeats,
                              @RequestParam("availableSeats") Integer availableSeats,
+                             @RequestParam(name = "loadedAvailableSeats", required = false) Integer loadedAvailableSeats,
                              Model model) {
         try {
             Airline airline = airlineDAO.getById(airlineId);
@@ -92,34 +110,30 @@ public class FlightController {
             LocalDateTime departureTime = LocalDateTime.parse(departureTimeStr);
             LocalDateTime arrivalTime = LocalDateTime.parse(arrivalTimeStr);
 
-            Flight flight;
             if (flightId != null) {
                 // Редактирование существующего рейса
-                flight = flightDAO.getById(flightId);
-                if (flight == null) {
+                // Изменение применяется к свежей записи и повторяется при конфликте версий,
+                // поэтому места, проданные пока форма была открыта, не теряются
+                Flight updated = flightDAO.update(flightId, flight -> {
+                    fillFlight(flight, flightNumber, airline, departureAirport, arrivalAirport,
+                            departureTime, arrivalTime, price, totalSeats);
+                    int seats = loadedAvailableSeats == null ? availableSeats
+                            : flight.getAvailableSeats() + (availableSeats - loadedAvailableSeats);
+                    flight.setAvailableSeats(Math.max(0, Math.min(seats, totalSeats)));
+                });
+                if (updated == null) {
                     model.addAttribute("error_msg", "Рейс не найден");
                     return "errorPage";
                 }
-            } else {
-                // Создание нового рейса
-                flight = new Flight();
+                return "redirect:/flight?flightId=" + flightId;
             }
 
-            flight.setFlightNumber(flightNumber);
-            flight.setAirline(airline);
-            flight.setDepartureAirport(departureAirport);
-            flight.setArrivalAirport(arrivalAirport);
-            flight.setDepartureTime(departureTime);
-            flight.setArrivalTime(arrivalTime);
-            flight.setPrice(price);
-            flight.setTotalSeats(totalSeats);
+            // Создание нового рейса
+            Flight flight = new Flight();
+            fillFlight(flight, flightNumber, airline, departureAirport, arrivalAirport,
+                    departureTime, arrivalTime, price, totalSeats);
             flight.setAvailableSeats(availableSeats);
-
-            if (flightId != null) {
-                flightDAO.update(flight);
-            } else {
-                flightDAO.save(flight);
-            }
+            flightDAO.save(flight);
 
             return "redirect:/flight?flightId=" + flight.getId();
 
@@ -129,6 +143,21 @@ public class FlightController {
         }
     }
 
+    private static void fillFlight(Flight flight, String flightNumber, Airline airline,
+                                   String departureAirport, String arrivalAirport,
+                                   LocalDateTime departureTime, LocalDateTime arrivalTime,
+                                   BigDecimal price, Integer totalSeats) {
+        flight.setFlightNumber(flightNumber);
+        flight.setAirline(airline);
+        // Коды хранятся в том же виде, в каком их ищет поиск
+        flight.setDepartureAirport(HomeController.normalizeAirport(departureAirport));
+        flight.setArrivalAirport(HomeController.normalizeAirport(arrivalAirport));
+        flight.setDepartureTime(departureTime);
+        flight.setArrivalTime(arrivalTime);
+        flight.setPrice(price);
+        flight.setTotalSeats(totalSeats);
+    }
+
     @PostMapping("/deleteFlight")
     public String deleteFlight(@RequestParam("flightId") Long flightId) {
         Flight flight = flightDAO.getById(flightId);
@@ -140,7 +169,7 @@ public class FlightController {
 
     @GetMapping("/availableFlights")
     public String availableFlights(Model model) {
-        List<Flight> flights = flightDAO.getAvailableFlights();
+        List<FlightSummary> flights = flightDAO.getAvailableFlightSummaries();
         model.addAttribute("flights", flights);
         model.addAttribute("title", "Доступные рейсы");
         return "flights";
@@ -1,18 +1,33 @@
 package ru.cmc.web_prac.controllers;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.View;
+import org.springframework.web.util.UriComponentsBuilder;
 import ru.cmc.web_prac.DAO.AirlineDAO;
 import ru.cmc.web_prac.DAO.FlightDAO;
-import ru.cmc.web_prac.classes.Flight;
+import ru.cmc.web_prac.DTO.AirportSuggestion;
+import ru.cmc.web_prac.DTO.FlightSummary;
+import ru.cmc.web_prac.classes.Airline;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 @Controller
 public class HomeController {
@@ -23,39 +38,113 @@ public class HomeController {
     @Autowired
     private AirlineDAO airlineDAO;
 
+    // Сколько секунд браузер и прокси могут отдавать результаты поиска из кэша
+    @Value("${app.search.cache-max-age-seconds:60}")
+    private long searchMaxAgeSeconds;
+
     @GetMapping({"/", "/index"})
-    public String index(Model model) {
+    public String index(WebRequest request, Model model) {
         // Передаем все авиакомпании для выпадающего списка
-        model.addAttribute("airlines", airlineDAO.getAll());
+        Collection<Airline> airlines = airlineDAO.getAll();
+        if (ConditionalGet.notModified(request, airlines.stream()
+                .map(airline -> List.of(airline.getId(), airline.getName(), airline.getMilesRate()))
+                .toList())) {
+            return null;
+        }
+        model.addAttribute("airlines", airlines);
         return "index";
     }
 
+    // Подсказки аэропортов для полей формы поиска (JSON)
+    @GetMapping("/api/airports")
+    @ResponseBody
+    public List<AirportSuggestion> suggestAirports(@RequestParam(name = "prefix", defaultValue = "") String prefix,
+                                                   @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        return flightDAO.suggestAirports(prefix, Math.max(0, limit));
+    }
+
+    // Прежняя форма поиска отправляла POST - перенаправляем на канонический GET-адрес
     @PostMapping("/search")
+    public String searchFlightsForm(@RequestParam("departureAirport") String departureAirport,
+                                    @RequestParam("arrivalAirport") String arrivalAirport,
+                                    @RequestParam("departureDate") String departureDateStr,
+                                    HttpServletRequest request,
+                                    Model model) {
+        LocalDate departureDate = parseDate(departureDateStr, model);
+        if (departureDate == null) {
+            return "errorPage";
+        }
+        request.setAttribute(View.RESPONSE_STATUS_ATTRIBUTE, HttpStatus.SEE_OTHER);
+        return "redirect:/search?" + searchQuery(departureAirport, arrivalAirport, departureDate);
+    }
+
+    /**
+     * Поиск по маршруту и дате. Один поиск - один адрес (коды аэропортов в верхнем регистре,
+     * дата в ISO, параметры в одном порядке), поэтому повторные поиски берутся из кэша
+     * браузера и промежуточных прокси; остальные варианты адреса перенаправляются на канонический.
+     */
+    @GetMapping("/search")
     public String searchFlights(@RequestParam("departureAirport") String departureAirport,
                                 @RequestParam("arrivalAirport") String arrivalAirport,
                                 @RequestParam("departureDate") String departureDateStr,
+                                HttpServletRequest request,
+                                HttpServletResponse response,
                                 Model model) {
-        try {
-            // Парсим дату
-            LocalDateTime departureDate = LocalDateTime.parse(departureDateStr + "T00:00:00");
+        LocalDate departureDate = parseDate(departureDateStr, model);
+        if (departureDate == null) {
+            return "errorPage";
+        }
+        String query = searchQuery(departureAirport, arrivalAirport, departureDate);
+        if (!query.equals(request.getQueryString())) {
+            request.setAttribute(View.RESPONSE_STATUS_ATTRIBUTE, HttpStatus.MOVED_PERMANENTLY);
+            return "redirect:/search?" + query;
+        }
+        String departure = normalizeAirport(departureAirport);
+        String arrival = normalizeAirport(arrivalAirport);
 
+        try {
             // Ищем рейсы
-            List<Flight> flights = flightDAO.searchFlights(departureAirport, arrivalAirport, departureDate);
+            List<FlightSummary> flights = flightDAO.searchFlightSummaries(departure, arrival, departureDate.atStartOfDay());
 
             model.addAttribute("flights", flights);
             model.addAttribute("searchPerformed", true);
-            model.addAttribute("departureAirport", departureAirport);
-            model.addAttribute("arrivalAirport", arrivalAirport);
-            model.addAttribute("departureDate", departureDateStr);
+            model.addAttribute("departureAirport", departure);
+            model.addAttribute("arrivalAirport", arrival);
+            model.addAttribute("departureDate", departureDate.toString());
 
         } catch (Exception e) {
             model.addAttribute("error_msg", "Ошибка при поиске рейсов: " + e.getMessage());
             return "errorPage";
         }
 
+        response.setHeader(HttpHeaders.CACHE_CONTROL,
+                CacheControl.maxAge(searchMaxAgeSeconds, TimeUnit.SECONDS).cachePublic().getHeaderValue());
         return "searchResults";
     }
 
+    private static LocalDate parseDate(String departureDateStr, Model model) {
+        try {
+            return LocalDate.parse(departureDateStr.trim());
+        } catch (DateTimeParseException e) {
+            model.addAttribute("error_msg", "Ошибка при поиске рейсов: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String searchQuery(String departureAirport, String arrivalAirport, LocalDate departureDate) {
+        return UriComponentsBuilder.newInstance()
+                .queryParam("departureAirport", normalizeAirport(departureAirport))
+                .queryParam("arrivalAirport", normalizeAirport(arrivalAirport))
+                .queryParam("departureDate", departureDate)
+                .encode()
+                .build()
+                .getQuery();
+    }
+
+    static String normalizeAirport(String code) {
+        return code.trim().toUpperCase(Locale.ROOT);
+    }
+
     @GetMapping("/about")
     public String about() {
         return "about";
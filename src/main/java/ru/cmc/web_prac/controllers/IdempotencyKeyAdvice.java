@@ -0,0 +1,19 @@
+package ru.cmc.web_prac.controllers;
+
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ModelAttribute;
+
+import java.util.UUID;
+
+/**
+ * Ключ идемпотентности для форм страницы: каждая отрисовка страницы получает новый ключ,
+ * а повторная отправка той же формы (двойной клик, повтор браузера или прокси) - тот же.
+ */
+@ControllerAdvice
+public class IdempotencyKeyAdvice {
+
+    @ModelAttribute("idempotencyKey")
+    public String idempotencyKey() {
+        return UUID.randomUUID().toString();
+    }
+}
@@ -0,0 +1,60 @@
+package ru.cmc.web_prac.controllers;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.cmc.web_prac.DAO.BookingDAO;
+import ru.cmc.web_prac.DAO.ClientDAO;
+import ru.cmc.web_prac.DAO.FlightDAO;
+import ru.cmc.web_prac.DTO.ImportResult;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Массовая загрузка рейсов, клиентов и бронирований из CSV (POST /import/{kind}, text/csv).
+ * Тело запроса передаётся в COPY по мере чтения, файл целиком в памяти не держится.
+ * Первая строка - заголовок с именами столбцов (см. importCsv соответствующего DAO).
+ * Ответ - число загруженных и отклонённых строк с причинами отказа.
+ */
+@RestController
+public class ImportController {
+
+    @Autowired
+    private FlightDAO flightDAO;
+
+    @Autowired
+    private ClientDAO clientDAO;
+
+    @Autowired
+    private BookingDAO bookingDAO;
+
+    @PostMapping(value = "/import/{kind}", consumes = "text/csv")
+    public ResponseEntity<?> importCsv(@PathVariable("kind") String kind, HttpServletRequest request) throws IOException {
+        Charset charset = request.getCharacterEncoding() != null
+                ? Charset.forName(request.getCharacterEncoding()) : StandardCharsets.UTF_8;
+        try (Reader csv = new InputStreamReader(request.getInputStream(), charset)) {
+            ImportResult result = switch (kind) {
+                case "flights" -> flightDAO.importCsv(csv);
+                case "clients" -> clientDAO.importCsv(csv);
+                case "bookings" -> bookingDAO.importCsv(csv);
+                default -> null;
+            };
+            return result == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(result);
+        } catch (DataAccessException e) {
+            // Файл не прочитан целиком (неверный заголовок, лишние столбцы) - загрузка откатывается
+            return ResponseEntity.badRequest().body(Map.of("error", String.valueOf(e.getMostSpecificCause().getMessage())));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
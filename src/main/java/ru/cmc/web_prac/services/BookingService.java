@@ -0,0 +1,162 @@
+package ru.cmc.web_prac.services;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.cmc.web_prac.DAO.BookingDAO;
+import ru.cmc.web_prac.DAO.ClientDAO;
+import ru.cmc.web_prac.DAO.FlightDAO;
+import ru.cmc.web_prac.DAO.MilesLedgerDAO;
+import ru.cmc.web_prac.DAO.MilesOutboxDAO;
+import ru.cmc.web_prac.classes.Booking;
+import ru.cmc.web_prac.classes.Client;
+import ru.cmc.web_prac.classes.Flight;
+import ru.cmc.web_prac.classes.MilesLedgerEntry;
+
+import java.time.LocalDateTime;
+import java.util.function.Supplier;
+
+/**
+ * Операции с бронированиями, каждая - одна транзакция.
+ * Место списывается из flights.available_seats в той же транзакции, поэтому при откате
+ * оно возвращается само, а счётчик в БД всегда равен числу свободных мест. Мили списываются записью в журнал миль при достаточном балансе
+ * (MilesLedgerDAO.redeem): если записи нет, транзакция откатывается целиком,
+ * поэтому мили не списываются без бронирования.
+ * Конфликты блокировок и сериализации (ConcurrencyFailureException) повторяются
+ * ограниченное число раз; отказ по бизнес-правилу - IllegalStateException с текстом для пользователя.
+ */
+@Service
+public class BookingService {
+
+    @Autowired
+    private BookingDAO bookingDAO;
+
+    @Autowired
+    private FlightDAO flightDAO;
+
+    @Autowired
+    private ClientDAO clientDAO;
+
+    @Autowired
+    private MilesLedgerDAO milesLedgerDAO;
+
+    @Autowired
+    private MilesOutboxDAO milesOutboxDAO;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.booking.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.booking.retry-backoff-ms:20}")
+    private long retryBackoffMs;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public Booking createBooking(Long flightId, Long clientId, boolean paidWithMiles, int milesUsed) {
+        return inTransaction(() -> {
+            Booking booking = newBooking(flightId, clientId, paidWithMiles, milesUsed);
+            redeemMiles(clientId, paidWithMiles, milesUsed);
+            // Строка рейса блокируется последней: блокировка держится только до фиксации
+            if (!flightDAO.decrementAvailableSeats(flightId)) {
+                throw new IllegalStateException("На данном рейсе нет свободных мест");
+            }
+            bookingDAO.save(booking);
+            return booking;
+        });
+    }
+
+    // Проверка рейса и клиента без записи в БД: BookingWritePipeline сохраняет бронирования пачкой
+    Booking newBooking(Long flightId, Long clientId, boolean paidWithMiles, int milesUsed) {
+        Flight flight = flightDAO.getById(flightId);
+        Client client = clientDAO.getById(clientId);
+        if (flight == null || client == null) {
+            throw new IllegalArgumentException("Рейс или клиент не найдены");
+        }
+
+        Booking booking = new Booking();
+        booking.setFlight(flight);
+        booking.setClient(client);
+        booking.setBookingDate(LocalDateTime.now());
+        booking.setStatus("BOOKED");
+        booking.setPaidWithMiles(paidWithMiles);
+        booking.setMilesUsed(milesUsed);
+        return booking;
+    }
+
+    // Списание миль записью в журнал; отказ не помечает транзакцию к откату
+    void redeemMiles(Long clientId, boolean paidWithMiles, int milesUsed) {
+        if (paidWithMiles && milesUsed > 0
+                && !milesLedgerDAO.redeem(clientId, milesUsed, MilesLedgerEntry.REDEMPTION, null)) {
+            throw new IllegalStateException("У клиента недостаточно бонусных миль");
+        }
+    }
+
+    // Оплата бронирования; мили за полёт ставятся в очередь той же транзакцией (MilesOutboxDispatcher)
+    public void confirmBooking(Long bookingId) {
+        inTransaction(() -> {
+            if (!bookingDAO.confirmBooking(bookingId)) {
+                findBooking(bookingId);
+                throw new IllegalStateException("Бронирование уже оплачено или отменено");
+            }
+            return milesOutboxDAO.enqueueEarnedMiles(bookingId);
+        });
+    }
+
+    // Отмена: место и потраченные мили возвращаются ровно один раз
+    public void cancelBooking(Long bookingId) {
+        inTransaction(() -> {
+            Booking booking = findBooking(bookingId);
+            if (!bookingDAO.cancelBooking(bookingId)) {
+                throw new IllegalStateException("Бронирование уже отменено");
+            }
+
+            flightDAO.incrementAvailableSeats(booking.getFlight().getId());
+            if (booking.getPaidWithMiles() && booking.getMilesUsed() > 0) {
+                milesLedgerDAO.append(booking.getClient().getId(), booking.getMilesUsed(),
+                        MilesLedgerEntry.REFUND, bookingId);
+            }
+            return booking;
+        });
+    }
+
+    private Booking findBooking(Long bookingId) {
+        Booking booking = bookingDAO.getById(bookingId);
+        if (booking == null) {
+            throw new IllegalArgumentException("Бронирование не найдено");
+        }
+        return booking;
+    }
+
+    private <T> T inTransaction(Supplier<T> action) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> action.get());
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                pause(attempt);
+            }
+        }
+    }
+
+    private void pause(int attempt) {
+        try {
+            Thread.sleep(retryBackoffMs * attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Бронирование прервано", e);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package ru.cmc.web_prac.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.cmc.web_prac.DAO.BookingDAO;
+import ru.cmc.web_prac.DAO.FlightDAO;
+import ru.cmc.web_prac.classes.Booking;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Групповая запись бронирований.
+ * Запросы копятся в очереди несколько миллисекунд (app.booking.group-commit.linger-ms),
+ * затем один поток записывает их одной транзакцией: места всех рейсов пакета забираются
+ * одним UPDATE (FlightDAO.takeSeats), бронирования вставляются одним пакетным INSERT,
+ * и всё фиксируется вместе. Каждый вызывающий получает свой id бронирования или свой отказ.
+ * Если пакет целиком не записался, откат возвращает места и мили, а запросы повторяются
+ * по одному через BookingService.
+ */
+@Service
+public class BookingWritePipeline {
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private BookingDAO bookingDAO;
+
+    @Autowired
+    private FlightDAO flightDAO;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.booking.group-commit.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.booking.group-commit.linger-ms:5}")
+    private long lingerMs;
+
+    @Value("${app.booking.group-commit.max-batch:100}")
+    private int maxBatch;
+
+    @Value("${app.booking.group-commit.queue-capacity:1000}")
+    private int queueCapacity;
+
+    private BlockingQueue<BookingRequest> queue;
+    private TransactionTemplate transactionTemplate;
+    private Thread writer;
+    private volatile boolean running;
+
+    @PostConstruct
+    void start() {
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        running = true;
+        writer = new Thread(this::writeLoop, "booking-group-commit");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        // Поток дописывает то, что уже в очереди, и завершается
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    // Создание бронирования с ожиданием результата; без групповой записи - сразу через BookingService
+    public Long book(Long flightId, Long clientId, boolean paidWithMiles, int milesUsed) {
+        if (!enabled) {
+            return bookingService.createBooking(flightId, clientId, paidWithMiles, milesUsed).getId();
+        }
+        try {
+            return submit(flightId, clientId, paidWithMiles, milesUsed).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public CompletableFuture<Long> submit(Long flightId, Long clientId, boolean paidWithMiles, int milesUsed) {
+        BookingRequest request = new BookingRequest(flightId, clientId, paidWithMiles, milesUsed);
+        // Очередь переполнена или запись останавливается - пишем в потоке вызывающего
+        if (!running || !queue.offer(request) || (!running && queue.remove(request))) {
+            writeOneByOne(List.of(request));
+        }
+        return request.result;
+    }
+
+    private void writeLoop() {
+        boolean interrupted = false;
+        while (running || !queue.isEmpty()) {
+            List<BookingRequest> batch = new ArrayList<>();
+            try {
+                BookingRequest first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < maxBatch) {
+                    long wait = deadline - System.nanoTime();
+                    BookingRequest next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Прерывание - сигнал остановки: новые запросы пишутся вызывающими, очередь дописываем.
+                // Флаг восстанавливается при выходе: с ним пул соединений не выдал бы соединение
+                interrupted = true;
+                running = false;
+                queue.drainTo(batch);
+            }
+
+            try {
+                if (!batch.isEmpty()) {
+                    write(batch);
+                }
+            } catch (RuntimeException e) {
+                batch.forEach(request -> request.result.completeExceptionally(e));
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(List<BookingRequest> batch) {
+        AtomicInteger completion = new AtomicInteger(TransactionSynchronization.STATUS_ROLLED_BACK);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        completion.set(status);
+                    }
+                });
+                bookingDAO.saveCollection(prepare(batch));
+            });
+        } catch (RuntimeException e) {
+            // При неизвестном исходе фиксации ничего не повторяем
+            if (completion.get() != TransactionSynchronization.STATUS_ROLLED_BACK) {
+                batch.forEach(request -> request.result.completeExceptionally(e));
+                return;
+            }
+            writeOneByOne(batch);
+            return;
+        }
+
+        for (BookingRequest request : batch) {
+            if (request.rejection != null) {
+                request.result.completeExceptionally(request.rejection);
+            } else {
+                request.result.complete(request.booking.getId());
+            }
+        }
+    }
+
+    /**
+     * Проверки, места и мили внутри транзакции пакета; возвращает бронирования для вставки.
+     * Отказ одного запроса (нет клиента, мест или миль) не откатывает остальные.
+     */
+    private List<Booking> prepare(List<BookingRequest> batch) {
+        Map<Long, List<BookingRequest>> byFlight = new LinkedHashMap<>();
+        for (BookingRequest request : batch) {
+            request.booking = null;
+            request.rejection = null;
+            try {
+                request.booking = bookingService.newBooking(
+                        request.flightId, request.clientId, request.paidWithMiles, request.milesUsed);
+                byFlight.computeIfAbsent(request.flightId, id -> new ArrayList<>()).add(request);
+            } catch (IllegalArgumentException e) {
+                request.rejection = e;
+            }
+        }
+
+        // Места всех рейсов пакета - одним запросом; кому не хватило - отказ
+        Map<Long, Integer> wanted = new LinkedHashMap<>();
+        byFlight.forEach((flightId, requests) -> wanted.put(flightId, requests.size()));
+        Map<Long, Integer> granted = flightDAO.takeSeats(wanted);
+
+        List<Booking> bookings = new ArrayList<>();
+        Map<Long, Integer> unused = new LinkedHashMap<>();
+        byFlight.forEach((flightId, requests) -> {
+            int seats = granted.getOrDefault(flightId, 0);
+            for (int i = 0; i < requests.size(); i++) {
+                BookingRequest request = requests.get(i);
+                if (i >= seats) {
+                    request.rejection = new IllegalStateException("На данном рейсе нет свободных мест");
+                    continue;
+                }
+                try {
+                    bookingService.redeemMiles(request.clientId, request.paidWithMiles, request.milesUsed);
+                    bookings.add(request.booking);
+                } catch (IllegalStateException e) {
+                    request.rejection = e;
+                    unused.merge(flightId, 1, Integer::sum);
+                }
+            }
+        });
+        // Места тех, кому не хватило миль, возвращаются в той же транзакции
+        flightDAO.returnSeats(unused);
+        return bookings;
+    }
+
+    private void writeOneByOne(List<BookingRequest> requests) {
+        for (BookingRequest request : requests) {
+            try {
+                Booking booking = bookingService.createBooking(
+                        request.flightId, request.clientId, request.paidWithMiles, request.milesUsed);
+                request.result.complete(booking.getId());
+            } catch (RuntimeException e) {
+                request.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static final class BookingRequest {
+
+        private final Long flightId;
+        private final Long clientId;
+        private final boolean paidWithMiles;
+        private final int milesUsed;
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+
+        // Заполняются потоком записи внутри транзакции пакета (prepare)
+        private Booking booking;
+        private RuntimeException rejection;
+
+        BookingRequest(Long flightId, Long clientId, boolean paidWithMiles, int milesUsed) {
+            this.flightId = flightId;
+            this.clientId = clientId;
+            this.paidWithMiles = paidWithMiles;
+            this.milesUsed = milesUsed;
+        }
+    }
+}
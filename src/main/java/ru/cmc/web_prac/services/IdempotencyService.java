@@ -0,0 +1,198 @@
+package ru.cmc.web_prac.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.ui.Model;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import ru.cmc.web_prac.DAO.IdempotencyKeyDAO;
+import ru.cmc.web_prac.classes.IdempotencyKey;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Повторы POST-запросов с ключом идемпотентности.
+ * Ключ приходит в заголовке Idempotency-Key или в скрытом поле формы idempotencyKey.
+ * Запрос с ключом сначала занимает запись в idempotency_keys, затем выполняется,
+ * и его результат (представление и сообщение об ошибке) сохраняется в таблице и в памяти.
+ * Повтор с тем же ключом, операцией и параметрами получает сохранённый результат,
+ * не выполняя операцию снова; повтор, пока первый запрос ещё идёт, получает отказ.
+ * Сохраняются только выполненные операции и отказы по бизнес-правилам (представление с error_msg).
+ * Техническую ошибку action выбрасывает: ключ освобождается, и запрос можно повторить.
+ * Занятый ключ повтор не перехватывает, даже если владелец не сохранил результат
+ * за app.idempotency.lease-seconds: операция могла зафиксироваться, а узел - упасть до
+ * сохранения результата. Такой повтор получает отказ "результат неизвестен", а не второе выполнение.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String PARAMETER = "idempotencyKey";
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    @Autowired
+    private IdempotencyKeyDAO idempotencyKeyDAO;
+
+    @Value("${app.idempotency.cache-size:10000}")
+    private int cacheSize;
+
+    @Value("${app.idempotency.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    @Value("${app.idempotency.lease-seconds:60}")
+    private long leaseSeconds;
+
+    // Последние результаты в порядке обращения; старые вытесняются при переполнении
+    private Map<String, Outcome> outcomes;
+
+    @PostConstruct
+    void init() {
+        outcomes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Outcome> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Выполняет action один раз на ключ; без ключа - просто выполняет.
+     * Повтор с тем же ключом получает сохранённое представление и error_msg, который action
+     * положил в model: отказ по бизнес-правилам сохраняется так же, как успех.
+     * Если action выбросил исключение, ключ освобождается, и повтор выполнит action заново.
+     */
+    public String execute(String endpoint, Model model, Supplier<String> action) {
+        HttpServletRequest request = currentRequest();
+        String key = request == null ? null : clientKey(request);
+        if (key == null) {
+            return action.get();
+        }
+
+        String id = fingerprint(key, endpoint, request);
+        Outcome outcome = cached(id);
+        if (outcome == null) {
+            String owner = UUID.randomUUID().toString();
+            if (idempotencyKeyDAO.reserve(id, endpoint, owner, LocalDateTime.now().plusSeconds(leaseSeconds))) {
+                return executeReserved(id, owner, model, action);
+            }
+            IdempotencyKey stored = idempotencyKeyDAO.getById(id);
+            if (stored != null && stored.getViewName() == null
+                    && stored.getLeaseUntil() != null && stored.getLeaseUntil().isBefore(LocalDateTime.now())) {
+                model.addAttribute("error_msg",
+                        "Результат этого запроса неизвестен: проверьте, выполнен ли он, прежде чем повторять действие");
+                return "errorPage";
+            }
+            if (stored == null || stored.getViewName() == null) {
+                model.addAttribute("error_msg", "Этот запрос уже выполняется, проверьте результат позже");
+                return "errorPage";
+            }
+            outcome = remember(id, stored.getViewName(), stored.getErrorMessage());
+        }
+
+        if (outcome.errorMessage() != null) {
+            model.addAttribute("error_msg", outcome.errorMessage());
+        }
+        return outcome.viewName();
+    }
+
+    @Scheduled(fixedDelayString = "${app.idempotency.cleanup-ms:600000}")
+    public void deleteExpired() {
+        idempotencyKeyDAO.deleteCreatedBefore(LocalDateTime.now().minusMinutes(ttlMinutes));
+        long now = System.nanoTime();
+        synchronized (outcomes) {
+            outcomes.values().removeIf(outcome -> outcome.expired(now));
+        }
+    }
+
+    private String executeReserved(String id, String owner, Model model, Supplier<String> action) {
+        String viewName;
+        try {
+            viewName = action.get();
+        } catch (RuntimeException e) {
+            idempotencyKeyDAO.release(id, owner);
+            throw e;
+        }
+
+        Object error = model.getAttribute("error_msg");
+        String errorMessage = error == null ? null : error.toString();
+        if (errorMessage != null && errorMessage.length() > MAX_ERROR_LENGTH) {
+            errorMessage = errorMessage.substring(0, MAX_ERROR_LENGTH);
+        }
+        if (idempotencyKeyDAO.complete(id, owner, viewName, errorMessage)) {
+            remember(id, viewName, errorMessage);
+        }
+        return viewName;
+    }
+
+    private Outcome cached(String id) {
+        synchronized (outcomes) {
+            Outcome outcome = outcomes.get(id);
+            if (outcome != null && outcome.expired(System.nanoTime())) {
+                outcomes.remove(id);
+                return null;
+            }
+            return outcome;
+        }
+    }
+
+    private Outcome remember(String id, String viewName, String errorMessage) {
+        Outcome outcome = new Outcome(viewName, errorMessage,
+                System.nanoTime() + TimeUnit.MINUTES.toNanos(ttlMinutes));
+        synchronized (outcomes) {
+            outcomes.put(id, outcome);
+        }
+        return outcome;
+    }
+
+    private static HttpServletRequest currentRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes servlet ? servlet.getRequest() : null;
+    }
+
+    private static String clientKey(HttpServletRequest request) {
+        String key = request.getHeader(HEADER);
+        if (key == null || key.isBlank()) {
+            key = request.getParameter(PARAMETER);
+        }
+        return key == null || key.isBlank() ? null : key.trim();
+    }
+
+    // Один ключ формы может прийти с разными параметрами (несколько форм на странице) - они различаются
+    private static String fingerprint(String key, String endpoint, HttpServletRequest request) {
+        StringBuilder source = new StringBuilder(key).append('\n').append(endpoint);
+        new TreeMap<>(request.getParameterMap()).forEach((name, values) -> {
+            if (!PARAMETER.equals(name)) {
+                source.append('\n').append(name).append('=').append(String.join(",", values));
+            }
+        });
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(source.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Outcome(String viewName, String errorMessage, long expiresAt) {
+
+        boolean expired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package ru.cmc.web_prac.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.cmc.web_prac.DAO.MilesLedgerDAO;
+
+/**
+ * Периодическая свёртка журнала миль.
+ * Начисления, списания и возвраты только добавляют строки в miles_ledger, поэтому чтение
+ * баланса суммирует хвост журнала. Свёртка переносит сумму хвоста в clients.bonus_miles
+ * и сдвигает границу clients.miles_compacted_through пачками по app.miles.ledger.compact-batch
+ * клиентов, чтобы хвост оставался коротким. Журнал не меняется и остаётся историей.
+ */
+@Service
+public class MilesLedgerCompactor {
+
+    @Autowired
+    private MilesLedgerDAO milesLedgerDAO;
+
+    @Value("${app.miles.ledger.compact-batch:1000}")
+    private int batchSize;
+
+    // Сворачивает хвост, пока пачки приходят полными
+    @Scheduled(initialDelayString = "${app.miles.ledger.compact-ms:60000}", fixedDelayString = "${app.miles.ledger.compact-ms:60000}")
+    public void compact() {
+        while (compactBatch() == batchSize) {
+            // следующая пачка
+        }
+    }
+
+    // Одна пачка в одной транзакции; возвращает число свёрнутых клиентов
+    public int compactBatch() {
+        return milesLedgerDAO.compact(batchSize);
+    }
+}
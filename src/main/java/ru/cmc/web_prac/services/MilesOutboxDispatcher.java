@@ -0,0 +1,64 @@
+package ru.cmc.web_prac.services;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.cmc.web_prac.DAO.MilesOutboxDAO;
+import ru.cmc.web_prac.classes.MilesOutboxEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Применение начислений миль из miles_outbox.
+ * Подтверждение бронирования только ставит начисление в очередь в своей транзакции,
+ * а здесь очередь разбирается пачками: записи пачки одной командой переносятся
+ * в журнал миль (miles_ledger) и удаляются из очереди. Строки клиентов при этом
+ * не обновляются - сумма попадёт в снимок баланса при свёртке журнала (MilesLedgerCompactor).
+ * Записи, заблокированные другим узлом, пропускаются (SKIP LOCKED), поэтому разборщиков может быть несколько.
+ */
+@Service
+public class MilesOutboxDispatcher {
+
+    @Autowired
+    private MilesOutboxDAO milesOutboxDAO;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.miles.outbox.batch-size:500}")
+    private int batchSize;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Разбирает очередь, пока пачки приходят полными
+    @Scheduled(initialDelayString = "${app.miles.outbox.poll-ms:1000}", fixedDelayString = "${app.miles.outbox.poll-ms:1000}")
+    public void dispatch() {
+        while (dispatchBatch() == batchSize) {
+            // следующая пачка
+        }
+    }
+
+    // Одна пачка в одной транзакции; возвращает число разобранных записей
+    public int dispatchBatch() {
+        Integer processed = transactionTemplate.execute(status -> {
+            List<MilesOutboxEntry> entries = milesOutboxDAO.lockBatch(batchSize);
+            List<Long> ids = new ArrayList<>(entries.size());
+            for (MilesOutboxEntry entry : entries) {
+                ids.add(entry.getId());
+            }
+            milesOutboxDAO.moveToLedger(ids);
+            return entries.size();
+        });
+        return processed == null ? 0 : processed;
+    }
+}
@@ -3,6 +3,16 @@ DROP TABLE IF EXISTS bookings CASCADE;
 DROP TABLE IF EXISTS flights CASCADE;
 DROP TABLE IF EXISTS clients CASCADE;
 DROP TABLE IF EXISTS airlines CASCADE;
+DROP TABLE IF EXISTS idempotency_keys CASCADE;
+DROP TABLE IF EXISTS miles_outbox CASCADE;
+DROP TABLE IF EXISTS miles_ledger CASCADE;
+DROP TABLE IF EXISTS import_flights;
+DROP TABLE IF EXISTS import_clients;
+DROP TABLE IF EXISTS import_bookings;
+
+-- Триграммы для поиска клиентов по подстроке и с опечатками.
+-- Расширение ставится в public, чтобы его операторы и функции находились без указания схемы
+CREATE EXTENSION IF NOT EXISTS pg_trgm SCHEMA public;
 
 -- Создание таблицы авиакомпаний
 CREATE TABLE airlines (
@@ -18,7 +28,11 @@ CREATE TABLE clients (
     email VARCHAR(100) UNIQUE,
     phone VARCHAR(20),
     address TEXT,
-    bonus_miles INTEGER DEFAULT 0
+    bonus_miles INTEGER DEFAULT 0,
+    -- Граница свёртки журнала миль: записи miles_ledger с id не больше неё уже учтены в bonus_miles
+    miles_compacted_through BIGINT NOT NULL DEFAULT 0,
+    -- Версия строки для оптимистической блокировки (@Version)
+    version BIGINT NOT NULL DEFAULT 0
 );
 
 -- Создание таблицы рейсов
@@ -32,7 +46,9 @@ CREATE TABLE flights (
     arrival_time TIMESTAMP NOT NULL,
     price DECIMAL(10,2) NOT NULL,
     total_seats INTEGER NOT NULL,
-    available_seats INTEGER NOT NULL
+    available_seats INTEGER NOT NULL,
+    -- Версия строки: растёт при правке рейса и при каждом изменении числа мест
+    version BIGINT NOT NULL DEFAULT 0
 );
 
 -- Создание таблицы бронирований
@@ -40,8 +56,142 @@ CREATE TABLE bookings (
     id SERIAL PRIMARY KEY,
     client_id INTEGER REFERENCES clients(id),
     flight_id INTEGER REFERENCES flights(id),
-    booking_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    -- Ключ keyset-пагинации списка бронирований, поэтому без NULL
+    booking_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     status VARCHAR(20) DEFAULT 'BOOKED',
     paid_with_miles BOOLEAN DEFAULT FALSE,
-    miles_used INTEGER DEFAULT 0
+    miles_used INTEGER DEFAULT 0,
+    -- Версия строки: растёт при правке и смене статуса
+    version BIGINT NOT NULL DEFAULT 0
+);
+
+-- Результаты POST-запросов с ключом идемпотентности: повтор запроса получает сохранённый результат.
+-- id - хеш ключа клиента, операции и параметров; view_name IS NULL - запрос ещё выполняется
+-- владельцем lease_owner; после lease_until результат считается неизвестным, но ключ не перехватывается
+CREATE TABLE idempotency_keys (
+    id VARCHAR(64) PRIMARY KEY,
+    endpoint VARCHAR(50) NOT NULL,
+    view_name VARCHAR(200),
+    error_msg VARCHAR(500),
+    lease_owner VARCHAR(36),
+    lease_until TIMESTAMP,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
 );
+
+-- Начисления миль за оплаченные бронирования, ожидающие записи в журнал миль (miles_ledger).
+-- Пишутся в транзакции подтверждения, разбираются фоновым MilesOutboxDispatcher
+CREATE TABLE miles_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    client_id INTEGER NOT NULL REFERENCES clients(id) ON DELETE CASCADE,
+    booking_id INTEGER NOT NULL,
+    miles INTEGER NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Журнал миль: каждое начисление, списание и возврат - отдельная вставка, строки не меняются.
+-- Баланс клиента = clients.bonus_miles (снимок) + сумма записей с id больше clients.miles_compacted_through;
+-- свёртка (MilesLedgerCompactor) переносит сумму хвоста в снимок и сдвигает границу, журнал не трогает
+CREATE TABLE miles_ledger (
+    id BIGSERIAL PRIMARY KEY,
+    client_id INTEGER NOT NULL REFERENCES clients(id) ON DELETE CASCADE,
+    delta INTEGER NOT NULL,
+    reason VARCHAR(20) NOT NULL CHECK (reason IN ('ACCRUAL', 'REDEMPTION', 'REFUND', 'ADJUSTMENT')),
+    booking_id INTEGER,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Промежуточные таблицы массовой загрузки CSV (FlightDAO/ClientDAO/BookingDAO.importCsv).
+-- UNLOGGED: содержимое нужно только внутри одной загрузки, запись в WAL не нужна.
+-- Столбцы из файла - текст как есть (COPY не падает на кривых значениях), line - номер строки данных;
+-- разобранные значения и причину отказа (error) заполняет проверка перед слиянием
+CREATE UNLOGGED TABLE import_flights (
+    line BIGINT GENERATED ALWAYS AS IDENTITY,
+    flight_number TEXT,
+    airline TEXT,
+    departure_airport TEXT,
+    arrival_airport TEXT,
+    departure_time TEXT,
+    arrival_time TEXT,
+    price TEXT,
+    total_seats TEXT,
+    available_seats TEXT,
+    airline_id INTEGER,
+    departs_at TIMESTAMP,
+    arrives_at TIMESTAMP,
+    fare DECIMAL(10,2),
+    seats INTEGER,
+    free_seats INTEGER,
+    error TEXT
+);
+
+CREATE UNLOGGED TABLE import_clients (
+    line BIGINT GENERATED ALWAYS AS IDENTITY,
+    full_name TEXT,
+    email TEXT,
+    phone TEXT,
+    address TEXT,
+    bonus_miles TEXT,
+    miles INTEGER,
+    error TEXT
+);
+
+CREATE UNLOGGED TABLE import_bookings (
+    line BIGINT GENERATED ALWAYS AS IDENTITY,
+    client_email TEXT,
+    flight_number TEXT,
+    departure_time TEXT,
+    booking_date TEXT,
+    status TEXT,
+    paid_with_miles TEXT,
+    miles_used TEXT,
+    client_id INTEGER,
+    flight_id INTEGER,
+    booked_at TIMESTAMP,
+    paid_miles BOOLEAN,
+    miles INTEGER,
+    error TEXT
+);
+
+-- Шаг последовательностей совпадает с allocationSize в сущностях (pooled-оптимизатор Hibernate):
+-- приложение резервирует id пачками по 50 и может батчить INSERT
+ALTER SEQUENCE clients_id_seq INCREMENT BY 50;
+ALTER SEQUENCE flights_id_seq INCREMENT BY 50;
+ALTER SEQUENCE bookings_id_seq INCREMENT BY 50;
+
+-- Индексы под запросы DAO (имена проверяются в QueryPlanTest)
+
+-- Поиск рейсов по маршруту и дате (searchFlights, getByRoute, поиск на главной), список "по маршруту"
+CREATE INDEX flights_route_departure_idx ON flights (departure_airport, arrival_airport, departure_time, id);
+-- Рейсы за период, список "по дате" с keyset-пагинацией, доступные рейсы
+CREATE INDEX flights_departure_time_idx ON flights (departure_time, id);
+-- Список "по цене" с keyset-пагинацией
+CREATE INDEX flights_price_idx ON flights (price, id);
+-- Рейсы авиакомпании (и внешний ключ: удаление авиакомпании не сканирует рейсы)
+CREATE INDEX flights_airline_departure_idx ON flights (airline_id, departure_time);
+CREATE INDEX flights_flight_number_idx ON flights (flight_number);
+
+-- История клиента и внешний ключ на клиента
+CREATE INDEX bookings_client_date_idx ON bookings (client_id, booking_date DESC);
+-- Бронирования рейса и внешний ключ на рейс
+CREATE INDEX bookings_flight_date_idx ON bookings (flight_id, booking_date);
+-- Список бронирований (новые сверху) с фильтром по статусу и без него, выборки за период
+CREATE INDEX bookings_status_date_idx ON bookings (status, booking_date DESC, id DESC);
+CREATE INDEX bookings_date_idx ON bookings (booking_date DESC, id DESC);
+-- Частичные индексы для страниц активных и оплаченных милями бронирований
+CREATE INDEX bookings_active_date_idx ON bookings (booking_date DESC) WHERE status <> 'CANCELLED';
+CREATE INDEX bookings_miles_date_idx ON bookings (booking_date DESC) WHERE paid_with_miles;
+
+-- Удаление устаревших ключей идемпотентности
+CREATE INDEX idempotency_keys_created_idx ON idempotency_keys (created_at);
+-- Внешний ключ начислений на клиента: удаление клиента не сканирует очередь
+CREATE INDEX miles_outbox_client_idx ON miles_outbox (client_id);
+
+-- Поиск клиентов (ClientDAO.searchRows и поиск по подстроке): LIKE '%...%' и <% идут по триграммам.
+-- Телефон индексируется только цифрами, чтобы находился при любом формате ввода
+CREATE INDEX clients_name_trgm_idx ON clients USING gin (lower(full_name) public.gin_trgm_ops);
+CREATE INDEX clients_email_trgm_idx ON clients USING gin (lower(email) public.gin_trgm_ops);
+CREATE INDEX clients_phone_trgm_idx ON clients USING gin ((regexp_replace(phone, '[^0-9]', '', 'g')) public.gin_trgm_ops);
+
+-- История миль клиента и внешний ключ на клиента. Хвост после границы свёртки -
+-- диапазон по id внутри клиента, delta в индексе: баланс читается без обращения к таблице
+CREATE INDEX miles_ledger_client_idx ON miles_ledger (client_id, id) INCLUDE (delta);
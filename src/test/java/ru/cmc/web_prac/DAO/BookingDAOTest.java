@@ -1,12 +1,19 @@
 package ru.cmc.web_prac.DAO;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
+import ru.cmc.web_prac.DTO.BookingRow;
 import ru.cmc.web_prac.classes.Booking;
 import ru.cmc.web_prac.classes.Client;
+import ru.cmc.web_prac.classes.Flight;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -400,4 +407,210 @@ public class BookingDAOTest extends BaseDAOTest {
         // Должны быть отсортированы по убыванию даты (новые сверху)
         assertTrue(client2Bookings.get(0).getBookingDate().isAfter(client2Bookings.get(1).getBookingDate()));
     }
+
+    @Test
+    void testGetPage() {
+        Booking olderBooking = new Booking();
+        olderBooking.setClient(testClient2);
+        olderBooking.setFlight(testFlight2);
+        olderBooking.setBookingDate(LocalDateTime.now().minusDays(1));
+        olderBooking.setStatus("PAID");
+        bookingDAO.save(olderBooking);
+        entityManager.flush();
+
+        List<Booking> firstPage = bookingDAO.getPage(null, null, 1);
+        assertEquals(1, firstPage.size());
+        assertEquals(testBooking1.getId(), firstPage.get(0).getId()); // новые сверху
+
+        List<Booking> secondPage = bookingDAO.getPage(null, firstPage.get(0).getId(), 1);
+        assertEquals(1, secondPage.size());
+        assertEquals(olderBooking.getId(), secondPage.get(0).getId());
+
+        assertTrue(bookingDAO.getPage(null, secondPage.get(0).getId(), 1).isEmpty());
+
+        List<Booking> paidPage = bookingDAO.getPage("PAID", null, 10);
+        assertEquals(1, paidPage.size());
+        assertEquals(olderBooking.getId(), paidPage.get(0).getId());
+    }
+
+    @Test
+    void testGetPageAfterMissingBooking() {
+        Long deletedId = testBooking1.getId();
+        bookingDAO.delete(testBooking1);
+        entityManager.flush();
+        entityManager.clear();
+
+        // Продолжать листание не с чего - пустая страница, а не первая
+        assertTrue(bookingDAO.getPage(null, deletedId, 10).isEmpty());
+        assertTrue(bookingDAO.getRowPage(null, deletedId, 10).isEmpty());
+        assertTrue(bookingDAO.getPage(null, 999999L, 10).isEmpty());
+    }
+
+    @Test
+    void testBookingDateNotNull() {
+        Booking booking = new Booking();
+        booking.setClient(testClient2);
+        booking.setFlight(testFlight2);
+        booking.setBookingDate(null);
+
+        assertThrows(Exception.class, () -> {
+            bookingDAO.save(booking);
+            entityManager.flush();
+        });
+    }
+
+    @Test
+    void testStreamByBookingDateBetween() {
+        LocalDateTime start = LocalDateTime.now().minusDays(1);
+        LocalDateTime end = LocalDateTime.now().plusDays(1);
+
+        try (Stream<Booking> stream = bookingDAO.streamByBookingDateBetween(start, end)) {
+            List<Booking> bookings = stream.toList();
+            assertEquals(1, bookings.size());
+            assertEquals(testBooking1.getId(), bookings.get(0).getId());
+        }
+    }
+
+
+    @Test
+    void testListQueriesUseConstantStatementCount() {
+        saveListBookings(0, 5);
+        long[] small = listStatementCounts();
+
+        saveListBookings(5, 30);
+        long[] large = listStatementCounts();
+
+        // Число запросов не зависит от числа бронирований
+        assertArrayEquals(new long[]{1, 1, 1, 1, 1, 2}, small);
+        assertArrayEquals(small, large);
+    }
+
+    @Test
+    void testListQueriesKeepBookingsWithoutClientOrFlight() {
+        Flight noAirline = new Flight();
+        noAirline.setFlightNumber("NOAIR1");
+        noAirline.setDepartureAirport("SVO");
+        noAirline.setArrivalAirport("KZN");
+        noAirline.setDepartureTime(LocalDateTime.of(2024, 12, 21, 8, 0));
+        noAirline.setArrivalTime(LocalDateTime.of(2024, 12, 21, 10, 0));
+        noAirline.setPrice(BigDecimal.valueOf(3000));
+        noAirline.setTotalSeats(100);
+        noAirline.setAvailableSeats(100);
+        flightDAO.save(noAirline);
+
+        Booking withoutClient = new Booking();
+        withoutClient.setFlight(noAirline);
+        withoutClient.setBookingDate(LocalDateTime.now());
+        withoutClient.setStatus("PAID");
+        withoutClient.setPaidWithMiles(true);
+        bookingDAO.save(withoutClient);
+
+        Booking withoutFlight = new Booking();
+        withoutFlight.setClient(testClient1);
+        withoutFlight.setBookingDate(LocalDateTime.now());
+        withoutFlight.setStatus("PAID");
+        withoutFlight.setPaidWithMiles(true);
+        bookingDAO.save(withoutFlight);
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Long> ids = List.of(withoutClient.getId(), withoutFlight.getId());
+        assertTrue(ids(bookingDAO.getAll()).containsAll(ids));
+        assertTrue(ids(bookingDAO.getByStatus("PAID")).containsAll(ids));
+        assertTrue(ids(bookingDAO.getActiveBookings()).containsAll(ids));
+        assertTrue(ids(bookingDAO.getPaidWithMiles()).containsAll(ids));
+        assertTrue(ids(bookingDAO.getPage("PAID", null, 50)).containsAll(ids));
+    }
+
+    // Каждое бронирование - свой клиент и свой рейс, чтобы ленивые связи не попадали в кэш сессии
+    private void saveListBookings(int from, int to) {
+        for (int i = from; i < to; i++) {
+            Client client = new Client();
+            client.setFullName("Клиент Списка " + i);
+            client.setEmail("list" + i + "@example.com");
+            clientDAO.save(client);
+
+            Flight flight = new Flight();
+            flight.setFlightNumber("LST" + i);
+            flight.setAirline(i % 2 == 0 ? testAirline1 : testAirline2);
+            flight.setDepartureAirport("SVO");
+            flight.setArrivalAirport("KZN");
+            flight.setDepartureTime(LocalDateTime.of(2024, 12, 20, 8, 0).plusHours(i));
+            flight.setArrivalTime(LocalDateTime.of(2024, 12, 20, 10, 0).plusHours(i));
+            flight.setPrice(BigDecimal.valueOf(4000 + i));
+            flight.setTotalSeats(100);
+            flight.setAvailableSeats(100);
+            flightDAO.save(flight);
+
+            Booking booking = new Booking();
+            booking.setClient(client);
+            booking.setFlight(flight);
+            booking.setBookingDate(LocalDateTime.now().minusMinutes(i + 1));
+            booking.setStatus(i % 2 == 0 ? "BOOKED" : "PAID");
+            booking.setPaidWithMiles(i % 3 == 0);
+            bookingDAO.save(booking);
+        }
+        entityManager.flush();
+    }
+
+    // getAll, getByStatus, getActiveBookings, getPaidWithMiles, первая и следующая страница
+    private long[] listStatementCounts() {
+        Long afterId = bookingDAO.getPage(null, null, 5).get(4).getId();
+        return new long[]{
+                countStatements(() -> bookingDAO.getAll()),
+                countStatements(() -> bookingDAO.getByStatus("PAID")),
+                countStatements(() -> bookingDAO.getActiveBookings()),
+                countStatements(() -> bookingDAO.getPaidWithMiles()),
+                countStatements(() -> bookingDAO.getPage(null, null, 50)),
+                // Второй запрос - чтение якорной строки для keyset-условия
+                countStatements(() -> bookingDAO.getPage(null, afterId, 50))};
+    }
+
+    private static List<Long> ids(Collection<Booking> bookings) {
+        return bookings.stream().map(Booking::getId).toList();
+    }
+
+    // Выполняет запрос на чистом контексте, обходит связи как шаблон и возвращает число SQL-запросов
+    private long countStatements(Supplier<Collection<Booking>> query) {
+        entityManager.clear();
+        Statistics statistics = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Collection<Booking> bookings = query.get();
+        assertFalse(bookings.isEmpty());
+        for (Booking booking : bookings) {
+            assertNotNull(booking.getClient().getFullName());
+            assertNotNull(booking.getFlight().getFlightNumber());
+            assertNotNull(booking.getFlight().getAirline().getName());
+        }
+        return statistics.getPrepareStatementCount();
+    }
+
+
+    @Test
+    void testGetRowPage() {
+        List<BookingRow> rows = bookingDAO.getRowPage(null, null, 10);
+        assertEquals(1, rows.size());
+
+        BookingRow row = rows.get(0);
+        assertEquals(testBooking1.getId(), row.id());
+        assertEquals(testClient1.getFullName(), row.clientName());
+        assertEquals("TEST123", row.flightNumber());
+        assertEquals("Test Aeroflot", row.airlineName());
+        assertEquals("SVO", row.departureAirport());
+
+        assertTrue(bookingDAO.getRowPage(null, row.id(), 10).isEmpty());
+        assertTrue(bookingDAO.getRowPage("PAID", null, 10).isEmpty());
+    }
+
+    @Test
+    void testGetActiveAndPaidWithMilesRows() {
+        assertEquals(1, bookingDAO.getActiveBookingRows().size());
+        assertTrue(bookingDAO.getPaidWithMilesRows().isEmpty());
+
+        bookingDAO.cancelBooking(testBooking1.getId());
+        entityManager.clear();
+        assertTrue(bookingDAO.getActiveBookingRows().isEmpty());
+    }
 }
\ No newline at end of file
@@ -1,8 +1,10 @@
 package ru.cmc.web_prac.DAO;
 
 import org.junit.jupiter.api.Test;
+import ru.cmc.web_prac.DTO.ClientRow;
 import ru.cmc.web_prac.classes.*;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -330,4 +332,135 @@ public class ClientDAOTest extends BaseDAOTest {
             entityManager.flush();
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGetPageAfter() {
+        List<Client> firstPage = clientDAO.getPageAfter(null, 1);
+        assertEquals(1, firstPage.size());
+        assertEquals(testClient1.getId(), firstPage.get(0).getId());
+
+        List<Client> secondPage = clientDAO.getPageAfter(firstPage.get(0).getId(), 10);
+        assertEquals(1, secondPage.size());
+        assertEquals(testClient2.getId(), secondPage.get(0).getId());
+
+        assertTrue(clientDAO.getPageAfter(testClient2.getId(), 10).isEmpty());
+    }
+
+    @Test
+    void testSaveCollectionLargerThanBatch() {
+        // Больше одного JDBC-батча: проверяем промежуточные flush/clear
+        List<Client> clients = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            Client client = new Client();
+            client.setFullName("Пакетный Клиент " + i);
+            client.setEmail("batch" + i + "@example.com");
+            client.setBonusMiles(i);
+            clients.add(client);
+        }
+
+        clientDAO.saveCollection(clients);
+        entityManager.flush();
+        entityManager.clear();
+
+        assertTrue(clients.stream().allMatch(c -> c.getId() != null));
+        assertEquals(122, clientDAO.getAll().size());
+        assertEquals("Пакетный Клиент 119", clientDAO.getById(clients.get(119).getId()).getFullName());
+    }
+
+    @Test
+    void testSaveCollectionKeepsCallerEntitiesManaged() {
+        List<Client> clients = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            Client client = new Client();
+            client.setFullName("Пакетный Клиент " + i);
+            client.setEmail("managed" + i + "@example.com");
+            clients.add(client);
+        }
+
+        clientDAO.saveCollection(clients);
+
+        // Отсоединены только сохранённые пачки, сущности вызывающего кода остались в контексте
+        assertTrue(entityManager.contains(testClient1));
+        assertFalse(entityManager.contains(clients.get(0)));
+
+        testClient1.setFullName("Изменено после пакета");
+        entityManager.flush();
+        entityManager.clear();
+        assertEquals("Изменено после пакета", clientDAO.getById(testClient1.getId()).getFullName());
+    }
+
+
+    @Test
+    void testGetRowPage() {
+        List<ClientRow> firstPage = clientDAO.getRowPage(null, 1);
+        assertEquals(1, firstPage.size());
+        assertEquals(testClient1.getId(), firstPage.get(0).id());
+        assertEquals("test.ivan@example.com", firstPage.get(0).email());
+
+        List<ClientRow> secondPage = clientDAO.getRowPage(firstPage.get(0).id(), 10);
+        assertEquals(1, secondPage.size());
+        assertEquals(testClient2.getId(), secondPage.get(0).id());
+    }
+
+    @Test
+    void testSearchRowsByNameOrEmail() {
+        List<ClientRow> rows = clientDAO.searchRowsByNameOrEmail("maria@example");
+        assertEquals(1, rows.size());
+        assertEquals(testClient2.getFullName(), rows.get(0).fullName());
+        assertEquals(testClient2.getBonusMiles(), rows.get(0).bonusMiles());
+
+        assertEquals(2, clientDAO.searchRowsByNameOrEmail("test").size());
+    }
+
+    @Test
+    void testSearchRowsBySubstring() {
+        List<ClientRow> rows = clientDAO.searchRows("мария", 10);
+        assertEquals(1, rows.size());
+        assertEquals(testClient2.getId(), rows.get(0).id());
+
+        assertEquals(2, clientDAO.searchRows("EXAMPLE.COM", 10).size());
+        assertEquals(1, clientDAO.searchRows("test.ivan", 10).size());
+    }
+
+    @Test
+    void testSearchRowsByPhoneDigits() {
+        List<ClientRow> rows = clientDAO.searchRows("+7 (900) 987", 10);
+        assertEquals(1, rows.size());
+        assertEquals(testClient2.getId(), rows.get(0).id());
+
+        assertEquals(2, clientDAO.searchRows("900", 10).size());
+        // Меньше трёх цифр - телефон не сравнивается
+        assertTrue(clientDAO.searchRows("90", 10).isEmpty());
+    }
+
+    @Test
+    void testSearchRowsWithTypo() {
+        Client client = new Client();
+        client.setFullName("Ivan Petrov");
+        client.setEmail("petrov@example.org");
+        clientDAO.save(client);
+        Client other = new Client();
+        other.setFullName("Ivan Sidorov");
+        other.setEmail("sidorov@example.org");
+        clientDAO.save(other);
+
+        List<ClientRow> rows = clientDAO.searchRows("Ivn Petrov", 10);
+        assertFalse(rows.isEmpty());
+        assertEquals(client.getId(), rows.get(0).id());
+    }
+
+    @Test
+    void testSearchRowsRankingAndLimit() {
+        List<ClientRow> rows = clientDAO.searchRows("test.maria@example.com", 10);
+        assertEquals(testClient2.getId(), rows.get(0).id());
+
+        assertEquals(1, clientDAO.searchRows("example", 1).size());
+    }
+
+    @Test
+    void testSearchRowsEscapesWildcards() {
+        assertTrue(clientDAO.searchRows("%", 10).isEmpty());
+        assertTrue(clientDAO.searchRows("_", 10).isEmpty());
+        assertTrue(clientDAO.searchRows("   ", 10).isEmpty());
+    }
+}
@@ -0,0 +1,264 @@
+package ru.cmc.web_prac.DAO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.MockMvcPrint;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.cmc.web_prac.DTO.ImportResult;
+import ru.cmc.web_prac.DTO.ImportResult.RowError;
+import ru.cmc.web_prac.classes.Booking;
+import ru.cmc.web_prac.classes.Client;
+import ru.cmc.web_prac.classes.Flight;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Загрузка CSV через COPY: проверка строк, слияние с существующими записями и отказы.
+ * Номера строк в ошибках - номера строк файла (заголовок - строка 1).
+ */
+// Печать результатов MockMvc вызывает toString сущностей, а у Flight и Airline он зацикливается
+@AutoConfigureMockMvc(print = MockMvcPrint.NONE)
+public class CsvImportTest extends BaseDAOTest {
+
+    private static final String FLIGHTS_HEADER = "flight_number,airline,departure_airport,arrival_airport," +
+            "departure_time,arrival_time,price,total_seats,available_seats\n";
+
+    private static final String BOOKINGS_HEADER =
+            "client_email,flight_number,departure_time,booking_date,status,paid_with_miles,miles_used\n";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void flushFixtures() {
+        entityManager.flush();
+    }
+
+    @Test
+    void testFlightsAreInsertedUpdatedAndRejected() {
+        // До загрузки на TEST123 продано 5 мест из 150
+        for (int i = 0; i < 5; i++) {
+            assertTrue(flightDAO.decrementAvailableSeats(testFlight1.getId()));
+        }
+
+        ImportResult result = flightDAO.importCsv(new StringReader(FLIGHTS_HEADER +
+                "CSV1,Test Aeroflot,svo,kzn,2031-03-01 08:00,2031-03-01 10:00,3500,100,\n" +
+                "CSV2,Test S7,LED,AER,2031-03-01T09:00,2031-03-01T12:30,7200.50,80,75\n" +
+                "CSV3,No Such Air,LED,AER,2031-03-01 09:00,2031-03-01 12:30,100,80,80\n" +
+                "CSV4,Test S7,LED,AER,2031-03-01 09:00,2031-03-01 08:00,100,80,80\n" +
+                "CSV5,Test S7,LED,AER,завтра,2031-03-01 12:30,100,80,80\n" +
+                "CSV1,Test Aeroflot,SVO,KZN,2031-03-01 08:00,2031-03-01 10:00,3000,100,\n" +
+                "TEST123,Test Aeroflot,SVO,LED,2024-12-15 10:30,2024-12-15 12:00,5500,200,200\n"));
+        entityManager.clear();
+
+        assertEquals(7, result.rows());
+        assertEquals(2, result.inserted());
+        assertEquals(1, result.updated());
+        assertEquals(4, result.rejected());
+        assertEquals(List.of(
+                new RowError(2, "рейс повторяется ниже в файле"),
+                new RowError(4, "неизвестная авиакомпания"),
+                new RowError(5, "прилёт не позже вылета"),
+                new RowError(6, "неверное время вылета")), result.errors());
+
+        Flight csv1 = flightDAO.getByFlightNumber("CSV1");
+        assertEquals("SVO", csv1.getDepartureAirport());
+        assertEquals(0, BigDecimal.valueOf(3000).compareTo(csv1.getPrice()));
+        assertEquals(100, csv1.getAvailableSeats());
+        assertEquals(75, flightDAO.getByFlightNumber("CSV2").getAvailableSeats());
+        assertNull(flightDAO.getByFlightNumber("CSV3"));
+
+        // Проданные места сохраняются при изменении вместимости
+        Flight updated = flightDAO.getById(testFlight1.getId());
+        assertEquals(200, updated.getTotalSeats());
+        assertEquals(195, updated.getAvailableSeats());
+        assertEquals(0, BigDecimal.valueOf(5500).compareTo(updated.getPrice()));
+        assertEquals(testFlight1.getVersion() + 6, updated.getVersion());
+
+        // Новые id выданы из последовательности и не совпадут с id, которые выдаст Hibernate
+        Flight saved = new Flight();
+        saved.setFlightNumber("CSV6");
+        saved.setAirline(airlineDAO.getById(testAirline1.getId()));
+        saved.setDepartureAirport("SVO");
+        saved.setArrivalAirport("KZN");
+        saved.setDepartureTime(LocalDateTime.of(2031, 3, 2, 8, 0));
+        saved.setArrivalTime(LocalDateTime.of(2031, 3, 2, 10, 0));
+        saved.setPrice(BigDecimal.valueOf(3000));
+        saved.setTotalSeats(100);
+        saved.setAvailableSeats(100);
+        flightDAO.save(saved);
+        entityManager.flush();
+        assertNotEquals(csv1.getId(), saved.getId());
+    }
+
+    @Test
+    void testClientsAreMergedByEmail() {
+        ImportResult result = clientDAO.importCsv(new StringReader(
+                "full_name,email,phone,address,bonus_miles\n" +
+                        "Новый Пётр,new.petr@example.com,+7-900-000-00-01,Казань,300\n" +
+                        "Иван Изменённый,test.ivan@example.com,+7-900-000-00-02,,999999\n" +
+                        "Без Почты,,,,\n" +
+                        ",nobody@example.com,,,\n" +
+                        "Плохая Почта,bad-email,,,\n" +
+                        "Плохие Мили,miles@example.com,,,-5\n"));
+        entityManager.clear();
+
+        assertEquals(6, result.rows());
+        assertEquals(2, result.inserted());
+        assertEquals(1, result.updated());
+        assertEquals(List.of(
+                new RowError(5, "неверное имя"),
+                new RowError(6, "неверный email"),
+                new RowError(7, "неверное число миль")), result.errors());
+
+        Client created = clientDAO.getByEmail("new.petr@example.com");
+        assertEquals("Новый Пётр", created.getFullName());
+        assertEquals(300, created.getBonusMiles());
+
+        // Мили существующего клиента ведёт журнал, загрузка их не перезаписывает
+        Client merged = clientDAO.getByEmail("test.ivan@example.com");
+        assertEquals(testClient1.getId(), merged.getId());
+        assertEquals("Иван Изменённый", merged.getFullName());
+        assertEquals("+7-900-000-00-02", merged.getPhone());
+        assertNull(merged.getAddress());
+        assertEquals(1000, merged.getBonusMiles());
+
+        assertEquals(1, clientDAO.getByNameContaining("Без Почты").size());
+    }
+
+    @Test
+    void testBookingsTakeSeats() {
+        flightDAO.updateAvailableSeats(testFlight2.getId(), 2);
+        entityManager.flush();
+        String flight1 = "TEST123,2024-12-15 10:30";
+        String flight2 = "TEST456,2024-12-16 14:15";
+
+        ImportResult result = bookingDAO.importCsv(new StringReader(BOOKINGS_HEADER +
+                "test.ivan@example.com," + flight1 + ",2024-11-01 12:00,paid,false,0\n" +
+                "test.maria@example.com," + flight1 + ",,,true,500\n" +
+                "test.maria@example.com," + flight1 + ",,CANCELLED,,\n" +
+                "unknown@example.com," + flight1 + ",,,,\n" +
+                "test.ivan@example.com,TEST123,2024-12-15 11:30,,,,\n" +
+                "test.ivan@example.com," + flight1 + ",,LOST,,\n" +
+                // На TEST456 два места, а активных бронирований три - отклоняются все
+                "test.ivan@example.com," + flight2 + ",,,,\n" +
+                "test.maria@example.com," + flight2 + ",,,,\n" +
+                "test.maria@example.com," + flight2 + ",,,,\n" +
+                "test.maria@example.com," + flight2 + ",,CANCELLED,,\n"));
+        entityManager.clear();
+
+        assertEquals(10, result.rows());
+        assertEquals(4, result.inserted());
+        assertEquals(List.of(
+                new RowError(5, "неизвестный клиент"),
+                new RowError(6, "неизвестный рейс"),
+                new RowError(7, "неверный статус"),
+                new RowError(8, "на рейсе не хватает мест"),
+                new RowError(9, "на рейсе не хватает мест"),
+                new RowError(10, "на рейсе не хватает мест")), result.errors());
+
+        assertEquals(148, flightDAO.getById(testFlight1.getId()).getAvailableSeats());
+        assertEquals(2, flightDAO.getById(testFlight2.getId()).getAvailableSeats());
+
+        List<Booking> imported = bookingDAO.getByFlight(flightDAO.getById(testFlight1.getId()));
+        assertEquals(4, imported.size());
+        Booking paid = imported.stream().filter(b -> "PAID".equals(b.getStatus())).findFirst().orElseThrow();
+        assertEquals(LocalDateTime.of(2024, 11, 1, 12, 0), paid.getBookingDate());
+        assertTrue(imported.stream().anyMatch(b -> b.getPaidWithMiles() && b.getMilesUsed() == 500));
+
+        // Мили за загруженные бронирования не списываются
+        assertEquals(2500, clientDAO.getById(testClient2.getId()).getBonusMiles());
+    }
+
+    @Test
+    void testImportEndpoint() throws Exception {
+        mockMvc.perform(post("/import/flights")
+                        .contentType("text/csv")
+                        .content(FLIGHTS_HEADER +
+                                "CSV7,Test S7,LED,AER,2031-03-01 09:00,2031-03-01 12:30,100,80,80\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.inserted").value(1))
+                .andExpect(jsonPath("$.rejected").value(0));
+
+        mockMvc.perform(post("/import/flights")
+                        .contentType("text/csv")
+                        .content("flight_number,airline\nCSV8,Test S7\n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").exists());
+
+        mockMvc.perform(post("/import/airports")
+                        .contentType("text/csv")
+                        .content("code\nSVO\n"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Tag("benchmark")
+    void testLargeScheduleImport() {
+        int rows = 200_000;
+        long start = System.nanoTime();
+        ImportResult result = flightDAO.importCsv(new GeneratedSchedule(rows));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("CSV import: %d flights in %d ms (%d rows/s)%n", rows, millis, rows * 1000L / Math.max(1, millis));
+
+        assertEquals(rows, result.rows());
+        assertEquals(rows - 1, result.inserted());
+        assertEquals(1, result.rejected());
+        assertEquals(List.of(new RowError(1001, "неверная цена")), result.errors());
+    }
+
+    // Расписание строится по мере чтения: в памяти только текущая строка
+    private static final class GeneratedSchedule extends Reader {
+
+        private final int rows;
+        private int next = -1;
+        private String line = "";
+        private int position;
+
+        GeneratedSchedule(int rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            int count = 0;
+            while (count < length) {
+                if (position == line.length()) {
+                    if (next == rows) {
+                        break;
+                    }
+                    line = next < 0 ? FLIGHTS_HEADER : row(next);
+                    next++;
+                    position = 0;
+                }
+                int chunk = Math.min(length - count, line.length() - position);
+                line.getChars(position, position + chunk, buffer, offset + count);
+                position += chunk;
+                count += chunk;
+            }
+            return count == 0 ? -1 : count;
+        }
+
+        private static String row(int i) {
+            LocalDateTime departure = LocalDateTime.of(2032, 1, 1, 0, 0).plusMinutes(i * 7L);
+            String price = i == 999 ? "дорого" : String.valueOf(2000 + i % 5000);
+            return "BULK" + (i % 9000) + ",Test Aeroflot,SVO,LED," + departure + "," + departure.plusHours(2) +
+                    "," + price + ",180,\n";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -1,16 +1,34 @@
 package ru.cmc.web_prac.DAO;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.cmc.web_prac.DTO.AirportSuggestion;
+import ru.cmc.web_prac.DTO.FlightSummary;
+import ru.cmc.web_prac.cache.AirportTrie;
 import ru.cmc.web_prac.classes.*;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class FlightDAOTest extends BaseDAOTest {
+
+    @Autowired
+    private AirportTrie airportTrie;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     @Test
     void testSave() {
         Flight flight = new Flight();
@@ -294,6 +312,26 @@ public class FlightDAOTest extends BaseDAOTest {
         assertEquals(originalSeats + 1, updatedFlight.getAvailableSeats());
     }
 
+    @Test
+    void testTakeAndReturnSeats() {
+        Long flightId = testFlight1.getId();
+        Long otherId = testFlight2.getId();
+        testFlight1.setAvailableSeats(7);
+        flightDAO.update(testFlight1);
+        entityManager.flush();
+
+        // Запрошено больше остатка - забирается только остаток; рейсы без мест и несуществующие пропускаются
+        assertEquals(Map.of(flightId, 5, otherId, 2), flightDAO.takeSeats(Map.of(flightId, 5, otherId, 2, -1L, 5)));
+        assertEquals(Map.of(flightId, 2), flightDAO.takeSeats(Map.of(flightId, 5)));
+        assertEquals(Map.of(), flightDAO.takeSeats(Map.of(flightId, 5)));
+        assertEquals(Map.of(), flightDAO.takeSeats(Map.of()));
+
+        flightDAO.returnSeats(Map.of(flightId, 3, otherId, 2));
+        entityManager.clear();
+        assertEquals(3, flightDAO.getById(flightId).getAvailableSeats());
+        assertEquals(120, flightDAO.getById(otherId).getAvailableSeats());
+    }
+
     @Test
     void testSaveCollection() {
         Flight flight1 = new Flight();
@@ -328,4 +366,156 @@ public class FlightDAOTest extends BaseDAOTest {
         Collection<Flight> allFlights = flightDAO.getAll();
         assertEquals(4, allFlights.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGetAllSortedPage() {
+        List<Flight> firstPage = flightDAO.getAllSortedPage("date", null, 1);
+        assertEquals(1, firstPage.size());
+        assertEquals("TEST123", firstPage.get(0).getFlightNumber());
+
+        List<Flight> secondPage = flightDAO.getAllSortedPage("date", firstPage.get(0).getId(), 1);
+        assertEquals(1, secondPage.size());
+        assertEquals("TEST456", secondPage.get(0).getFlightNumber());
+
+        List<Flight> lastPage = flightDAO.getAllSortedPage("date", secondPage.get(0).getId(), 1);
+        assertTrue(lastPage.isEmpty());
+    }
+
+    @Test
+    void testGetAllSortedPageByPrice() {
+        List<Flight> firstPage = flightDAO.getAllSortedPage("price", null, 1);
+        assertEquals("TEST456", firstPage.get(0).getFlightNumber()); // 4500
+
+        List<Flight> secondPage = flightDAO.getAllSortedPage("price", firstPage.get(0).getId(), 10);
+        assertEquals(1, secondPage.size());
+        assertEquals("TEST123", secondPage.get(0).getFlightNumber()); // 5000
+    }
+
+    @Test
+    void testStreamByDepartureDate() {
+        LocalDateTime start = LocalDateTime.of(2024, 12, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 12, 31, 23, 59);
+
+        List<Flight> flights;
+        try (Stream<Flight> stream = flightDAO.streamByDepartureDate(start, end)) {
+            flights = stream.toList();
+        }
+
+        assertEquals(2, flights.size());
+        assertEquals("TEST123", flights.get(0).getFlightNumber());
+        // Прочитанные сущности не остаются в persistence context
+        assertFalse(entityManager.contains(flights.get(0)));
+    }
+
+    @Test
+    void testStreamAll() {
+        try (Stream<Flight> stream = flightDAO.streamAll()) {
+            assertEquals(2, stream.count());
+        }
+    }
+
+    @Test
+    void testSearchFlightSummaries() {
+        LocalDateTime searchDate = LocalDateTime.of(2024, 12, 15, 0, 0);
+
+        List<FlightSummary> flights = flightDAO.searchFlightSummaries("SVO", "LED", searchDate);
+
+        assertEquals(1, flights.size());
+        assertEquals("TEST123", flights.get(0).flightNumber());
+        assertEquals("Test Aeroflot", flights.get(0).airlineName());
+    }
+
+
+    @Test
+    void testGetSummaryPage() {
+        List<FlightSummary> firstPage = flightDAO.getSummaryPage("price", null, 1);
+        assertEquals(1, firstPage.size());
+        assertEquals(testFlight2.getId(), firstPage.get(0).id()); // дешевле
+        assertEquals("Test S7", firstPage.get(0).airlineName());
+
+        List<FlightSummary> secondPage = flightDAO.getSummaryPage("price", firstPage.get(0).id(), 10);
+        assertEquals(1, secondPage.size());
+        assertEquals(testFlight1.getId(), secondPage.get(0).id());
+        assertEquals("Test Aeroflot", secondPage.get(0).airlineName());
+    }
+
+    @Test
+    void testGetPageAfterMissingFlight() {
+        assertTrue(flightDAO.getAllSortedPage("date", 999999L, 10).isEmpty());
+        assertTrue(flightDAO.getAllSortedPage("price", 999999L, 10).isEmpty());
+        assertTrue(flightDAO.getSummaryPage("date", 999999L, 10).isEmpty());
+    }
+
+    @Test
+    void testGetAvailableFlightSummaries() {
+        flightDAO.updateAvailableSeats(testFlight2.getId(), 0);
+
+        List<FlightSummary> available = flightDAO.getAvailableFlightSummaries();
+        assertEquals(1, available.size());
+        assertEquals("TEST123", available.get(0).flightNumber());
+    }
+
+    @Test
+    void testSuggestAirportsInChangingTransaction() {
+        Flight flight = new Flight();
+        flight.setFlightNumber("TEST789");
+        flight.setAirline(testAirline1);
+        flight.setDepartureAirport("SVX");
+        flight.setArrivalAirport("LED");
+        flight.setDepartureTime(LocalDateTime.now().plusDays(5));
+        flight.setArrivalTime(LocalDateTime.now().plusDays(5).plusHours(3));
+        flight.setPrice(BigDecimal.valueOf(6000));
+        flight.setTotalSeats(100);
+        flight.setAvailableSeats(100);
+        flightDAO.save(flight);
+
+        // Транзакция меняла рейсы - подсказки из БД, с её собственными изменениями
+        List<AirportSuggestion> suggestions = flightDAO.suggestAirports("s", 10);
+        assertEquals(List.of(new AirportSuggestion("SVO", 2), new AirportSuggestion("SVX", 1)), suggestions);
+        assertEquals(new AirportSuggestion("LED", 3), flightDAO.suggestAirports("", 1).get(0));
+        assertTrue(flightDAO.suggestAirports("%", 10).isEmpty());
+    }
+
+    @Test
+    void testSuggestAirportsWhileTrieIsBuilt() throws Exception {
+        // Рейс фиксируется отдельно: подсказки вне транзакции теста видят только зафиксированное
+        TransactionTemplate separate = new TransactionTemplate(transactionManager);
+        separate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Flight flight = new Flight();
+        flight.setFlightNumber("TRIE1");
+        flight.setDepartureAirport("QZX");
+        flight.setArrivalAirport("LED");
+        flight.setDepartureTime(LocalDateTime.now().plusDays(5));
+        flight.setArrivalTime(LocalDateTime.now().plusDays(5).plusHours(3));
+        flight.setPrice(BigDecimal.valueOf(6000));
+        flight.setTotalSeats(100);
+        flight.setAvailableSeats(100);
+        separate.executeWithoutResult(status -> flightDAO.save(flight));
+
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        airportTrie.invalidateAll();
+        Thread builder = new Thread(() -> airportTrie.rebuildIfNeeded(() -> {
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Stream.empty();
+        }));
+        builder.start();
+        try {
+            loading.await();
+            // Дерево строит другой поток - отвечает БД, а не пустой список
+            List<AirportSuggestion> suggestions =
+                    CompletableFuture.supplyAsync(() -> flightDAO.suggestAirports("qz", 10)).get();
+            assertEquals(List.of(new AirportSuggestion("QZX", 1)), suggestions);
+        } finally {
+            release.countDown();
+            builder.join();
+            airportTrie.invalidateAll();
+            separate.executeWithoutResult(status -> flightDAO.delete(flight));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package ru.cmc.web_prac.DAO;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import ru.cmc.web_prac.classes.IdempotencyKey;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyKeyDAOTest extends BaseDAOTest {
+
+    @Autowired
+    private IdempotencyKeyDAO idempotencyKeyDAO;
+
+    private final LocalDateTime leaseUntil = LocalDateTime.now().plusMinutes(1);
+
+    @Test
+    void testReserveOnlyOnce() {
+        assertTrue(idempotencyKeyDAO.reserve("key-1", "addMiles", "node-1", leaseUntil));
+        assertFalse(idempotencyKeyDAO.reserve("key-1", "addMiles", "node-1", leaseUntil));
+
+        IdempotencyKey stored = idempotencyKeyDAO.getById("key-1");
+        assertNotNull(stored);
+        assertEquals("addMiles", stored.getEndpoint());
+        assertNull(stored.getViewName()); // ещё выполняется
+        assertNotNull(stored.getCreatedAt());
+        assertEquals("node-1", stored.getLeaseOwner());
+    }
+
+    @Test
+    void testExpiredLeaseIsNotTakenOver() {
+        // Срок истёк, но операция владельца могла зафиксироваться: повтор ключ не получает
+        assertTrue(idempotencyKeyDAO.reserve("slow", "saveBooking", "node-1", LocalDateTime.now().minusSeconds(1)));
+        assertFalse(idempotencyKeyDAO.reserve("slow", "saveBooking", "node-2", leaseUntil));
+
+        // Чужой владелец не сохранит результат, а сам владелец - сохранит и после срока
+        assertFalse(idempotencyKeyDAO.complete("slow", "node-2", "redirect:/bookings", null));
+        assertTrue(idempotencyKeyDAO.complete("slow", "node-1", "errorPage", "На данном рейсе нет свободных мест"));
+        entityManager.clear();
+
+        IdempotencyKey stored = idempotencyKeyDAO.getById("slow");
+        assertEquals("node-1", stored.getLeaseOwner());
+        assertEquals("errorPage", stored.getViewName());
+    }
+
+    @Test
+    void testCompletedKeyIsNotTakenOver() {
+        idempotencyKeyDAO.reserve("done", "addMiles", "node-1", LocalDateTime.now().minusSeconds(1));
+        idempotencyKeyDAO.complete("done", "node-1", "redirect:/clients", null);
+
+        assertFalse(idempotencyKeyDAO.reserve("done", "addMiles", "node-2", leaseUntil));
+    }
+
+    @Test
+    void testComplete() {
+        idempotencyKeyDAO.reserve("key-2", "deductMiles", "node-1", leaseUntil);
+        assertTrue(idempotencyKeyDAO.complete("key-2", "node-1", "errorPage", "У клиента недостаточно бонусных миль"));
+        entityManager.clear();
+
+        IdempotencyKey stored = idempotencyKeyDAO.getById("key-2");
+        assertEquals("errorPage", stored.getViewName());
+        assertEquals("У клиента недостаточно бонусных миль", stored.getErrorMessage());
+    }
+
+    @Test
+    void testReleaseOnlyPendingKey() {
+        idempotencyKeyDAO.reserve("pending", "cancelBooking", "node-1", leaseUntil);
+        idempotencyKeyDAO.reserve("done", "cancelBooking", "node-1", leaseUntil);
+        idempotencyKeyDAO.complete("done", "node-1", "redirect:/bookings", null);
+
+        idempotencyKeyDAO.release("pending", "node-2");
+        idempotencyKeyDAO.release("done", "node-1");
+        entityManager.clear();
+        assertNotNull(idempotencyKeyDAO.getById("pending")); // занят другим
+
+        idempotencyKeyDAO.release("pending", "node-1");
+        entityManager.clear();
+
+        assertNull(idempotencyKeyDAO.getById("pending"));
+        assertNotNull(idempotencyKeyDAO.getById("done"));
+        assertTrue(idempotencyKeyDAO.reserve("pending", "cancelBooking", "node-1", leaseUntil));
+    }
+
+    @Test
+    void testDeleteCreatedBefore() {
+        idempotencyKeyDAO.reserve("old", "saveBooking", "node-1", leaseUntil);
+        entityManager.createQuery("UPDATE IdempotencyKey k SET k.createdAt = :time WHERE k.id = 'old'")
+                .setParameter("time", LocalDateTime.now().minusDays(2))
+                .executeUpdate();
+        idempotencyKeyDAO.reserve("fresh", "saveBooking", "node-1", leaseUntil);
+
+        assertEquals(1, idempotencyKeyDAO.deleteCreatedBefore(LocalDateTime.now().minusDays(1)));
+        entityManager.clear();
+        assertNull(idempotencyKeyDAO.getById("old"));
+        assertNotNull(idempotencyKeyDAO.getById("fresh"));
+    }
+}
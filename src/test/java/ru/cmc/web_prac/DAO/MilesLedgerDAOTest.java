@@ -0,0 +1,116 @@
+package ru.cmc.web_prac.DAO;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import ru.cmc.web_prac.classes.Client;
+import ru.cmc.web_prac.classes.MilesLedgerEntry;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MilesLedgerDAOTest extends BaseDAOTest {
+
+    @Autowired
+    private MilesLedgerDAO milesLedgerDAO;
+
+    @Test
+    void testBalanceIsSnapshotPlusTail() {
+        Long clientId = testClient1.getId();
+        milesLedgerDAO.append(clientId, 300, MilesLedgerEntry.ACCRUAL, testBooking1.getId());
+        milesLedgerDAO.append(clientId, 100, MilesLedgerEntry.REFUND, testBooking1.getId());
+
+        Client client = reload(clientId);
+        assertEquals(1000, client.getMilesSnapshot());
+        assertEquals(1400, client.getBonusMiles());
+
+        List<MilesLedgerEntry> history = milesLedgerDAO.getByClient(clientId);
+        assertEquals(2, history.size());
+        assertEquals(MilesLedgerEntry.REFUND, history.get(0).getReason());
+        assertEquals(testBooking1.getId(), history.get(1).getBookingId());
+    }
+
+    @Test
+    void testRedeemChecksBalance() {
+        Long clientId = testClient1.getId();
+        milesLedgerDAO.append(clientId, 200, MilesLedgerEntry.ACCRUAL, null);
+
+        assertTrue(milesLedgerDAO.redeem(clientId, 1200, MilesLedgerEntry.REDEMPTION, null));
+        assertFalse(milesLedgerDAO.redeem(clientId, 1, MilesLedgerEntry.REDEMPTION, null));
+        assertFalse(milesLedgerDAO.redeem(-1L, 1, MilesLedgerEntry.REDEMPTION, null));
+
+        assertEquals(0, reload(clientId).getBonusMiles());
+        assertEquals(-1200, milesLedgerDAO.getByClient(clientId).get(0).getDelta());
+    }
+
+    @Test
+    void testAdjustTo() {
+        Long clientId = testClient2.getId();
+
+        assertTrue(milesLedgerDAO.adjustTo(clientId, 2000));
+        assertFalse(milesLedgerDAO.adjustTo(clientId, 2000));
+        assertFalse(milesLedgerDAO.adjustTo(-1L, 2000));
+
+        assertEquals(2000, reload(clientId).getBonusMiles());
+        List<MilesLedgerEntry> history = milesLedgerDAO.getByClient(clientId);
+        assertEquals(1, history.size());
+        assertEquals(-500, history.get(0).getDelta());
+        assertEquals(MilesLedgerEntry.ADJUSTMENT, history.get(0).getReason());
+    }
+
+    @Test
+    void testCompactMovesTailIntoSnapshot() {
+        milesLedgerDAO.append(testClient1.getId(), 300, MilesLedgerEntry.ACCRUAL, null);
+        milesLedgerDAO.redeem(testClient1.getId(), 500, MilesLedgerEntry.REDEMPTION, null);
+        milesLedgerDAO.append(testClient2.getId(), 70, MilesLedgerEntry.ACCRUAL, null);
+
+        // Пачка считается клиентами
+        assertEquals(1, milesLedgerDAO.compact(1));
+        assertEquals(1, milesLedgerDAO.compact(10));
+        assertEquals(0, milesLedgerDAO.compact(10));
+
+        Client client1 = reload(testClient1.getId());
+        assertEquals(800, client1.getMilesSnapshot());
+        assertEquals(800, client1.getBonusMiles());
+        Client client2 = reload(testClient2.getId());
+        assertEquals(2570, client2.getMilesSnapshot());
+        assertEquals(2570, client2.getBonusMiles());
+
+        // Журнал не меняется и остаётся историей, новые записи снова идут в хвост
+        assertEquals(List.of(-500, 300), milesLedgerDAO.getByClient(testClient1.getId()).stream()
+                .map(MilesLedgerEntry::getDelta).toList());
+        milesLedgerDAO.append(testClient1.getId(), 5, MilesLedgerEntry.ACCRUAL, null);
+        assertEquals(805, reload(testClient1.getId()).getBonusMiles());
+    }
+
+    @Test
+    void testEntityUpdateDoesNotOverwriteLedger() {
+        Long clientId = testClient1.getId();
+        milesLedgerDAO.append(clientId, 250, MilesLedgerEntry.ACCRUAL, null);
+
+        Client client = reload(clientId);
+        client.setPhone("+7-900-000-00-00");
+        entityManager.flush();
+
+        assertEquals(1250, reload(clientId).getBonusMiles());
+        assertEquals(1000, reload(clientId).getMilesSnapshot());
+    }
+
+    @Test
+    void testBalanceQueriesIncludeTail() {
+        milesLedgerDAO.append(testClient1.getId(), 2000, MilesLedgerEntry.ACCRUAL, null);
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Client> richClients = clientDAO.getByBonusMilesGreaterThan(2600);
+        assertEquals(1, richClients.size());
+        assertEquals(testClient1.getId(), richClients.get(0).getId());
+        assertEquals(3000, richClients.get(0).getBonusMiles());
+    }
+
+    private Client reload(Long clientId) {
+        entityManager.flush();
+        entityManager.clear();
+        return clientDAO.getById(clientId);
+    }
+}
@@ -0,0 +1,58 @@
+package ru.cmc.web_prac.DAO;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import ru.cmc.web_prac.classes.Booking;
+import ru.cmc.web_prac.classes.MilesOutboxEntry;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MilesOutboxDAOTest extends BaseDAOTest {
+
+    @Autowired
+    private MilesOutboxDAO milesOutboxDAO;
+
+    @Test
+    void testEnqueueEarnedMiles() {
+        assertTrue(milesOutboxDAO.enqueueEarnedMiles(testBooking1.getId()));
+
+        List<MilesOutboxEntry> entries = milesOutboxDAO.lockBatch(10);
+        assertEquals(1, entries.size());
+        assertEquals(testClient1.getId(), entries.get(0).getClientId());
+        assertEquals(testBooking1.getId(), entries.get(0).getBookingId());
+        assertEquals(50, entries.get(0).getMiles()); // 5000 * 1.0 / 100
+    }
+
+    @Test
+    void testEnqueueRoundsDown() {
+        Booking booking = new Booking();
+        booking.setClient(testClient2);
+        booking.setFlight(testFlight2);
+        booking.setBookingDate(LocalDateTime.now());
+        bookingDAO.save(booking);
+
+        assertTrue(milesOutboxDAO.enqueueEarnedMiles(booking.getId()));
+        assertEquals(54, milesOutboxDAO.lockBatch(10).get(0).getMiles()); // 4500 * 1.2 / 100
+    }
+
+    @Test
+    void testEnqueueMissingBooking() {
+        assertFalse(milesOutboxDAO.enqueueEarnedMiles(-1L));
+        assertTrue(milesOutboxDAO.lockBatch(10).isEmpty());
+    }
+
+    @Test
+    void testLockBatchLimit() {
+        for (int i = 0; i < 3; i++) {
+            milesOutboxDAO.enqueueEarnedMiles(testBooking1.getId());
+        }
+
+        List<MilesOutboxEntry> batch = milesOutboxDAO.lockBatch(2);
+        assertEquals(2, batch.size());
+        assertTrue(batch.get(0).getId() < batch.get(1).getId());
+        assertEquals(3, milesOutboxDAO.lockBatch(10).size());
+    }
+}
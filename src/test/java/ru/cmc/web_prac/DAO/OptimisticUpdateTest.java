@@ -0,0 +1,242 @@
+package ru.cmc.web_prac.DAO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.MockMvcPrint;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.cmc.web_prac.classes.Airline;
+import ru.cmc.web_prac.classes.Client;
+import ru.cmc.web_prac.classes.Flight;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+/**
+ * Изменение рейсов и клиентов по версии (@Version) с повтором при конфликте.
+ * Конкурирующие изменения выполняются в другом потоке и фиксируются по-настоящему,
+ * поэтому данные создаются в своих транзакциях и удаляются после каждого теста.
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application.properties")
+// Печать результатов MockMvc вызывает toString сущностей, а у Flight и Airline он зацикливается
+@AutoConfigureMockMvc(print = MockMvcPrint.NONE)
+public class OptimisticUpdateTest {
+
+    private static final int SEATS = 100;
+
+    @Autowired
+    private FlightDAO flightDAO;
+
+    @Autowired
+    private ClientDAO clientDAO;
+
+    @Autowired
+    private AirlineDAO airlineDAO;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+    private ExecutorService concurrent;
+    private Airline airline;
+    private Flight flight;
+    private Client client;
+
+    @BeforeEach
+    void setUp() {
+        concurrent = Executors.newSingleThreadExecutor();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> {
+            airline = new Airline();
+            airline.setName("Version Air");
+            airline.setMilesRate(BigDecimal.valueOf(1.0));
+            airlineDAO.save(airline);
+
+            flight = new Flight();
+            flight.setFlightNumber("VERSION1");
+            flight.setAirline(airline);
+            flight.setDepartureAirport("SVO");
+            flight.setArrivalAirport("KZN");
+            flight.setDepartureTime(LocalDateTime.now().plusDays(5).withNano(0));
+            flight.setArrivalTime(LocalDateTime.now().plusDays(5).plusHours(2).withNano(0));
+            flight.setPrice(BigDecimal.valueOf(4000));
+            flight.setTotalSeats(SEATS);
+            flight.setAvailableSeats(SEATS);
+            flightDAO.save(flight);
+
+            client = new Client();
+            client.setFullName("Версия Клиент");
+            client.setEmail("version.client@example.org");
+            client.setBonusMiles(1000);
+            clientDAO.save(client);
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        concurrent.shutdownNow();
+        concurrent.awaitTermination(1, TimeUnit.MINUTES);
+        transactionTemplate.executeWithoutResult(status -> {
+            clientDAO.delete(clientDAO.getById(client.getId()));
+            flightDAO.delete(flightDAO.getById(flight.getId()));
+            airlineDAO.delete(airlineDAO.getById(airline.getId()));
+        });
+    }
+
+    @Test
+    void testConflictingSeatChangeIsRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        Flight updated = flightDAO.update(flight.getId(), current -> {
+            if (attempts.incrementAndGet() == 1) {
+                // Пока правка не зафиксирована, продаётся место
+                concurrently(() -> assertTrue(flightDAO.decrementAvailableSeats(flight.getId())));
+            }
+            current.setPrice(BigDecimal.valueOf(4500));
+        });
+
+        assertEquals(2, attempts.get());
+        assertEquals(SEATS - 1, updated.getAvailableSeats());
+        Flight stored = flightDAO.getById(flight.getId());
+        assertEquals(0, BigDecimal.valueOf(4500).compareTo(stored.getPrice()));
+        assertEquals(SEATS - 1, stored.getAvailableSeats());
+        assertEquals(flight.getVersion() + 2, stored.getVersion());
+    }
+
+    @Test
+    void testRetriesAreLimited() {
+        AtomicInteger attempts = new AtomicInteger();
+        assertThrows(OptimisticLockingFailureException.class, () ->
+                flightDAO.update(flight.getId(), current -> {
+                    attempts.incrementAndGet();
+                    concurrently(() -> flightDAO.incrementAvailableSeats(flight.getId()));
+                    current.setPrice(BigDecimal.valueOf(4500));
+                }));
+
+        assertEquals(5, attempts.get()); // app.dao.update-attempts по умолчанию
+        assertEquals(0, BigDecimal.valueOf(4000).compareTo(flightDAO.getById(flight.getId()).getPrice()));
+    }
+
+    @Test
+    void testStaleEntityIsNotMerged() {
+        Flight stale = flightDAO.getById(flight.getId());
+        assertTrue(flightDAO.decrementAvailableSeats(flight.getId()));
+
+        stale.setAvailableSeats(SEATS);
+        assertThrows(OptimisticLockingFailureException.class, () -> flightDAO.update(stale));
+        assertEquals(SEATS - 1, flightDAO.getById(flight.getId()).getAvailableSeats());
+    }
+
+    @Test
+    void testUpdateInsideTransactionIsRejected() {
+        assertThrows(IllegalTransactionStateException.class, () ->
+                transactionTemplate.executeWithoutResult(status ->
+                        flightDAO.update(flight.getId(), current -> current.setPrice(BigDecimal.ONE))));
+    }
+
+    @Test
+    void testMissingEntity() {
+        assertNull(clientDAO.update(-1L, current -> current.setPhone("+7-900-000-00-00")));
+    }
+
+    @Test
+    void testFlightFormKeepsSeatsSoldMeanwhile() throws Exception {
+        // Форма открыта при 100 свободных местах, пока её заполняли, продано 3
+        for (int i = 0; i < 3; i++) {
+            assertTrue(flightDAO.decrementAvailableSeats(flight.getId()));
+        }
+
+        mockMvc.perform(post("/saveFlight")
+                        .param("flightId", String.valueOf(flight.getId()))
+                        .param("flightNumber", flight.getFlightNumber())
+                        .param("airlineId", String.valueOf(airline.getId()))
+                        // Коды аэропортов приводятся к виду, в котором их ищет поиск
+                        .param("departureAirport", " svo")
+                        .param("arrivalAirport", "Kzn ")
+                        .param("departureTime", flight.getDepartureTime().toString())
+                        .param("arrivalTime", flight.getArrivalTime().toString())
+                        .param("price", "5000")
+                        .param("totalSeats", String.valueOf(SEATS + 10))
+                        .param("availableSeats", String.valueOf(SEATS + 10))
+                        .param("loadedAvailableSeats", String.valueOf(SEATS)))
+                .andExpect(redirectedUrl("/flight?flightId=" + flight.getId()));
+
+        Flight stored = flightDAO.getById(flight.getId());
+        assertEquals(SEATS + 10, stored.getTotalSeats());
+        assertEquals(SEATS + 10 - 3, stored.getAvailableSeats());
+        assertEquals(0, BigDecimal.valueOf(5000).compareTo(stored.getPrice()));
+        assertEquals("SVO", stored.getDepartureAirport());
+        assertEquals("KZN", stored.getArrivalAirport());
+    }
+
+    @Test
+    void testClientFormKeepsMilesEarnedMeanwhile() throws Exception {
+        // Форма открыта при 1000 милях, пока её заполняли, начислено 200
+        clientDAO.addBonusMiles(client.getId(), 200);
+
+        mockMvc.perform(post("/saveClient")
+                        .param("clientId", String.valueOf(client.getId()))
+                        .param("fullName", client.getFullName())
+                        .param("email", client.getEmail())
+                        .param("phone", "+7-900-111-22-33")
+                        .param("address", "Москва")
+                        .param("bonusMiles", "1050")
+                        .param("loadedBonusMiles", "1000"))
+                .andExpect(redirectedUrl("/client?clientId=" + client.getId()));
+
+        Client stored = clientDAO.getById(client.getId());
+        assertEquals("+7-900-111-22-33", stored.getPhone());
+        assertEquals(1250, stored.getBonusMiles());
+    }
+
+    @Test
+    void testClientFormRejectsNegativeBalance() throws Exception {
+        // Форма открыта при 1000 милях, пока её заполняли, списано 900
+        assertTrue(clientDAO.deductBonusMiles(client.getId(), 900));
+
+        mockMvc.perform(post("/saveClient")
+                        .param("clientId", String.valueOf(client.getId()))
+                        .param("fullName", client.getFullName())
+                        .param("email", client.getEmail())
+                        .param("phone", "+7-900-111-22-33")
+                        .param("address", "Москва")
+                        .param("bonusMiles", "500")
+                        .param("loadedBonusMiles", "1000"))
+                .andExpect(view().name("errorPage"));
+
+        // Правка не сохраняется частично: ни мили, ни поля клиента
+        Client stored = clientDAO.getById(client.getId());
+        assertEquals(100, stored.getBonusMiles());
+        assertEquals(client.getPhone(), stored.getPhone());
+        assertEquals(client.getVersion(), stored.getVersion());
+    }
+
+    // Изменение в отдельной транзакции другого потока, зафиксированное до возврата
+    private void concurrently(Runnable change) {
+        try {
+            concurrent.submit(change).get(1, TimeUnit.MINUTES);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
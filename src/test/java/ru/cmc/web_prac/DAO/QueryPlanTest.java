@@ -0,0 +1,311 @@
+package ru.cmc.web_prac.DAO;
+
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.cmc.web_prac.cache.FlightChangeListener;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Проверка, что запросы DAO используют индексы из sql/create.sql при настройках планировщика
+ * по умолчанию. Данные генерируются один раз на класс и фиксируются, после ANALYZE каждый
+ * запрос, перехваченный у Hibernate, разбирается через EXPLAIN (GENERIC_PLAN) - обобщённый
+ * план, как у подготовленного запроса, - и в плане ищется имя индекса. Проверяются запросы,
+ * которые читают малую часть таблицы: по ключу, за период, страницами с LIMIT.
+ * Сгенерированные строки удаляются после класса.
+ */
+public class QueryPlanTest extends BaseDAOTest {
+
+    private static final String GENERATED_AIRLINES = "Plan Air %";
+    private static final String GENERATED_EMAILS = "%@plan_.example";
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private List<FlightChangeListener> flightChangeListeners;
+
+    @BeforeAll
+    void generateData() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            execute("SET LOCAL search_path TO web_prac");
+            // Сгенерированные строки связываются через массивы id: план вставки не зависит от статистики
+            execute("INSERT INTO airlines (name, miles_rate) " +
+                    "SELECT 'Plan Air ' || g, 1.0 FROM generate_series(1, 40) g");
+            execute("INSERT INTO flights (flight_number, airline_id, departure_airport, arrival_airport, " +
+                    "departure_time, arrival_time, price, total_seats, available_seats) " +
+                    "SELECT 'GEN' || g, a.ids[1 + g % 40], 'A' || (g % 40), 'B' || (g % 37), " +
+                    "TIMESTAMP '2025-01-01' + g * INTERVAL '17 minutes', " +
+                    "TIMESTAMP '2025-01-01' + g * INTERVAL '17 minutes' + INTERVAL '2 hours', " +
+                    "1000 + g % 9000, 180, g % 180 " +
+                    "FROM generate_series(1, 50000) g, " +
+                    "(SELECT array_agg(id ORDER BY id) AS ids FROM airlines " +
+                    "WHERE name LIKE '" + GENERATED_AIRLINES + "') a");
+            execute("INSERT INTO clients (full_name, email, phone, bonus_miles) " +
+                    // Имена и адреса из случайных букв: у триграмм реальное разнообразие
+                    "SELECT initcap(translate(substr(md5(CAST(g AS TEXT)), 1, 9), '0123456789abcdef', " +
+                    "'абвгдежзиклмнопр')) || ' ' || initcap(translate(substr(md5(CAST(-g AS TEXT)), 1, 7), " +
+                    "'0123456789abcdef', 'абвгдежзиклмнопр')), " +
+                    "translate(substr(md5('e' || g), 1, 8), '0123456789abcdef', 'ghijklmnopqrstuv') || g || " +
+                    "'@plan' || (g % 3) || '.example', " +
+                    "'+7-900-' || lpad(CAST(g AS TEXT), 7, '0'), g % 20000 " +
+                    "FROM generate_series(1, 50000) g");
+            execute("INSERT INTO bookings (client_id, flight_id, booking_date, status, paid_with_miles, miles_used) " +
+                    "SELECT c.ids[1 + g % 50000], f.ids[1 + g % 50000], " +
+                    "TIMESTAMP '2025-01-01' + g * INTERVAL '5 minutes', " +
+                    "(ARRAY['BOOKED', 'PAID', 'PAID', 'CANCELLED'])[1 + g % 4], g % 25 = 0, 0 " +
+                    "FROM generate_series(1, 100000) g, " +
+                    "(SELECT array_agg(id ORDER BY id) AS ids FROM clients " +
+                    "WHERE email LIKE '" + GENERATED_EMAILS + "') c, " +
+                    "(SELECT array_agg(id ORDER BY id) AS ids FROM flights " +
+                    "WHERE flight_number LIKE 'GEN%') f");
+        });
+        analyze();
+    }
+
+    @AfterAll
+    void removeData() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            execute("SET LOCAL search_path TO web_prac");
+            execute("DELETE FROM bookings WHERE client_id IN " +
+                    "(SELECT id FROM clients WHERE email LIKE '" + GENERATED_EMAILS + "')");
+            execute("DELETE FROM clients WHERE email LIKE '" + GENERATED_EMAILS + "'");
+            execute("DELETE FROM flights WHERE airline_id IN " +
+                    "(SELECT id FROM airlines WHERE name LIKE '" + GENERATED_AIRLINES + "')");
+            execute("DELETE FROM airlines WHERE name LIKE '" + GENERATED_AIRLINES + "'");
+        });
+        analyze();
+        // Строки удалены в обход DAO: кэши рейсов могли успеть их прочитать
+        flightChangeListeners.forEach(FlightChangeListener::invalidateAll);
+    }
+
+    @BeforeEach
+    void preparePlans() {
+        entityManager.flush();
+        // EXPLAIN (GENERIC_PLAN) с параметрами $n выполняется только простым запросом,
+        // а драйвер шлёт расширенный протокол - поэтому через EXECUTE во временной функции
+        // (создаётся в транзакции теста и откатывается вместе с ней)
+        execute("CREATE FUNCTION pg_temp.generic_plan(query TEXT) RETURNS SETOF TEXT LANGUAGE plpgsql AS " +
+                "'BEGIN RETURN QUERY EXECUTE ''EXPLAIN (GENERIC_PLAN) '' || query; END'");
+    }
+
+    @Test
+    void testSearchFlightsUsesRouteIndex() {
+        flightDAO.searchFlights("A1", "B1", LocalDateTime.of(2025, 3, 1, 0, 0));
+        assertLastQueryUses("flights_route_departure_idx");
+    }
+
+    @Test
+    void testGetByRouteUsesRouteIndex() {
+        flightDAO.getByRoute("A1", "B1");
+        assertLastQueryUses("flights_route_departure_idx");
+    }
+
+    @Test
+    void testGetByDepartureDateUsesDepartureIndex() {
+        flightDAO.getByDepartureDate(LocalDateTime.of(2025, 3, 1, 0, 0), LocalDateTime.of(2025, 3, 2, 0, 0));
+        assertLastQueryUses("flights_departure_time_idx");
+    }
+
+    @Test
+    void testGetByFlightNumberUsesFlightNumberIndex() {
+        flightDAO.getByFlightNumber("GEN100");
+        assertLastQueryUses("flights_flight_number_idx");
+    }
+
+    @Test
+    void testGetByAirlineUsesAirlineIndex() {
+        flightDAO.getByAirline(testAirline2);
+        assertLastQueryUses("flights_airline_departure_idx");
+    }
+
+    @Test
+    void testSummaryPagesUseSortIndexes() {
+        flightDAO.getSummaryPage("date", testFlight1.getId(), 51);
+        assertLastQueryUses("flights_departure_time_idx");
+
+        flightDAO.getSummaryPage("price", testFlight1.getId(), 51);
+        assertLastQueryUses("flights_price_idx");
+
+        flightDAO.getSummaryPage("route", testFlight1.getId(), 51);
+        assertLastQueryUses("flights_route_departure_idx");
+    }
+
+    @Test
+    void testClientBookingHistoryUsesClientIndex() {
+        bookingDAO.getClientBookingHistory(testClient1.getId());
+        assertLastQueryUses("bookings_client_date_idx");
+    }
+
+    @Test
+    void testGetByFlightUsesFlightIndex() {
+        bookingDAO.getByFlight(testFlight1);
+        assertLastQueryUses("bookings_flight_date_idx");
+    }
+
+    // Статус отсекает около трети строк, и обобщённый план может читать страницу по индексу даты,
+    // проверяя статус на лету: важно, что страница читается в порядке индекса, без сортировки
+    @Test
+    void testStatusPagesUseDateOrderedIndex() {
+        bookingDAO.getPage("BOOKED", testBooking1.getId(), 51);
+        assertLastQueryUsesAny("bookings_status_date_idx", "bookings_date_idx");
+
+        bookingDAO.getRowPage("PAID", testBooking1.getId(), 51);
+        assertLastQueryUsesAny("bookings_status_date_idx", "bookings_date_idx");
+    }
+
+    @Test
+    void testBookingPagesUseDateIndexes() {
+        bookingDAO.getRowPage(null, testBooking1.getId(), 51);
+        assertLastQueryUses("bookings_date_idx");
+
+        bookingDAO.getByBookingDateBetween(LocalDateTime.of(2025, 2, 1, 0, 0), LocalDateTime.of(2025, 2, 2, 0, 0));
+        assertLastQueryUses("bookings_date_idx");
+    }
+
+    @Test
+    void testMilesBookingsUsePartialIndex() {
+        bookingDAO.getPaidWithMilesRows();
+        assertLastQueryUses("bookings_miles_date_idx");
+    }
+
+    /**
+     * Выгода триграммного индекса зависит от образца, поэтому план строится по значениям параметров.
+     * На 50 тыс. клиентов стоимость индекса и полного просмотра почти равны, и выбор между ними
+     * меняется от выборки ANALYZE. Поэтому проверяется оценка: статистика триграмм должна
+     * считать редкий образец редким - тогда с ростом таблицы планировщик переходит на индексы.
+     */
+    @Test
+    void testClientSearchExpectsFewRows() {
+        Object[] client = (Object[]) entityManager.createNativeQuery(
+                        "SELECT full_name, email FROM {h-schema}clients WHERE email LIKE :emails ORDER BY id")
+                .setParameter("emails", GENERATED_EMAILS)
+                .setFirstResult(1234)
+                .setMaxResults(1)
+                .getSingleResult();
+        String name = ((String) client[0]).substring(0, 6).toLowerCase(Locale.ROOT);
+        String email = ((String) client[1]).substring(0, 8);
+
+        clientDAO.searchRows(email, 50);
+        assertFewRowsExpected(SqlCaptureInspector.lastSqlContaining("word_similarity"),
+                "%" + email + "%", "%" + email + "%", email, email, email, email, 50);
+
+        clientDAO.searchRows("+7 900 123", 50);
+        assertFewRowsExpected(SqlCaptureInspector.lastSqlContaining("word_similarity"),
+                "%+7 900 123%", "%+7 900 123%", "+7 900 123", "+7 900 123", "%7900123%",
+                "+7 900 123", "+7 900 123", "%7900123%", 50);
+
+        clientDAO.searchRowsByNameOrEmail(name);
+        assertFewRowsExpected(SqlCaptureInspector.lastSql(), "%" + name + "%", "%" + name + "%");
+    }
+
+    // План последнего SQL, выполненного через Hibernate, должен содержать указанный индекс
+    private void assertLastQueryUses(String indexName) {
+        assertQueryUses(SqlCaptureInspector.lastSql(), indexName);
+    }
+
+    // План последнего SQL должен читать страницу по одному из индексов, без сортировки
+    private void assertLastQueryUsesAny(String... indexNames) {
+        String sql = SqlCaptureInspector.lastSql();
+        assertNotNull(sql);
+        String plan = explain(sql, new Object[0]);
+        assertTrue(Arrays.stream(indexNames).anyMatch(plan::contains) && !plan.contains("Sort"),
+                "Ожидался один из индексов " + Arrays.toString(indexNames) + " без сортировки в плане:\n" + plan);
+    }
+
+    // values - значения параметров: без них план обобщённый, с ними - для этих значений
+    private void assertQueryUses(String sql, String indexName, Object... values) {
+        assertNotNull(sql);
+        String plan = explain(sql, values);
+        assertTrue(plan.contains(indexName), "Ожидался индекс " + indexName + " в плане:\n" + plan + "\nзапроса:\n" + sql);
+    }
+
+    // Оценка числа строк, прочитанных из clients, - не больше 1% сгенерированных клиентов
+    private void assertFewRowsExpected(String sql, Object... values) {
+        assertNotNull(sql);
+        String plan = explain(sql, values);
+        Matcher scan = Pattern.compile("on clients c\\S* .*?rows=(\\d+)").matcher(plan);
+        assertTrue(scan.find(), "Нет чтения clients в плане:\n" + plan);
+        assertTrue(Long.parseLong(scan.group(1)) <= 500, "Оценка строк слишком велика:\n" + plan);
+    }
+
+    private String explain(String sql, Object[] values) {
+        // Параметры JDBC (?) превращаем в $1..$n
+        StringBuilder prepared = new StringBuilder();
+        int parameters = 0;
+        for (char ch : sql.toCharArray()) {
+            if (ch == '?') {
+                prepared.append('$').append(++parameters);
+            } else {
+                prepared.append(ch);
+            }
+        }
+        assertTrue(values.length == 0 || values.length == parameters, "Запрос ждёт параметров: " + parameters);
+
+        StringBuilder plan = new StringBuilder();
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            if (values.length == 0) {
+                try (PreparedStatement statement = connection.prepareStatement("SELECT pg_temp.generic_plan(?)")) {
+                    statement.setString(1, prepared.toString());
+                    readPlan(statement.executeQuery(), plan);
+                }
+                return;
+            }
+            // Первые выполнения подготовленного запроса планируются по значениям параметров
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PREPARE plan_check AS " + prepared);
+                try {
+                    readPlan(statement.executeQuery("EXPLAIN EXECUTE plan_check(" + Arrays.stream(values)
+                            .map(value -> "'" + String.valueOf(value).replace("'", "''") + "'")
+                            .collect(Collectors.joining(", ")) + ")"), plan);
+                } finally {
+                    statement.execute("DEALLOCATE plan_check");
+                }
+            }
+        });
+        return plan.toString();
+    }
+
+    private static void readPlan(ResultSet rows, StringBuilder plan) throws SQLException {
+        try (rows) {
+            while (rows.next()) {
+                plan.append(rows.getString(1)).append('\n');
+            }
+        }
+    }
+
+    private void analyze() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            execute("ANALYZE web_prac.airlines");
+            execute("ANALYZE web_prac.flights");
+            execute("ANALYZE web_prac.clients");
+            execute("ANALYZE web_prac.bookings");
+        });
+    }
+
+    private void execute(String sql) {
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(sql);
+            }
+        });
+    }
+}
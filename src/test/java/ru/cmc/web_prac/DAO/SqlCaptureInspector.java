@@ -0,0 +1,41 @@
+package ru.cmc.web_prac.DAO;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Запоминает последние SQL, отправленные Hibernate в текущем потоке,
+ * чтобы QueryPlanTest мог получить план именно того запроса, который строит DAO.
+ */
+public class SqlCaptureInspector implements StatementInspector {
+
+    private static final int KEPT = 10;
+
+    private static final ThreadLocal<Deque<String>> RECENT_SQL = ThreadLocal.withInitial(ArrayDeque::new);
+
+    @Override
+    public String inspect(String sql) {
+        Deque<String> recent = RECENT_SQL.get();
+        recent.addFirst(sql);
+        if (recent.size() > KEPT) {
+            recent.removeLast();
+        }
+        return sql;
+    }
+
+    public static String lastSql() {
+        return RECENT_SQL.get().peekFirst();
+    }
+
+    // Последний SQL, содержащий fragment (DAO-метод может выполнить несколько запросов)
+    public static String lastSqlContaining(String fragment) {
+        for (String sql : RECENT_SQL.get()) {
+            if (sql.contains(fragment)) {
+                return sql;
+            }
+        }
+        return null;
+    }
+}
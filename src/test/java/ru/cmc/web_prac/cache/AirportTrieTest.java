@@ -0,0 +1,84 @@
+package ru.cmc.web_prac.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.cmc.web_prac.DTO.AirportSuggestion;
+import ru.cmc.web_prac.DTO.FlightSummary;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AirportTrieTest {
+
+    private AirportTrie trie;
+
+    @BeforeEach
+    void setUp() {
+        trie = new AirportTrie();
+        ReflectionTestUtils.setField(trie, "maxSuggestions", 3);
+        ReflectionTestUtils.setField(trie, "maxAgeSeconds", 300L);
+        trie.rebuildIfNeeded(() -> Stream.of(
+                new AirportSuggestion("SVO", 120),
+                new AirportSuggestion("SVX", 40),
+                new AirportSuggestion("SGC", 5),
+                new AirportSuggestion("LED", 90),
+                new AirportSuggestion("KZN", 30)));
+    }
+
+    private static FlightSummary flight(String from, String to) {
+        LocalDateTime departure = LocalDateTime.of(2030, 5, 10, 9, 0);
+        return new FlightSummary(1L, "T1", "Test Air", from, to, departure, departure.plusHours(2),
+                BigDecimal.valueOf(1000), 100, 100);
+    }
+
+    @Test
+    void testSuggestByPrefixMostFrequentFirst() {
+        assertEquals(List.of(new AirportSuggestion("SVO", 120), new AirportSuggestion("SVX", 40),
+                new AirportSuggestion("SGC", 5)), trie.suggest("s", 10));
+        assertEquals(List.of(new AirportSuggestion("SVO", 120), new AirportSuggestion("SVX", 40)),
+                trie.suggest(" sv", 10));
+        assertEquals(List.of(new AirportSuggestion("LED", 90)), trie.suggest("LED", 10));
+        assertTrue(trie.suggest("SVOX", 10).isEmpty());
+        assertTrue(trie.suggest("Q", 10).isEmpty());
+    }
+
+    @Test
+    void testEmptyPrefixAndLimit() {
+        assertEquals(List.of(new AirportSuggestion("SVO", 120), new AirportSuggestion("LED", 90),
+                new AirportSuggestion("SVX", 40)), trie.suggest("", 10));
+        assertEquals(List.of(new AirportSuggestion("SVO", 120)), trie.suggest("", 1));
+    }
+
+    @Test
+    void testSavedFlightAddsNewCodes() {
+        trie.flightSaved(flight("svo", "AER"));
+
+        assertEquals(List.of(new AirportSuggestion("AER", 1)), trie.suggest("A", 10));
+        // Известный код не меняется
+        assertEquals(new AirportSuggestion("SVO", 120), trie.suggest("SVO", 10).get(0));
+    }
+
+    @Test
+    void testCodesSavedDuringRebuildAreKept() {
+        trie.invalidateAll();
+        trie.rebuildIfNeeded(() -> {
+            trie.flightSaved(flight("SVO", "AER"));
+            return Stream.of(new AirportSuggestion("SVO", 120));
+        });
+
+        assertEquals(List.of(new AirportSuggestion("AER", 1)), trie.suggest("AE", 10));
+    }
+
+    @Test
+    void testInvalidateAll() {
+        trie.invalidateAll();
+
+        assertFalse(trie.isReady());
+        assertNull(trie.suggest("S", 10));
+    }
+}
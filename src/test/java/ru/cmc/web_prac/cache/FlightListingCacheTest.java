@@ -0,0 +1,154 @@
+package ru.cmc.web_prac.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.cmc.web_prac.DTO.FlightSummary;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlightListingCacheTest {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2030, 5, 10, 0, 0);
+
+    private FlightListingCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        cache = new FlightListingCache();
+        ReflectionTestUtils.setField(cache, "maxAgeSeconds", 300L);
+        loads = new AtomicInteger();
+        cache.rebuildIfNeeded(() -> {
+            loads.incrementAndGet();
+            return Stream.of(
+                    flight(1L, "SVO", "LED", DAY.withHour(18), 3000, 10),
+                    flight(2L, "SVO", "LED", DAY.withHour(8), 5000, 5),
+                    flight(3L, "AER", "SVO", DAY.withHour(9), 1000, 0),
+                    flight(4L, "SVO", "KZN", DAY.plusDays(1), 3000, 5));
+        });
+    }
+
+    private static FlightSummary flight(Long id, String from, String to, LocalDateTime departure,
+                                        int price, int seats) {
+        return new FlightSummary(id, "T" + id, "Test Air", from, to, departure, departure.plusHours(2),
+                BigDecimal.valueOf(price), 100, seats);
+    }
+
+    private static List<Long> ids(List<FlightSummary> flights) {
+        return flights.stream().map(FlightSummary::id).toList();
+    }
+
+    @Test
+    void testPagesInEachOrder() {
+        assertEquals(List.of(2L, 3L, 1L, 4L), ids(cache.page("date", null, 10)));
+        assertEquals(List.of(3L, 1L, 4L, 2L), ids(cache.page("price", null, 10)));
+        assertEquals(List.of(3L, 4L, 2L, 1L), ids(cache.page("route", null, 10)));
+        assertEquals(List.of(2L, 3L, 1L, 4L), ids(cache.page("unknown", null, 10)));
+    }
+
+    @Test
+    void testPageAfterAnchor() {
+        assertEquals(List.of(3L, 1L), ids(cache.page("date", 2L, 2)));
+        assertEquals(List.of(4L, 2L), ids(cache.page("price", 1L, 10)));
+        assertEquals(List.of(), cache.page("date", 4L, 10));
+        // Рейса нет в кэше - ответит БД
+        assertNull(cache.page("date", 99L, 10));
+    }
+
+    @Test
+    void testAvailableSkipsFullFlights() {
+        assertEquals(List.of(2L, 1L, 4L), ids(cache.available()));
+    }
+
+    @Test
+    void testSeatChangesArePatchedInPlace() {
+        cache.seatsSet(2L, 0, 1);
+        cache.seatsSet(3L, 2, 1);
+        cache.seatsSet(4L, 42, 1);
+
+        assertEquals(List.of(3L, 1L, 4L), ids(cache.available()));
+        List<FlightSummary> page = cache.page("date", null, 10);
+        assertEquals(List.of(2L, 3L, 1L, 4L), ids(page));
+        assertEquals(0, page.get(0).availableSeats());
+        assertEquals(2, page.get(1).availableSeats());
+        assertEquals(42, page.get(3).availableSeats());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testSavedFlightIsMoved() {
+        cache.flightSaved(flight(1L, "SVO", "LED", DAY.withHour(6), 9000, 10));
+        cache.flightSaved(flight(5L, "KJA", "SVO", DAY.withHour(12), 2000, 1));
+
+        assertEquals(List.of(1L, 2L, 3L, 5L, 4L), ids(cache.page("date", null, 10)));
+        assertEquals(List.of(3L, 5L, 4L, 2L, 1L), ids(cache.page("price", null, 10)));
+        assertEquals(List.of(3L, 5L, 4L, 1L, 2L), ids(cache.page("route", null, 10)));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testRemovedFlightDisappears() {
+        cache.flightRemoved(2L);
+
+        assertEquals(List.of(3L, 1L, 4L), ids(cache.page("date", null, 10)));
+        assertEquals(List.of(1L, 4L), ids(cache.available()));
+        assertNull(cache.page("date", 2L, 10));
+    }
+
+    @Test
+    void testInvalidateAllForcesRebuild() {
+        cache.invalidateAll();
+        assertNull(cache.page("date", null, 10));
+        assertNull(cache.available());
+
+        cache.rebuildIfNeeded(Stream::empty);
+        assertEquals(List.of(), cache.page("date", null, 10));
+    }
+
+    @Test
+    void testChangeSeenByLoadIsNotCountedTwice() {
+        cache.invalidateAll();
+        cache.rebuildIfNeeded(() -> {
+            // Зафиксировано до чтения: загрузка уже видит 9 мест, а изменение всё равно догоняется
+            cache.seatsSet(1L, 9, 1);
+            return Stream.of(flight(1L, "SVO", "LED", DAY, 3000, 9));
+        });
+
+        assertEquals(9, cache.page("date", null, 10).get(0).availableSeats());
+    }
+
+    @Test
+    void testChangesDuringRebuildAreReplayed() {
+        cache.invalidateAll();
+        cache.rebuildIfNeeded(() -> {
+            // Зафиксированы после того, как загрузка прочитала рейсы
+            cache.seatsSet(1L, 9, 1);
+            cache.flightSaved(flight(5L, "SVO", "KZN", DAY.minusDays(1), 2000, 4));
+            cache.flightRemoved(2L);
+            return Stream.of(
+                    flight(1L, "SVO", "LED", DAY, 3000, 10),
+                    flight(2L, "SVO", "LED", DAY.plusDays(1), 3000, 10));
+        });
+
+        assertTrue(cache.isReady());
+        assertEquals(List.of(5L, 1L), ids(cache.page("date", null, 10)));
+        assertEquals(9, cache.page("date", null, 10).get(1).availableSeats());
+    }
+
+    @Test
+    void testInvalidationDuringRebuildDiscardsIt() {
+        cache.invalidateAll();
+        cache.rebuildIfNeeded(() -> {
+            cache.invalidateAll();
+            return Stream.of(flight(1L, "SVO", "LED", DAY, 3000, 10));
+        });
+        assertFalse(cache.isReady());
+    }
+}
@@ -0,0 +1,127 @@
+package ru.cmc.web_prac.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.cmc.web_prac.DTO.FlightSummary;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlightSearchIndexTest {
+
+    private static final LocalDate DAY = LocalDate.of(2030, 5, 10);
+
+    private FlightSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new FlightSearchIndex();
+        ReflectionTestUtils.setField(index, "maxAgeSeconds", 300L);
+        index.rebuildIfNeeded(DAY, () -> Stream.of(
+                flight(1L, "SVO", "LED", DAY.atTime(18, 0), 10),
+                flight(2L, "SVO", "LED", DAY.atTime(8, 0), 5),
+                flight(3L, "SVO", "KZN", DAY.atTime(9, 0), 5),
+                flight(4L, "SVO", "LED", DAY.plusDays(1).atTime(9, 0), 5)));
+    }
+
+    private static FlightSummary flight(Long id, String from, String to, LocalDateTime departure, int seats) {
+        return new FlightSummary(id, "T" + id, "Test Air", from, to, departure, departure.plusHours(2),
+                BigDecimal.valueOf(1000), 100, seats);
+    }
+
+    @Test
+    void testSearchOrderedByDeparture() {
+        List<FlightSummary> flights = index.search("SVO", "LED", DAY);
+
+        assertEquals(2, flights.size());
+        assertEquals(2L, flights.get(0).id());
+        assertEquals(1L, flights.get(1).id());
+    }
+
+    @Test
+    void testSearchBeforeIndexedDayFallsBack() {
+        assertNull(index.search("SVO", "LED", DAY.minusDays(1)));
+    }
+
+    @Test
+    void testSeatsSetHidesFullFlights() {
+        index.seatsSet(2L, 0, 1);
+
+        List<FlightSummary> flights = index.search("SVO", "LED", DAY);
+        assertEquals(1, flights.size());
+        assertEquals(1L, flights.get(0).id());
+
+        index.seatsSet(2L, 1, 2);
+        assertEquals(2, index.search("SVO", "LED", DAY).size());
+    }
+
+    @Test
+    void testStaleSeatsVersionIsIgnored() {
+        index.seatsSet(2L, 3, 5);
+        // Более старое изменение, доставленное позже
+        index.seatsSet(2L, 0, 4);
+
+        List<FlightSummary> flights = index.search("SVO", "LED", DAY);
+        assertEquals(2, flights.size());
+        assertEquals(3, flights.get(0).availableSeats());
+    }
+
+    @Test
+    void testFlightSavedMovesBetweenRoutes() {
+        index.flightSaved(flight(3L, "SVO", "LED", DAY.atTime(12, 0), 5));
+
+        assertTrue(index.search("SVO", "KZN", DAY).isEmpty());
+        List<FlightSummary> flights = index.search("SVO", "LED", DAY);
+        assertEquals(List.of(2L, 3L, 1L), flights.stream().map(FlightSummary::id).toList());
+    }
+
+    @Test
+    void testFlightRemoved() {
+        index.flightRemoved(1L);
+        assertEquals(1, index.search("SVO", "LED", DAY).size());
+    }
+
+    @Test
+    void testInvalidateAll() {
+        index.invalidateAll();
+        assertFalse(index.isReady());
+        assertNull(index.search("SVO", "LED", DAY));
+    }
+
+    @Test
+    void testChangesDuringRebuildAreReplayed() {
+        FlightSearchIndex rebuilt = new FlightSearchIndex();
+        ReflectionTestUtils.setField(rebuilt, "maxAgeSeconds", 300L);
+        rebuilt.rebuildIfNeeded(DAY, () -> {
+            // Зафиксированы после того, как загрузка прочитала рейсы
+            rebuilt.seatsSet(2L, 0, 1);
+            rebuilt.flightSaved(flight(5L, "SVO", "LED", DAY.atTime(7, 0), 3));
+            return Stream.of(
+                    flight(1L, "SVO", "LED", DAY.atTime(18, 0), 10),
+                    flight(2L, "SVO", "LED", DAY.atTime(8, 0), 5));
+        });
+
+        assertTrue(rebuilt.isReady());
+        List<FlightSummary> flights = rebuilt.search("SVO", "LED", DAY);
+        assertEquals(List.of(5L, 1L), flights.stream().map(FlightSummary::id).toList());
+    }
+
+    @Test
+    void testInvalidationDuringRebuildDiscardsIt() {
+        FlightSearchIndex rebuilt = new FlightSearchIndex();
+        ReflectionTestUtils.setField(rebuilt, "maxAgeSeconds", 300L);
+        rebuilt.rebuildIfNeeded(DAY, () -> {
+            rebuilt.invalidateAll();
+            return Stream.of(flight(1L, "SVO", "LED", DAY.atTime(18, 0), 10));
+        });
+
+        assertFalse(rebuilt.isReady());
+        assertNull(rebuilt.search("SVO", "LED", DAY));
+    }
+}
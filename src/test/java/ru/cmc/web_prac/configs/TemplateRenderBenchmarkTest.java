@@ -0,0 +1,206 @@
+package ru.cmc.web_prac.configs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.ui.ExtendedModelMap;
+import org.springframework.web.servlet.View;
+import org.springframework.web.servlet.ViewResolver;
+import org.thymeleaf.cache.TemplateCacheKey;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+import ru.cmc.web_prac.DAO.BaseDAOTest;
+import ru.cmc.web_prac.classes.Booking;
+import ru.cmc.web_prac.classes.Flight;
+import ru.cmc.web_prac.controllers.BookingController;
+import ru.cmc.web_prac.controllers.FlightController;
+
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Рендеринг flights.html и bookings.html с настройками разработки (шаблоны без кэша)
+ * и профиля prod (кэш шаблонов, общие фрагменты разобраны при старте).
+ * Страницы полные: по 50 рейсов и бронирований, как первая страница списка.
+ */
+public class TemplateRenderBenchmarkTest extends BaseDAOTest {
+
+    private static final int ROWS = 50;
+    private static final int WARMUP = 50;
+    private static final int RENDERS = 200;
+
+    @Autowired
+    private ClassLoaderTemplateResolver templateResolver;
+
+    @Autowired
+    private SpringTemplateEngine templateEngine;
+
+    @Autowired
+    private ViewResolver viewResolver;
+
+    @Autowired
+    private WebConfig webConfig;
+
+    @Autowired
+    private FlightController flightController;
+
+    @Autowired
+    private BookingController bookingController;
+
+    @Autowired
+    private ServletContext servletContext;
+
+    @AfterEach
+    void restoreDevConfiguration() {
+        ReflectionTestUtils.setField(webConfig, "cacheTemplates", false);
+        templateResolver.setCacheable(false);
+        templateEngine.clearTemplateCache();
+    }
+
+    @Test
+    void testSharedFragmentsAreParsedOnce() throws Exception {
+        enableProdTemplates();
+        assertEquals(WebConfig.SHARED_FRAGMENTS.size(), sharedFragmentEntries());
+
+        render("flights", flightsModel());
+        render("bookings", bookingsModel());
+
+        // Страницы подключили уже разобранные фрагменты, а не разобрали свои копии
+        assertEquals(WebConfig.SHARED_FRAGMENTS.size(), sharedFragmentEntries());
+    }
+
+    @Test
+    void testProdTemplatesRenderSameHtml() throws Exception {
+        saveListRows();
+        Map<String, Object> flights = flightsModel();
+        Map<String, Object> bookings = bookingsModel();
+
+        String devFlights = render("flights", flights);
+        String devBookings = render("bookings", bookings);
+
+        // Кэш меняет только скорость, не результат
+        enableProdTemplates();
+        assertEquals(devFlights, render("flights", flights));
+        assertEquals(devBookings, render("bookings", bookings));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void testRenderThroughput() throws Exception {
+        saveListRows();
+        Map<String, Object> flights = flightsModel();
+        Map<String, Object> bookings = bookingsModel();
+
+        double devFlightsRate = measure("flights", flights);
+        double devBookingsRate = measure("bookings", bookings);
+
+        enableProdTemplates();
+        double prodFlightsRate = measure("flights", flights);
+        double prodBookingsRate = measure("bookings", bookings);
+
+        report("flights.html", devFlightsRate, prodFlightsRate);
+        report("bookings.html", devBookingsRate, prodBookingsRate);
+
+        assertTrue(prodFlightsRate > devFlightsRate, "flights.html с кэшем шаблонов не быстрее");
+        assertTrue(prodBookingsRate > devBookingsRate, "bookings.html с кэшем шаблонов не быстрее");
+    }
+
+    // Полная первая страница списков: ROWS рейсов и по бронированию на каждый
+    private void saveListRows() {
+        for (int i = 0; i < ROWS; i++) {
+            Flight flight = new Flight();
+            flight.setFlightNumber("RENDER" + i);
+            flight.setAirline(testAirline1);
+            flight.setDepartureAirport("SVO");
+            flight.setArrivalAirport("KZN");
+            flight.setDepartureTime(LocalDateTime.now().plusDays(i + 1));
+            flight.setArrivalTime(LocalDateTime.now().plusDays(i + 1).plusHours(2));
+            flight.setPrice(BigDecimal.valueOf(4000 + i));
+            flight.setTotalSeats(100);
+            flight.setAvailableSeats(100);
+            flightDAO.save(flight);
+
+            Booking booking = new Booking();
+            booking.setClient(i % 2 == 0 ? testClient1 : testClient2);
+            booking.setFlight(flight);
+            booking.setBookingDate(LocalDateTime.now());
+            booking.setStatus("BOOKED");
+            booking.setPaidWithMiles(false);
+            bookingDAO.save(booking);
+        }
+        entityManager.flush();
+    }
+
+    // Как при запуске с профилем prod: кэш включён, общие фрагменты разобраны заранее
+    private void enableProdTemplates() {
+        ReflectionTestUtils.setField(webConfig, "cacheTemplates", true);
+        templateResolver.setCacheable(true);
+        templateEngine.clearTemplateCache();
+        webConfig.warmUpTemplates();
+    }
+
+    private Map<String, Object> flightsModel() {
+        ExtendedModelMap model = new ExtendedModelMap();
+        assertEquals("flights", flightController.flightsList("date", null, model));
+        return model;
+    }
+
+    private Map<String, Object> bookingsModel() {
+        ExtendedModelMap model = new ExtendedModelMap();
+        assertEquals("bookings", bookingController.bookingsList(null, null, model));
+        return model;
+    }
+
+    // Страниц в секунду
+    private double measure(String viewName, Map<String, Object> model) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            render(viewName, model);
+        }
+        long started = System.nanoTime();
+        for (int i = 0; i < RENDERS; i++) {
+            render(viewName, model);
+        }
+        return RENDERS / ((System.nanoTime() - started) / 1e9);
+    }
+
+    private String render(String viewName, Map<String, Object> model) throws Exception {
+        View view = viewResolver.resolveViewName(viewName, Locale.getDefault());
+        assertNotNull(view);
+        // Ответ пишется в буфер, как у контейнера: MockHttpServletResponse сбрасывает поток на каждую запись
+        StringWriter content = new StringWriter();
+        HttpServletResponse response = new HttpServletResponseWrapper(new MockHttpServletResponse()) {
+            private final PrintWriter writer = new PrintWriter(content);
+
+            @Override
+            public PrintWriter getWriter() {
+                return writer;
+            }
+        };
+        view.render(model, new MockHttpServletRequest(servletContext, "GET", "/" + viewName), response);
+        return content.toString();
+    }
+
+    private long sharedFragmentEntries() {
+        Set<TemplateCacheKey> keys = templateEngine.getCacheManager().getTemplateCache().keySet();
+        return keys.stream().filter(key -> WebConfig.SHARED_TEMPLATE.equals(key.getTemplate())).count();
+    }
+
+    private void report(String template, double dev, double prod) {
+        System.out.printf("Рендеринг %s: без кэша %.0f в секунду, prod %.0f в секунду (x%.1f)%n",
+                template, dev, prod, prod / dev);
+    }
+}
@@ -0,0 +1,169 @@
+package ru.cmc.web_prac.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.MockMvcPrint;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.cmc.web_prac.DAO.BaseDAOTest;
+import ru.cmc.web_prac.classes.Booking;
+import ru.cmc.web_prac.classes.Flight;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * JSON API: проекции вместо сущностей, потоковая выдача списков.
+ */
+// Печать результатов MockMvc вызывает toString сущностей, а у Flight и Airline он зацикливается
+@AutoConfigureMockMvc(print = MockMvcPrint.NONE)
+public class ApiControllerTest extends BaseDAOTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void testStreamedFlightsInRequestedOrder() throws Exception {
+        for (int i = 0; i < 120; i++) {
+            Flight flight = new Flight();
+            flight.setFlightNumber("API" + i);
+            flight.setAirline(testAirline1);
+            flight.setDepartureAirport("SVO");
+            flight.setArrivalAirport("KZN");
+            flight.setDepartureTime(LocalDateTime.of(2031, 1, 1, 0, 0).plusHours(i));
+            flight.setArrivalTime(LocalDateTime.of(2031, 1, 1, 2, 0).plusHours(i));
+            flight.setPrice(BigDecimal.valueOf(10_000 - i));
+            flight.setTotalSeats(100);
+            flight.setAvailableSeats(100);
+            flightDAO.save(flight);
+        }
+        entityManager.flush();
+
+        List<String> byPrice = numbersWithPrefix(read("/api/flights?sortBy=price"), "API");
+        assertEquals(120, byPrice.size());
+        assertEquals("API119", byPrice.get(0));
+        assertEquals("API0", byPrice.get(119));
+
+        JsonNode byDate = read("/api/flights");
+        List<String> numbers = numbersWithPrefix(byDate, "API");
+        assertEquals("API0", numbers.get(0));
+        assertEquals("API119", numbers.get(119));
+
+        JsonNode first = byDate.get(0);
+        assertTrue(first.has("airlineName"));
+        assertFalse(first.has("airline"));
+        assertTrue(first.get("departureTime").isTextual());
+    }
+
+    @Test
+    void testFlightAndAvailability() throws Exception {
+        mockMvc.perform(get("/api/flights/" + testFlight1.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.flightNumber").value("TEST123"))
+                .andExpect(jsonPath("$.airlineName").value("Test Aeroflot"))
+                .andExpect(jsonPath("$.departureTime").value("2024-12-15T10:30:00"));
+
+        flightDAO.decrementAvailableSeats(testFlight1.getId());
+        mockMvc.perform(get("/api/flights/" + testFlight1.getId() + "/availability"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalSeats").value(150))
+                .andExpect(jsonPath("$.availableSeats").value(149));
+
+        mockMvc.perform(get("/api/flights/-1")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/flights/-1/availability")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testAvailableFlights() throws Exception {
+        flightDAO.updateAvailableSeats(testFlight2.getId(), 0);
+
+        mockMvc.perform(get("/api/flights/available"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].flightNumber", hasItem("TEST123")))
+                .andExpect(jsonPath("$[*].flightNumber", not(hasItem("TEST456"))));
+    }
+
+    @Test
+    void testSearch() throws Exception {
+        mockMvc.perform(get("/api/search")
+                        .param("departureAirport", " svo")
+                        .param("arrivalAirport", "led")
+                        .param("departureDate", "2024-12-15"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=60, public"))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value(testFlight1.getId()));
+
+        mockMvc.perform(get("/api/search")
+                        .param("departureAirport", "SVO")
+                        .param("arrivalAirport", "LED")
+                        .param("departureDate", "15.12.2024"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testBookings() throws Exception {
+        Booking cancelled = new Booking();
+        cancelled.setClient(testClient2);
+        cancelled.setFlight(testFlight2);
+        cancelled.setBookingDate(LocalDateTime.now());
+        cancelled.setStatus("CANCELLED");
+        cancelled.setPaidWithMiles(false);
+        cancelled.setMilesUsed(0);
+        bookingDAO.save(cancelled);
+        entityManager.flush();
+
+        JsonNode cancelledRows = read("/api/bookings?status=CANCELLED");
+        List<Long> ids = new ArrayList<>();
+        cancelledRows.forEach(row -> {
+            assertEquals("CANCELLED", row.get("status").asText());
+            ids.add(row.get("id").asLong());
+        });
+        assertTrue(ids.contains(cancelled.getId()));
+        assertFalse(ids.contains(testBooking1.getId()));
+
+        mockMvc.perform(get("/api/bookings/" + testBooking1.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.clientName").value(testClient1.getFullName()))
+                .andExpect(jsonPath("$.flightNumber").value("TEST123"))
+                .andExpect(jsonPath("$.client").doesNotExist());
+        mockMvc.perform(get("/api/bookings/-1")).andExpect(status().isNotFound());
+    }
+
+    private JsonNode read(String url) throws Exception {
+        String body = mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getContentAsString();
+        JsonNode rows = objectMapper.readTree(body);
+        assertTrue(rows.isArray());
+        return rows;
+    }
+
+    private static List<String> numbersWithPrefix(JsonNode flights, String prefix) {
+        List<String> numbers = new ArrayList<>();
+        flights.forEach(flight -> {
+            String number = flight.get("flightNumber").asText();
+            if (number.startsWith(prefix)) {
+                numbers.add(number);
+            }
+        });
+        return numbers;
+    }
+}
@@ -0,0 +1,73 @@
+package ru.cmc.web_prac.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.cmc.web_prac.DAO.BaseDAOTest;
+import ru.cmc.web_prac.classes.Client;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Выбор клиента в форме бронирования: форма не содержит списка клиентов,
+ * подсказки приходят из /api/clients и ограничены по размеру.
+ */
+@AutoConfigureMockMvc
+public class ClientLookupTest extends BaseDAOTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void testBookingFormDoesNotListClients() throws Exception {
+        mockMvc.perform(get("/createBooking").param("flightId", String.valueOf(testFlight1.getId())))
+                .andExpect(status().isOk())
+                .andExpect(model().attributeDoesNotExist("clients", "client"))
+                .andExpect(content().string(not(containsString(testClient1.getEmail()))))
+                .andExpect(content().string(not(containsString(testClient2.getEmail()))));
+    }
+
+    @Test
+    void testBookingFormWithPreselectedClient() throws Exception {
+        mockMvc.perform(get("/createBooking")
+                        .param("flightId", String.valueOf(testFlight1.getId()))
+                        .param("clientId", String.valueOf(testClient2.getId())))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString(testClient2.getEmail())))
+                .andExpect(content().string(not(containsString(testClient1.getEmail()))));
+    }
+
+    @Test
+    void testLookupReturnsMatchingClients() throws Exception {
+        mockMvc.perform(get("/api/clients").param("query", "мария"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value(testClient2.getId()))
+                .andExpect(jsonPath("$[0].bonusMiles").value(testClient2.getBonusMiles()));
+
+        mockMvc.perform(get("/api/clients").param("query", " "))
+                .andExpect(jsonPath("$", hasSize(0)));
+    }
+
+    @Test
+    void testLookupIsCapped() throws Exception {
+        for (int i = 0; i < 30; i++) {
+            Client client = new Client();
+            client.setFullName("Lookup Client " + i);
+            client.setEmail("lookup" + i + "@example.org");
+            clientDAO.save(client);
+        }
+
+        mockMvc.perform(get("/api/clients").param("query", "lookup"))
+                .andExpect(jsonPath("$", hasSize(10)));
+        mockMvc.perform(get("/api/clients").param("query", "lookup").param("limit", "1000"))
+                .andExpect(jsonPath("$", hasSize(20)));
+        mockMvc.perform(get("/api/clients").param("query", "lookup").param("limit", "-5"))
+                .andExpect(jsonPath("$", hasSize(0)));
+    }
+}
@@ -0,0 +1,176 @@
+package ru.cmc.web_prac.controllers;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.MockMvcPrint;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.cmc.web_prac.DAO.BaseDAOTest;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.List;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * ETag страниц сущностей и канонический GET-адрес поиска.
+ */
+// Печать результатов MockMvc вызывает toString сущностей, а у Flight и Airline он зацикливается
+@AutoConfigureMockMvc(print = MockMvcPrint.NONE)
+public class ConditionalGetTest extends BaseDAOTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void testUnchangedFlightPageIsNotRendered() throws Exception {
+        String url = "/flight?flightId=" + testFlight1.getId();
+        String etag = etagOf(url);
+
+        mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"));
+
+        testFlight1.setPrice(BigDecimal.valueOf(5500));
+        flightDAO.update(testFlight1);
+        reload();
+
+        mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(etag)));
+    }
+
+    @Test
+    void testClientPageChangesWithMilesAndBookings() throws Exception {
+        String url = "/client?clientId=" + testClient1.getId();
+        String etag = etagOf(url);
+        mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        clientDAO.addBonusMiles(testClient1.getId(), 100);
+        reload();
+        String afterMiles = etagOf(url);
+        assertNotEquals(etag, afterMiles);
+
+        // Бронирование клиента показано на его странице
+        testBooking1.setStatus("CANCELLED");
+        bookingDAO.update(testBooking1);
+        reload();
+        assertNotEquals(afterMiles, etagOf(url));
+    }
+
+    @Test
+    void testBookingPageChangesWithClient() throws Exception {
+        String url = "/booking?bookingId=" + testBooking1.getId();
+        String etag = etagOf(url);
+        mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        testClient1.setPhone("+7-900-000-00-00");
+        clientDAO.update(testClient1);
+        reload();
+        assertNotEquals(etag, etagOf(url));
+    }
+
+    @Test
+    void testBookingPageChangesWithStatus() throws Exception {
+        String url = "/booking?bookingId=" + testBooking1.getId();
+        String clientUrl = "/client?clientId=" + testClient1.getId();
+        String etag = etagOf(url);
+        String clientEtag = etagOf(clientUrl);
+
+        assertTrue(bookingDAO.confirmBooking(testBooking1.getId()));
+        reload();
+        assertNotEquals(etag, etagOf(url));
+        assertNotEquals(clientEtag, etagOf(clientUrl));
+    }
+
+    @Test
+    void testUnchangedPagesCostOneQuery() throws Exception {
+        for (String url : List.of("/flight?flightId=" + testFlight1.getId(),
+                "/client?clientId=" + testClient1.getId(),
+                "/booking?bookingId=" + testBooking1.getId())) {
+            String etag = etagOf(url);
+            reload();
+            Statistics statistics = entityManager.getEntityManagerFactory()
+                    .unwrap(SessionFactory.class).getStatistics();
+            statistics.clear();
+
+            mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag))
+                    .andExpect(status().isNotModified());
+            // Только чтение версий: сущности и история не загружаются
+            assertEquals(1, statistics.getPrepareStatementCount(), url);
+        }
+    }
+
+    @Test
+    void testMissingEntityPageIsNotCached() throws Exception {
+        mockMvc.perform(get("/client?clientId=-1").header(HttpHeaders.IF_NONE_MATCH, "*"))
+                .andExpect(status().isOk())
+                .andExpect(view().name("errorPage"))
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void testIndexPageIsNotRenderedTwice() throws Exception {
+        String etag = etagOf("/");
+        mockMvc.perform(get("/").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void testCanonicalSearchIsCacheable() throws Exception {
+        mockMvc.perform(get("/search?departureAirport=SVO&arrivalAirport=LED&departureDate=2024-12-15"))
+                .andExpect(status().isOk())
+                .andExpect(view().name("searchResults"))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=60, public"))
+                .andExpect(content().string(containsString(testFlight1.getFlightNumber())));
+    }
+
+    @Test
+    void testSearchVariantsRedirectToCanonicalUrl() throws Exception {
+        String canonical = "/search?departureAirport=SVO&arrivalAirport=LED&departureDate=2024-12-15";
+
+        mockMvc.perform(get(URI.create("/search?arrivalAirport=led&departureAirport=%20svo&departureDate=2024-12-15")))
+                .andExpect(status().isMovedPermanently())
+                .andExpect(redirectedUrl(canonical));
+
+        mockMvc.perform(post("/search")
+                        .param("departureAirport", "svo")
+                        .param("arrivalAirport", "LED")
+                        .param("departureDate", "2024-12-15"))
+                .andExpect(status().isSeeOther())
+                .andExpect(redirectedUrl(canonical));
+    }
+
+    @Test
+    void testInvalidSearchIsNotCached() throws Exception {
+        mockMvc.perform(get("/search?departureAirport=SVO&arrivalAirport=LED&departureDate=15.12.2024"))
+                .andExpect(view().name("errorPage"))
+                .andExpect(header().doesNotExist(HttpHeaders.CACHE_CONTROL));
+    }
+
+    private String etagOf(String url) throws Exception {
+        String etag = mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+        return etag;
+    }
+
+    // Каждый запрос в приложении читает данные заново, а не из общего persistence context теста
+    private void reload() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
@@ -0,0 +1,202 @@
+package ru.cmc.web_prac.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.cmc.web_prac.DAO.AirlineDAO;
+import ru.cmc.web_prac.DAO.BookingDAO;
+import ru.cmc.web_prac.DAO.ClientDAO;
+import ru.cmc.web_prac.DAO.FlightDAO;
+import ru.cmc.web_prac.classes.Airline;
+import ru.cmc.web_prac.classes.Booking;
+import ru.cmc.web_prac.classes.Client;
+import ru.cmc.web_prac.classes.Flight;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BookingService работает со своими транзакциями, поэтому данные здесь фиксируются
+ * по-настоящему и удаляются после каждого теста.
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application.properties")
+public class BookingServiceConcurrencyTest {
+
+    private static final int SEATS = 100;
+    // Потоков меньше, чем соединений в пуле: ждут они блокировку строки рейса, а не соединение
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS = 400;
+    private static final int MILES_PER_BOOKING = 100;
+    private static final int MILES_BALANCE = 5_000;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private MilesOutboxDispatcher milesOutboxDispatcher;
+
+    @Autowired
+    private AirlineDAO airlineDAO;
+
+    @Autowired
+    private FlightDAO flightDAO;
+
+    @Autowired
+    private ClientDAO clientDAO;
+
+    @Autowired
+    private BookingDAO bookingDAO;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+    private Airline airline;
+    private Flight flight;
+    private Client milesClient;
+    private Client cashClient;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> {
+            airline = new Airline();
+            airline.setName("Concurrency Air");
+            airline.setMilesRate(BigDecimal.valueOf(1.0));
+            airlineDAO.save(airline);
+
+            flight = new Flight();
+            flight.setFlightNumber("CONC1");
+            flight.setAirline(airline);
+            flight.setDepartureAirport("SVO");
+            flight.setArrivalAirport("AER");
+            flight.setDepartureTime(LocalDateTime.now().plusDays(10));
+            flight.setArrivalTime(LocalDateTime.now().plusDays(10).plusHours(3));
+            flight.setPrice(BigDecimal.valueOf(5000));
+            flight.setTotalSeats(SEATS);
+            flight.setAvailableSeats(SEATS);
+            flightDAO.save(flight);
+
+            milesClient = new Client();
+            milesClient.setFullName("Клиент С Милями");
+            milesClient.setEmail("miles.concurrency@example.com");
+            milesClient.setBonusMiles(MILES_BALANCE);
+            clientDAO.save(milesClient);
+
+            cashClient = new Client();
+            cashClient.setFullName("Клиент Без Миль");
+            cashClient.setEmail("cash.concurrency@example.com");
+            cashClient.setBonusMiles(0);
+            clientDAO.save(cashClient);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Booking booking : bookingDAO.getByFlight(flightDAO.getById(flight.getId()))) {
+                bookingDAO.delete(booking);
+            }
+            flightDAO.delete(flightDAO.getById(flight.getId()));
+            clientDAO.delete(clientDAO.getById(milesClient.getId()));
+            clientDAO.delete(clientDAO.getById(cashClient.getId()));
+            airlineDAO.delete(airlineDAO.getById(airline.getId()));
+        });
+    }
+
+    @Test
+    void testNoOversellUnderConcurrentBookings() throws Exception {
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger bookedWithMiles = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < ATTEMPTS; i++) {
+                boolean withMiles = i % 2 == 0;
+                futures.add(executor.submit(() -> {
+                    try {
+                        if (withMiles) {
+                            bookingService.createBooking(flight.getId(), milesClient.getId(), true, MILES_PER_BOOKING);
+                            bookedWithMiles.incrementAndGet();
+                        } else {
+                            bookingService.createBooking(flight.getId(), cashClient.getId(), false, 0);
+                        }
+                        booked.incrementAndGet();
+                    } catch (IllegalStateException e) {
+                        rejected.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        // Все места проданы ровно один раз, мили списаны только за состоявшиеся бронирования
+        assertEquals(SEATS, booked.get());
+        assertEquals(ATTEMPTS - SEATS, rejected.get());
+        assertEquals(0, flightDAO.getById(flight.getId()).getAvailableSeats());
+        assertEquals(SEATS, bookingDAO.getByFlight(flightDAO.getById(flight.getId())).size());
+
+        int milesLeft = clientDAO.getById(milesClient.getId()).getBonusMiles();
+        assertTrue(milesLeft >= 0);
+        assertEquals(MILES_BALANCE - bookedWithMiles.get() * MILES_PER_BOOKING, milesLeft);
+    }
+
+    @Test
+    void testCancelReturnsSeatAndMilesOnce() {
+        Booking booking = bookingService.createBooking(flight.getId(), milesClient.getId(), true, MILES_PER_BOOKING);
+        assertEquals(SEATS - 1, flightDAO.getById(flight.getId()).getAvailableSeats());
+        assertEquals(MILES_BALANCE - MILES_PER_BOOKING, clientDAO.getById(milesClient.getId()).getBonusMiles());
+
+        bookingService.cancelBooking(booking.getId());
+        assertThrows(IllegalStateException.class, () -> bookingService.cancelBooking(booking.getId()));
+
+        assertEquals("CANCELLED", bookingDAO.getById(booking.getId()).getStatus());
+        assertEquals(SEATS, flightDAO.getById(flight.getId()).getAvailableSeats());
+        assertEquals(MILES_BALANCE, clientDAO.getById(milesClient.getId()).getBonusMiles());
+    }
+
+    @Test
+    void testConfirmEarnsMilesOnce() {
+        Booking booking = bookingService.createBooking(flight.getId(), cashClient.getId(), false, 0);
+
+        bookingService.confirmBooking(booking.getId());
+        assertThrows(IllegalStateException.class, () -> bookingService.confirmBooking(booking.getId()));
+
+        assertEquals("PAID", bookingDAO.getById(booking.getId()).getStatus());
+        // Мили начисляются из очереди, а не в транзакции подтверждения
+        assertEquals(0, clientDAO.getById(cashClient.getId()).getBonusMiles());
+        milesOutboxDispatcher.dispatch();
+        assertEquals(50, clientDAO.getById(cashClient.getId()).getBonusMiles()); // 5000 * 1.0 / 100
+    }
+
+    @Test
+    void testRejectedBookingChangesNothing() {
+        assertThrows(IllegalStateException.class,
+                () -> bookingService.createBooking(flight.getId(), cashClient.getId(), true, MILES_PER_BOOKING));
+
+        assertEquals(SEATS, flightDAO.getById(flight.getId()).getAvailableSeats());
+        assertTrue(bookingDAO.getByFlight(flightDAO.getById(flight.getId())).isEmpty());
+    }
+}
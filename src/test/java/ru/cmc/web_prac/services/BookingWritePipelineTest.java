@@ -0,0 +1,229 @@
+package ru.cmc.web_prac.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.cmc.web_prac.DAO.AirlineDAO;
+import ru.cmc.web_prac.DAO.BookingDAO;
+import ru.cmc.web_prac.DAO.ClientDAO;
+import ru.cmc.web_prac.DAO.FlightDAO;
+import ru.cmc.web_prac.classes.Airline;
+import ru.cmc.web_prac.classes.Booking;
+import ru.cmc.web_prac.classes.Client;
+import ru.cmc.web_prac.classes.Flight;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Групповая запись пишет в своих транзакциях, поэтому данные здесь фиксируются
+ * по-настоящему и удаляются после каждого теста.
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application.properties")
+public class BookingWritePipelineTest {
+
+    private static final int SEATS = 100;
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS = 400;
+
+    @Autowired
+    private BookingWritePipeline bookingWritePipeline;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private AirlineDAO airlineDAO;
+
+    @Autowired
+    private FlightDAO flightDAO;
+
+    @Autowired
+    private ClientDAO clientDAO;
+
+    @Autowired
+    private BookingDAO bookingDAO;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+    private Airline airline;
+    private Flight flight;
+    private Client client;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> {
+            airline = new Airline();
+            airline.setName("Group Commit Air");
+            airline.setMilesRate(BigDecimal.valueOf(1.0));
+            airlineDAO.save(airline);
+
+            flight = newFlight("GROUP1", SEATS);
+
+            client = new Client();
+            client.setFullName("Клиент Групповой Записи");
+            client.setEmail("group.commit@example.com");
+            client.setBonusMiles(50);
+            clientDAO.save(client);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Flight stored : flightDAO.getByAirline(airlineDAO.getById(airline.getId()))) {
+                for (Booking booking : bookingDAO.getByFlight(stored)) {
+                    bookingDAO.delete(booking);
+                }
+                flightDAO.delete(stored);
+            }
+            clientDAO.delete(clientDAO.getById(client.getId()));
+            airlineDAO.delete(airlineDAO.getById(airline.getId()));
+        });
+    }
+
+    @Test
+    void testEachCallerGetsOwnOutcome() {
+        CompletableFuture<Long> booked = bookingWritePipeline.submit(flight.getId(), client.getId(), false, 0);
+        CompletableFuture<Long> noMiles = bookingWritePipeline.submit(flight.getId(), client.getId(), true, 100);
+        CompletableFuture<Long> noClient = bookingWritePipeline.submit(flight.getId(), -1L, false, 0);
+        CompletableFuture<Long> noFlight = bookingWritePipeline.submit(-1L, client.getId(), false, 0);
+
+        Booking booking = bookingDAO.getById(booked.join());
+        assertEquals("BOOKED", booking.getStatus());
+        assertEquals(client.getId(), booking.getClient().getId());
+        assertRejected(IllegalStateException.class, noMiles);
+        assertRejected(IllegalArgumentException.class, noClient);
+        assertRejected(IllegalArgumentException.class, noFlight);
+
+        // Отказанные запросы не потратили ни мест, ни миль
+        assertEquals(50, clientDAO.getById(client.getId()).getBonusMiles());
+        assertEquals(SEATS - 1, flightDAO.getById(flight.getId()).getAvailableSeats());
+        assertEquals(1, bookingDAO.getByFlight(flightDAO.getById(flight.getId())).size());
+    }
+
+    @Test
+    void testNoOversellUnderConcurrentSubmits() throws Exception {
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        run(ATTEMPTS, () -> {
+            try {
+                bookingWritePipeline.submit(flight.getId(), client.getId(), false, 0).join();
+                booked.incrementAndGet();
+            } catch (CompletionException e) {
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+                rejected.incrementAndGet();
+            }
+            return null;
+        });
+
+        assertEquals(SEATS, booked.get());
+        assertEquals(ATTEMPTS - SEATS, rejected.get());
+        assertEquals(0, flightDAO.getById(flight.getId()).getAvailableSeats());
+        assertEquals(SEATS, bookingDAO.getByFlight(flightDAO.getById(flight.getId())).size());
+    }
+
+    // Сравнение с записью каждого бронирования своей транзакцией (BookingDAOImpl.save)
+    @Test
+    @Tag("benchmark")
+    void testThroughputAgainstSingleCommits() throws Exception {
+        Flight[] flights = new Flight[2];
+        transactionTemplate.executeWithoutResult(status -> {
+            flights[0] = newFlight("GROUP2", ATTEMPTS);
+            flights[1] = newFlight("GROUP3", ATTEMPTS);
+        });
+
+        long[] single = run(ATTEMPTS, () ->
+                bookingService.createBooking(flights[0].getId(), client.getId(), false, 0).getId());
+        long[] grouped = run(ATTEMPTS, () ->
+                bookingWritePipeline.submit(flights[1].getId(), client.getId(), false, 0).join());
+        double singleRate = report("по одной транзакции", single);
+        double groupedRate = report("групповая запись", grouped);
+
+        assertEquals(ATTEMPTS, bookingDAO.getByFlight(flightDAO.getById(flights[0].getId())).size());
+        assertEquals(ATTEMPTS, bookingDAO.getByFlight(flightDAO.getById(flights[1].getId())).size());
+        assertTrue(groupedRate > singleRate,
+                "групповая запись не быстрее записи по одному: " + groupedRate + " против " + singleRate);
+    }
+
+    private Flight newFlight(String number, int seats) {
+        Flight created = new Flight();
+        created.setFlightNumber(number);
+        created.setAirline(airline);
+        created.setDepartureAirport("SVO");
+        created.setArrivalAirport("MRV");
+        created.setDepartureTime(LocalDateTime.now().plusDays(7));
+        created.setArrivalTime(LocalDateTime.now().plusDays(7).plusHours(2));
+        created.setPrice(BigDecimal.valueOf(3000));
+        created.setTotalSeats(seats);
+        created.setAvailableSeats(seats);
+        flightDAO.save(created);
+        return created;
+    }
+
+    // Выполняет action attempts раз в THREADS потоках; последний элемент - общее время, остальные - задержки
+    private long[] run(int attempts, Supplier<?> action) throws Exception {
+        long[] latencies = new long[attempts + 1];
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long started = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < attempts; i++) {
+                int index = i;
+                futures.add(executor.submit(() -> {
+                    long callStarted = System.nanoTime();
+                    action.get();
+                    latencies[index] = System.nanoTime() - callStarted;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        latencies[attempts] = System.nanoTime() - started;
+        return latencies;
+    }
+
+    // Печатает и возвращает число бронирований в секунду
+    private double report(String mode, long[] measured) {
+        int attempts = measured.length - 1;
+        long[] latencies = Arrays.copyOf(measured, attempts);
+        Arrays.sort(latencies);
+        double seconds = measured[attempts] / 1e9;
+        System.out.printf("Бронирования, %s: %.0f в секунду, p50 %.1f мс, p99 %.1f мс (%d потоков)%n",
+                mode, attempts / seconds,
+                latencies[attempts / 2] / 1e6, latencies[attempts * 99 / 100] / 1e6, THREADS);
+        return attempts / seconds;
+    }
+
+    private void assertRejected(Class<? extends RuntimeException> expected, CompletableFuture<Long> result) {
+        CompletionException e = assertThrows(CompletionException.class, result::join);
+        assertInstanceOf(expected, e.getCause());
+    }
+}
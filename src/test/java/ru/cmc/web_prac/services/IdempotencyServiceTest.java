@@ -0,0 +1,185 @@
+package ru.cmc.web_prac.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.ui.ExtendedModelMap;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import ru.cmc.web_prac.DAO.BaseDAOTest;
+import ru.cmc.web_prac.controllers.ClientController;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Повторы запросов к /addMiles и /deductMiles через контроллер с привязанным HTTP-запросом.
+ */
+public class IdempotencyServiceTest extends BaseDAOTest {
+
+    @Autowired
+    private ClientController clientController;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @AfterEach
+    void resetRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void testRetryDoesNotAddMilesTwice() {
+        Long clientId = testClient1.getId();
+        int before = testClient1.getBonusMiles();
+        String key = UUID.randomUUID().toString();
+
+        assertEquals("redirect:/client?clientId=" + clientId, addMiles(key, clientId, 100));
+        assertEquals("redirect:/client?clientId=" + clientId, addMiles(key, clientId, 100));
+
+        assertEquals(before + 100, milesOf(clientId));
+    }
+
+    @Test
+    void testStoredRejectionIsReplayed() {
+        Long clientId = testClient1.getId();
+        int before = testClient1.getBonusMiles();
+        String key = UUID.randomUUID().toString();
+
+        ExtendedModelMap model = new ExtendedModelMap();
+        assertEquals("errorPage", deductMiles(key, clientId, before + 1, model));
+        assertEquals("У клиента недостаточно бонусных миль", model.getAttribute("error_msg"));
+
+        // Миль стало достаточно, но повтор того же запроса получает прежний результат
+        clientDAO.addBonusMiles(clientId, 1_000);
+        ExtendedModelMap retryModel = new ExtendedModelMap();
+        assertEquals("errorPage", deductMiles(key, clientId, before + 1, retryModel));
+        assertEquals("У клиента недостаточно бонусных миль", retryModel.getAttribute("error_msg"));
+        assertEquals(before + 1_000, milesOf(clientId));
+    }
+
+    @Test
+    void testTechnicalFailureReleasesKey() {
+        String key = UUID.randomUUID().toString();
+        bindRequest(key, testClient1.getId(), 100);
+
+        ExtendedModelMap model = new ExtendedModelMap();
+        assertThrows(CannotCreateTransactionException.class, () -> idempotencyService.execute("addMiles", model, () -> {
+            throw new CannotCreateTransactionException("connection refused");
+        }));
+
+        // Сбой не сохранён как результат: повтор выполняет операцию
+        assertEquals("redirect:/client?clientId=" + testClient1.getId(),
+                addMiles(key, testClient1.getId(), 100));
+        assertEquals(testClient1.getBonusMiles() + 100, milesOf(testClient1.getId()));
+    }
+
+    @Test
+    void testExpiredLeaseDoesNotRunCommittedActionAgain() {
+        Long clientId = testClient1.getId();
+        int before = testClient1.getBonusMiles();
+        String key = UUID.randomUUID().toString();
+        bindRequest(key, clientId, 100);
+        AtomicInteger runs = new AtomicInteger();
+        Supplier<String> action = () -> {
+            runs.incrementAndGet();
+            clientDAO.addBonusMiles(clientId, 100);
+            return "redirect:/client?clientId=" + clientId;
+        };
+
+        String view = idempotencyService.execute("addMiles", new ExtendedModelMap(), () -> {
+            String result = action.get();
+            // Операция выполнена, а срок аренды истёк до сохранения результата
+            // (долгая операция или узел, упавший между ними): повтор приходит сейчас
+            entityManager.createQuery("UPDATE IdempotencyKey k SET k.leaseUntil = :time")
+                    .setParameter("time", LocalDateTime.now().minusSeconds(1))
+                    .executeUpdate();
+            entityManager.clear();
+            ExtendedModelMap retryModel = new ExtendedModelMap();
+            assertEquals("errorPage", idempotencyService.execute("addMiles", retryModel, action));
+            assertTrue(retryModel.getAttribute("error_msg").toString().startsWith("Результат этого запроса неизвестен"));
+            return result;
+        });
+        assertEquals("redirect:/client?clientId=" + clientId, view);
+
+        // Результат владельца сохранён, следующий повтор получает его
+        assertEquals("redirect:/client?clientId=" + clientId,
+                idempotencyService.execute("addMiles", new ExtendedModelMap(), action));
+        assertEquals(1, runs.get());
+        assertEquals(before + 100, milesOf(clientId));
+    }
+
+    @Test
+    void testOutcomeIsReadFromDatabaseAfterEviction() {
+        Long clientId = testClient1.getId();
+        int before = testClient1.getBonusMiles();
+        String key = UUID.randomUUID().toString();
+
+        addMiles(key, clientId, 100);
+        // Как после перезапуска или на другом узле: в памяти результата нет
+        Map<?, ?> outcomes = (Map<?, ?>) ReflectionTestUtils.getField(idempotencyService, "outcomes");
+        synchronized (outcomes) {
+            outcomes.clear();
+        }
+
+        assertEquals("redirect:/client?clientId=" + clientId, addMiles(key, clientId, 100));
+        assertEquals(before + 100, milesOf(clientId));
+    }
+
+    @Test
+    void testSameKeyWithOtherParametersRunsAgain() {
+        Long clientId = testClient1.getId();
+        int before = testClient1.getBonusMiles();
+        String key = UUID.randomUUID().toString();
+
+        addMiles(key, clientId, 100);
+        addMiles(key, clientId, 50);
+
+        assertEquals(before + 150, milesOf(clientId));
+    }
+
+    @Test
+    void testWithoutKeyEveryRequestRuns() {
+        Long clientId = testClient1.getId();
+        int before = testClient1.getBonusMiles();
+
+        addMiles(null, clientId, 100);
+        addMiles(null, clientId, 100);
+
+        assertEquals(before + 200, milesOf(clientId));
+    }
+
+    private String addMiles(String key, Long clientId, int miles) {
+        bindRequest(key, clientId, miles);
+        return clientController.addMiles(clientId, miles, new ExtendedModelMap());
+    }
+
+    private String deductMiles(String key, Long clientId, int miles, ExtendedModelMap model) {
+        bindRequest(key, clientId, miles);
+        return clientController.deductMiles(clientId, miles, model);
+    }
+
+    private void bindRequest(String key, Long clientId, int miles) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/miles");
+        if (key != null) {
+            request.addHeader(IdempotencyService.HEADER, key);
+        }
+        request.addParameter("clientId", String.valueOf(clientId));
+        request.addParameter("miles", String.valueOf(miles));
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    private int milesOf(Long clientId) {
+        entityManager.flush();
+        entityManager.clear();
+        return clientDAO.getById(clientId).getBonusMiles();
+    }
+}
@@ -0,0 +1,71 @@
+package ru.cmc.web_prac.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import ru.cmc.web_prac.DAO.BaseDAOTest;
+import ru.cmc.web_prac.DAO.MilesOutboxDAO;
+import ru.cmc.web_prac.classes.Booking;
+import ru.cmc.web_prac.classes.Client;
+import ru.cmc.web_prac.classes.Flight;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MilesOutboxDispatcherTest extends BaseDAOTest {
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private MilesOutboxDispatcher milesOutboxDispatcher;
+
+    @Autowired
+    private MilesOutboxDAO milesOutboxDAO;
+
+    @Test
+    void testConfirmationsAreAppliedPerClient() {
+        bookingService.confirmBooking(testBooking1.getId());
+        bookingService.confirmBooking(newBooking(testClient1, testFlight2).getId());
+        bookingService.confirmBooking(newBooking(testClient2, testFlight1).getId());
+
+        // До разбора очереди баланс не меняется
+        assertEquals(1000, milesOf(testClient1));
+        assertEquals(3, milesOutboxDAO.lockBatch(10).size());
+
+        milesOutboxDispatcher.dispatch();
+
+        assertEquals(1000 + 50 + 54, milesOf(testClient1));
+        assertEquals(2500 + 50, milesOf(testClient2));
+        assertTrue(milesOutboxDAO.lockBatch(10).isEmpty());
+    }
+
+    @Test
+    void testRejectedConfirmationQueuesNothing() {
+        bookingService.confirmBooking(testBooking1.getId());
+        assertThrows(IllegalStateException.class, () -> bookingService.confirmBooking(testBooking1.getId()));
+        assertThrows(IllegalArgumentException.class, () -> bookingService.confirmBooking(-1L));
+
+        assertEquals(1, milesOutboxDAO.lockBatch(10).size());
+    }
+
+    @Test
+    void testDispatchEmptyQueue() {
+        assertEquals(0, milesOutboxDispatcher.dispatchBatch());
+    }
+
+    private Booking newBooking(Client client, Flight flight) {
+        Booking booking = new Booking();
+        booking.setClient(client);
+        booking.setFlight(flight);
+        booking.setBookingDate(LocalDateTime.now());
+        bookingDAO.save(booking);
+        return booking;
+    }
+
+    private int milesOf(Client client) {
+        entityManager.flush();
+        entityManager.clear();
+        return clientDAO.getById(client.getId()).getBonusMiles();
+    }
+}